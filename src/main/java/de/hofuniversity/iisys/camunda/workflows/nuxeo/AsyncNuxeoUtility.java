@@ -0,0 +1,1008 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.ecm.automation.client.model.Blob;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+
+/**
+ * Asynchronous facade for {@link NuxeoUtility}, running its operations on a
+ * bounded executor and returning {@link NuxeoFuture}s which can notify
+ * callbacks instead of blocking the caller.
+ * Concurrent operations are still limited by the utility's session pool,
+ * so more threads than pooled sessions only add waiting tasks.
+ */
+public class AsyncNuxeoUtility
+{
+    private final NuxeoUtility fUtil;
+    private final ExecutorService fExecutor;
+    private final boolean fOwnExecutor;
+
+    /**
+     * Creates a facade with an executor configured by the
+     * {@link NuxeoConfig#ASYNC_THREADS} and {@link NuxeoConfig#ASYNC_QUEUE_SIZE}
+     * settings.
+     * @param util utility to run the operations with
+     * @param config connector configuration, see {@link NuxeoConfig}
+     */
+    public AsyncNuxeoUtility(NuxeoUtility util, Map<String, String> config)
+    {
+        this(util, NuxeoConfig.getInt(config, NuxeoConfig.ASYNC_THREADS, 8),
+            NuxeoConfig.getInt(config, NuxeoConfig.ASYNC_QUEUE_SIZE, 1000));
+    }
+
+    /**
+     * Creates a facade with its own executor. If its queue is full, the
+     * submitting thread runs the operation itself, slowing down producers
+     * instead of rejecting operations.
+     * @param util utility to run the operations with
+     * @param threads maximum number of concurrently running operations
+     * @param queueSize maximum number of waiting operations
+     */
+    public AsyncNuxeoUtility(NuxeoUtility util, int threads, int queueSize)
+    {
+        this(util, newExecutor(threads, queueSize), true);
+    }
+
+    /**
+     * Creates a facade running its operations on the given executor, which
+     * is not shut down by {@link #shutdown()}.
+     * @param util utility to run the operations with
+     * @param executor executor to run the operations on
+     */
+    public AsyncNuxeoUtility(NuxeoUtility util, ExecutorService executor)
+    {
+        this(util, executor, false);
+    }
+
+    private AsyncNuxeoUtility(NuxeoUtility util, ExecutorService executor, boolean ownExecutor)
+    {
+        fUtil = util;
+        fExecutor = executor;
+        fOwnExecutor = ownExecutor;
+    }
+
+    private static ExecutorService newExecutor(int threads, int queueSize)
+    {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+            60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+            new DaemonThreadFactory("nuxeo-async"), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        //no idle threads between bursts of operations
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * @return the utility operations are run with
+     */
+    public NuxeoUtility getUtility()
+    {
+        return fUtil;
+    }
+
+    /**
+     * Runs any task on this facade's executor, e.g. several dependent
+     * operations of the utility in sequence.
+     * @param task task to run
+     * @return future of the task
+     */
+    public <T> NuxeoFuture<T> submit(Callable<T> task)
+    {
+        final NuxeoFuture<T> future = new NuxeoFuture<T>(task);
+        fExecutor.execute(future);
+
+        return future;
+    }
+
+    /**
+     * @see NuxeoUtility#getAllDocumentIds()
+     */
+    public NuxeoFuture<List<String>> getAllDocumentIds()
+    {
+        return submit(new Callable<List<String>>()
+        {
+            @Override
+            public List<String> call() throws Exception
+            {
+                return fUtil.getAllDocumentIds();
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getAllDocumentIds(long, long)
+     */
+    public NuxeoFuture<List<String>> getAllDocumentIds(final long from, final long to)
+    {
+        return submit(new Callable<List<String>>()
+        {
+            @Override
+            public List<String> call() throws Exception
+            {
+                return fUtil.getAllDocumentIds(from, to);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocument(String)
+     */
+    public NuxeoFuture<Document> getDocument(final String id)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.getDocument(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocument(String, String)
+     */
+    public NuxeoFuture<Document> getDocument(final String id, final String schemas)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.getDocument(id, schemas);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocuments(Collection)
+     */
+    public NuxeoFuture<Map<String, Document>> getDocuments(final Collection<String> ids)
+    {
+        return submit(new Callable<Map<String, Document>>()
+        {
+            @Override
+            public Map<String, Document> call() throws Exception
+            {
+                return fUtil.getDocuments(ids);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocuments(Collection, String)
+     */
+    public NuxeoFuture<Map<String, Document>> getDocuments(final Collection<String> ids, final String schemas)
+    {
+        return submit(new Callable<Map<String, Document>>()
+        {
+            @Override
+            public Map<String, Document> call() throws Exception
+            {
+                return fUtil.getDocuments(ids, schemas);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocumentVersion(String)
+     */
+    public NuxeoFuture<String> getDocumentVersion(final String id)
+    {
+        return submit(new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                return fUtil.getDocumentVersion(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getLastModified(String)
+     */
+    public NuxeoFuture<Date> getLastModified(final String id)
+    {
+        return submit(new Callable<Date>()
+        {
+            @Override
+            public Date call() throws Exception
+            {
+                return fUtil.getLastModified(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getURI(String)
+     */
+    public NuxeoFuture<String> getURI(final String id)
+    {
+        return submit(new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                return fUtil.getURI(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getBlob(String)
+     */
+    public NuxeoFuture<Blob> getBlob(final String id)
+    {
+        return submit(new Callable<Blob>()
+        {
+            @Override
+            public Blob call() throws Exception
+            {
+                return fUtil.getBlob(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getPath(String)
+     */
+    public NuxeoFuture<String> getPath(final String id)
+    {
+        return submit(new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                return fUtil.getPath(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getACLs(String)
+     */
+    public NuxeoFuture<String> getACLs(final String id)
+    {
+        return submit(new Callable<String>()
+        {
+            @Override
+            public String call() throws Exception
+            {
+                return fUtil.getACLs(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getParsedACLs(String)
+     */
+    public NuxeoFuture<List<NuxeoACL>> getParsedACLs(final String id)
+    {
+        return submit(new Callable<List<NuxeoACL>>()
+        {
+            @Override
+            public List<NuxeoACL> call() throws Exception
+            {
+                return fUtil.getParsedACLs(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getParsedACLs(Collection)
+     */
+    public NuxeoFuture<Map<String, List<NuxeoACL>>> getParsedACLs(final Collection<String> ids)
+    {
+        return submit(new Callable<Map<String, List<NuxeoACL>>>()
+        {
+            @Override
+            public Map<String, List<NuxeoACL>> call() throws Exception
+            {
+                return fUtil.getParsedACLs(ids);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getAllVersions(String)
+     */
+    public NuxeoFuture<List<String>> getAllVersions(final String id)
+    {
+        return submit(new Callable<List<String>>()
+        {
+            @Override
+            public List<String> call() throws Exception
+            {
+                return fUtil.getAllVersions(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createDocument(Document, String, Properties)
+     */
+    public NuxeoFuture<Document> createDocument(final Document doc, final String type, final Properties properties)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.createDocument(doc, type, properties);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createFolder(String, String)
+     */
+    public NuxeoFuture<Document> createFolder(final String name, final String parentId)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.createFolder(name, parentId);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createDocuments(Document, List)
+     */
+    public NuxeoFuture<BatchResult<Document>> createDocuments(final Document parent, final List<DocumentSpec> specs)
+    {
+        return submit(new Callable<BatchResult<Document>>()
+        {
+            @Override
+            public BatchResult<Document> call() throws Exception
+            {
+                return fUtil.createDocuments(parent, specs);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createDocuments(String, List)
+     */
+    public NuxeoFuture<BatchResult<Document>> createDocuments(final String parentId, final List<DocumentSpec> specs)
+    {
+        return submit(new Callable<BatchResult<Document>>()
+        {
+            @Override
+            public BatchResult<Document> call() throws Exception
+            {
+                return fUtil.createDocuments(parentId, specs);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#updateDocument(Document, Map)
+     */
+    public NuxeoFuture<Document> updateDocument(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.updateDocument(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#updateDocuments(Map)
+     */
+    public NuxeoFuture<BatchResult<Document>> updateDocuments(final Map<String, ? extends Map<String, ?>> changes)
+    {
+        return submit(new Callable<BatchResult<Document>>()
+        {
+            @Override
+            public BatchResult<Document> call() throws Exception
+            {
+                return fUtil.updateDocuments(changes);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#lockDocument(Document)
+     */
+    public NuxeoFuture<Document> lockDocument(final Document document)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.lockDocument(document);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#unlockDocument(Document)
+     */
+    public NuxeoFuture<Document> unlockDocument(final Document document)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.unlockDocument(document);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#checkoutDocument(Document)
+     */
+    public NuxeoFuture<Document> checkoutDocument(final Document document)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.checkoutDocument(document);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#checkinDocument(Document, Map)
+     */
+    public NuxeoFuture<Document> checkinDocument(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.checkinDocument(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#deleteDocument(Document)
+     */
+    public NuxeoFuture<Document> deleteDocument(final Document doc)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.deleteDocument(doc);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#setDocumentLifeCycle(Document, String)
+     */
+    public NuxeoFuture<Document> setDocumentLifeCycle(final Document doc, final String value)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.setDocumentLifeCycle(doc, value);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#moveDocument(Document, Document)
+     */
+    public NuxeoFuture<Document> moveDocument(final Document documentToMove, final Document target)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.moveDocument(documentToMove, target);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#moveDocuments(Collection, Document)
+     */
+    public NuxeoFuture<BatchResult<Documents>> moveDocuments(final Collection<Document> documentsToMove, final Document target)
+    {
+        return submit(new Callable<BatchResult<Documents>>()
+        {
+            @Override
+            public BatchResult<Documents> call() throws Exception
+            {
+                return fUtil.moveDocuments(documentsToMove, target);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createVersion(Document, String, boolean)
+     */
+    public NuxeoFuture<Document> createVersion(final Document document, final String increment, final boolean saveDocument)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.createVersion(document, increment, saveDocument);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocumentVersions(Document)
+     */
+    public NuxeoFuture<List<Document>> getDocumentVersions(final Document document)
+    {
+        return submit(new Callable<List<Document>>()
+        {
+            @Override
+            public List<Document> call() throws Exception
+            {
+                return fUtil.getDocumentVersions(document);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getChildrenOfDocument(Document)
+     */
+    public NuxeoFuture<List<Document>> getChildrenOfDocument(final Document parentDocument)
+    {
+        return submit(new Callable<List<Document>>()
+        {
+            @Override
+            public List<Document> call() throws Exception
+            {
+                return fUtil.getChildrenOfDocument(parentDocument);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#addPermission(Document, Map)
+     */
+    public NuxeoFuture<Document> addPermission(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.addPermission(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#removePermission(Document, Map)
+     */
+    public NuxeoFuture<Document> removePermission(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.removePermission(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#addPermissionToDocument(Document, String, String, String, boolean)
+     */
+    public NuxeoFuture<Document> addPermissionToDocument(final Document document, final String permission, final String user, final String acl, final boolean blockInheritance)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.addPermissionToDocument(document, permission, user, acl, blockInheritance);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#removePermissionFromDocument(Document, String, String)
+     */
+    public NuxeoFuture<Document> removePermissionFromDocument(final Document document, final String user, final String acl)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.removePermissionFromDocument(document, user, acl);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#approveDocument(Document)
+     */
+    public NuxeoFuture<Document> approveDocument(final Document document)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.approveDocument(document);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#tagDocument(Document, String)
+     */
+    public NuxeoFuture<Document> tagDocument(final Document document, final String tags)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.tagDocument(document, tags);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#publishDocumentToSection(Document, Document, boolean)
+     */
+    public NuxeoFuture<Document> publishDocumentToSection(final Document documentToPublish, final Document targetSection, final boolean override)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.publishDocumentToSection(documentToPublish, targetSection, override);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#renderDocument(Document, String, String, String, String)
+     */
+    public NuxeoFuture<Blob> renderDocument(final Document documentToRender, final String template, final String filename, final String mimetype, final String type)
+    {
+        return submit(new Callable<Blob>()
+        {
+            @Override
+            public Blob call() throws Exception
+            {
+                return fUtil.renderDocument(documentToRender, template, filename, mimetype, type);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createCollection(String, String, Document)
+     */
+    public NuxeoFuture<Document> createCollection(final String name, final String description, final Document doc)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.createCollection(name, description, doc);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getCollections(String)
+     */
+    public NuxeoFuture<List<Document>> getCollections(final String searchTerm)
+    {
+        return submit(new Callable<List<Document>>()
+        {
+            @Override
+            public List<Document> call() throws Exception
+            {
+                return fUtil.getCollections(searchTerm);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getDocumentsFromCollection(Document)
+     */
+    public NuxeoFuture<List<Document>> getDocumentsFromCollection(final Document collection)
+    {
+        return submit(new Callable<List<Document>>()
+        {
+            @Override
+            public List<Document> call() throws Exception
+            {
+                return fUtil.getDocumentsFromCollection(collection);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#addDocumentsToCollection(Document, Collection)
+     */
+    public NuxeoFuture<Void> addDocumentsToCollection(final Document collection, final Collection<Document> documentsToAdd)
+    {
+        return submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                fUtil.addDocumentsToCollection(collection, documentsToAdd);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#addDocumentsToCollectionWithResult(Document, Collection)
+     */
+    public NuxeoFuture<BatchResult<Documents>> addDocumentsToCollectionWithResult(final Document collection, final Collection<Document> documentsToAdd)
+    {
+        return submit(new Callable<BatchResult<Documents>>()
+        {
+            @Override
+            public BatchResult<Documents> call() throws Exception
+            {
+                return fUtil.addDocumentsToCollectionWithResult(collection, documentsToAdd);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#removeDocumentsFromCollection(Document, Collection)
+     */
+    public NuxeoFuture<BatchResult<Documents>> removeDocumentsFromCollection(final Document collection, final Collection<Document> documentsToRemove)
+    {
+        return submit(new Callable<BatchResult<Documents>>()
+        {
+            @Override
+            public BatchResult<Documents> call() throws Exception
+            {
+                return fUtil.removeDocumentsFromCollection(collection, documentsToRemove);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#startWorkflow(Document, Map)
+     */
+    public NuxeoFuture<Document> startWorkflow(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.startWorkflow(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#startWorkflow(Document, String, boolean, Properties)
+     */
+    public NuxeoFuture<Document> startWorkflow(final Document document, final String workflowId, final boolean start, final Properties properties)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.startWorkflow(document, workflowId, start, properties);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#startCamundaWorkflow(Document, Map)
+     */
+    public NuxeoFuture<Document> startCamundaWorkflow(final Document doc, final Map<String, Object> params)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.startCamundaWorkflow(doc, params);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#setWorkflowVar(String, String, Object)
+     */
+    public NuxeoFuture<Void> setWorkflowVar(final String id, final String name, final Object value)
+    {
+        return submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                fUtil.setWorkflowVar(id, name, value);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#setWorkflowNodeVar(Document, String, Object)
+     */
+    public NuxeoFuture<Document> setWorkflowNodeVar(final Document doc, final String name, final Object value)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.setWorkflowNodeVar(doc, name, value);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#resumeWorkflow(String)
+     */
+    public NuxeoFuture<Void> resumeWorkflow(final String workflowId)
+    {
+        return submit(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                fUtil.resumeWorkflow(workflowId);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#cancelWorkflow(Document)
+     */
+    public NuxeoFuture<Documents> cancelWorkflow(final Document doc)
+    {
+        return submit(new Callable<Documents>()
+        {
+            @Override
+            public Documents call() throws Exception
+            {
+                return fUtil.cancelWorkflow(doc);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#terminateWorkflow(Document)
+     */
+    public NuxeoFuture<Documents> terminateWorkflow(final Document doc)
+    {
+        return submit(new Callable<Documents>()
+        {
+            @Override
+            public Documents call() throws Exception
+            {
+                return fUtil.terminateWorkflow(doc);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getUserTasks()
+     */
+    public NuxeoFuture<Documents> getUserTasks()
+    {
+        return submit(new Callable<Documents>()
+        {
+            @Override
+            public Documents call() throws Exception
+            {
+                return fUtil.getUserTasks();
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#getTask(String)
+     */
+    public NuxeoFuture<Document> getTask(final String id)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.getTask(id);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#createTask(boolean, Map, Document)
+     */
+    public NuxeoFuture<Document> createTask(final boolean routing, final Map<String, Object> parameters, final Document doc)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.createTask(routing, parameters, doc);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#completeTask(Document, Map)
+     */
+    public NuxeoFuture<Document> completeTask(final Document doc, final Map<String, Object> parameters)
+    {
+        return submit(new Callable<Document>()
+        {
+            @Override
+            public Document call() throws Exception
+            {
+                return fUtil.completeTask(doc, parameters);
+            }
+        });
+    }
+
+    /**
+     * @see NuxeoUtility#queryUsers(String, String)
+     */
+    public NuxeoFuture<Blob> queryUsers(final String pattern, final String tenantId)
+    {
+        return submit(new Callable<Blob>()
+        {
+            @Override
+            public Blob call() throws Exception
+            {
+                return fUtil.queryUsers(pattern, tenantId);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting operations, running and waiting ones are completed.
+     * Executors passed in by the caller are left running.
+     */
+    public void shutdown()
+    {
+        if(fOwnExecutor)
+        {
+            fExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Results of a batch operation by item, in the order the items were given.
+ * Each item either succeeded with a result or failed with an exception,
+ * failing items do not affect the others.
+ * @param <T> type of the item results
+ */
+public class BatchResult<T>
+{
+    private final List<T> fResults;
+    private final List<Exception> fFailures;
+
+    private int fFailureCount = 0;
+
+    /**
+     * @param size number of items in the batch
+     */
+    BatchResult(int size)
+    {
+        fResults = new ArrayList<T>(Collections.<T>nCopies(size, null));
+        fFailures = new ArrayList<Exception>(Collections.<Exception>nCopies(size, null));
+    }
+
+    void setResult(int index, T result)
+    {
+        fResults.set(index, result);
+    }
+
+    void setFailure(int index, Exception failure)
+    {
+        if(fFailures.set(index, failure) == null)
+        {
+            ++fFailureCount;
+        }
+    }
+
+    /**
+     * @return number of items in the batch
+     */
+    public int size()
+    {
+        return fResults.size();
+    }
+
+    /**
+     * @param index index of the item
+     * @return whether the item succeeded
+     */
+    public boolean isSuccess(int index)
+    {
+        return fFailures.get(index) == null;
+    }
+
+    /**
+     * @param index index of the item
+     * @return result of the item or null if it failed
+     */
+    public T getResult(int index)
+    {
+        return fResults.get(index);
+    }
+
+    /**
+     * @param index index of the item
+     * @return failure of the item or null if it succeeded
+     */
+    public Exception getFailure(int index)
+    {
+        return fFailures.get(index);
+    }
+
+    /**
+     * @return unmodifiable results of all items, null for failed ones
+     */
+    public List<T> getResults()
+    {
+        return Collections.unmodifiableList(fResults);
+    }
+
+    /**
+     * @return failures by item index
+     */
+    public Map<Integer, Exception> getFailures()
+    {
+        final Map<Integer, Exception> failures = new LinkedHashMap<Integer, Exception>();
+
+        for(int i = 0; i < fFailures.size(); ++i)
+        {
+            if(fFailures.get(i) != null)
+            {
+                failures.put(i, fFailures.get(i));
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * @return number of failed items
+     */
+    public int getFailureCount()
+    {
+        return fFailureCount;
+    }
+
+    /**
+     * @return whether all items succeeded
+     */
+    public boolean isSuccess()
+    {
+        return fFailureCount == 0;
+    }
+
+    /**
+     * Throws the failure of the first failed item, the others are available
+     * through {@link #getFailures()}.
+     * @throws Exception if any item failed
+     */
+    public void throwIfFailed() throws Exception
+    {
+        for(Exception failure : fFailures)
+        {
+            if(failure != null)
+            {
+                throw failure;
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchResult[size=" + size() + ", failures=" + fFailureCount + "]";
+    }
+}
@@ -0,0 +1,357 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.automation.client.model.Blob;
+import org.nuxeo.ecm.automation.client.model.FileBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe, size-bounded LRU cache of blob contents on disk, keyed by
+ * content digest or by document ID and version. Hits are returned as
+ * memory-mapped {@link MappedBlob}s, which stay readable after eviction.
+ * Concurrent requests for the same missing key load it only once.
+ * The cache uses its own temporary directory, which is removed by
+ * {@link #clear()}.
+ */
+public class BlobCache
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(BlobCache.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * Writes the content of a missing entry.
+     */
+    public interface Loader
+    {
+        /**
+         * @param target existing, empty file to write the content to
+         * @return blob providing file name and MIME type of the content, its
+         *  stream is not read, may be null
+         * @throws Exception if the content could not be loaded
+         */
+        Blob load(Path target) throws Exception;
+    }
+
+    private final Path fDirectory;
+    private final long fMaxSize;
+
+    private final LinkedHashMap<String, CacheEntry> fEntries;
+    private final Object[] fLocks;
+
+    private final AtomicLong fFileNames;
+    private final AtomicLong fHits, fMisses, fEvictions;
+
+    private long fSize = 0;
+
+    /**
+     * @param parent directory to create the cache directory in
+     * @param maxSize maximum number of bytes kept on disk
+     * @throws IOException if the cache directory could not be created
+     */
+    public BlobCache(Path parent, long maxSize) throws IOException
+    {
+        if(maxSize < 1)
+        {
+            throw new IllegalArgumentException("invalid cache size: " + maxSize);
+        }
+
+        Files.createDirectories(parent);
+        fDirectory = Files.createTempDirectory(parent, "nuxeo-blobs");
+        fMaxSize = maxSize;
+
+        //access order for least recently used eviction
+        fEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+        fLocks = new Object[LOCK_STRIPES];
+        for(int i = 0; i < fLocks.length; ++i)
+        {
+            fLocks[i] = new Object();
+        }
+
+        fFileNames = new AtomicLong();
+        fHits = new AtomicLong();
+        fMisses = new AtomicLong();
+        fEvictions = new AtomicLong();
+    }
+
+    /**
+     * Returns the cached content or loads it, while other threads asking
+     * for the same key wait for the result.
+     * @param key key of the content, e.g. its digest
+     * @param fileName file name of the returned blob, null for the one
+     *  provided by the loader
+     * @param mimeType MIME type of the returned blob, null for the one
+     *  provided by the loader
+     * @param loader loader for missing content
+     * @return the content as blob
+     * @throws Exception if the content was missing and could not be loaded
+     */
+    public Blob get(String key, String fileName, String mimeType, Loader loader)
+        throws Exception
+    {
+        Blob blob = lookup(key, fileName, mimeType);
+        if(blob != null)
+        {
+            return blob;
+        }
+
+        synchronized(fLocks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES])
+        {
+            //loaded while waiting
+            blob = lookup(key, fileName, mimeType);
+            if(blob != null)
+            {
+                return blob;
+            }
+
+            fMisses.incrementAndGet();
+            return load(key, fileName, mimeType, loader);
+        }
+    }
+
+    private Blob lookup(String key, String fileName, String mimeType) throws IOException
+    {
+        final CacheEntry entry;
+        synchronized(fEntries)
+        {
+            entry = fEntries.get(key);
+        }
+
+        if(entry == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            final MappedByteBuffer buffer = map(entry.fFile);
+            fHits.incrementAndGet();
+
+            return new MappedBlob(buffer, fileName != null ? fileName : entry.fFileName,
+                mimeType != null ? mimeType : entry.fMimeType);
+        }
+        catch(NoSuchFileException e)
+        {
+            //evicted concurrently
+            return null;
+        }
+    }
+
+    private Blob load(String key, String fileName, String mimeType, Loader loader)
+        throws Exception
+    {
+        final Path temp = Files.createTempFile(fDirectory, "load", ".tmp");
+        boolean keepTemp = false;
+
+        try
+        {
+            final Blob meta = loader.load(temp);
+            if(meta != null)
+            {
+                fileName = fileName != null ? fileName : meta.getFileName();
+                mimeType = mimeType != null ? mimeType : meta.getMimeType();
+            }
+
+            final long size = Files.size(temp);
+            if(size > Integer.MAX_VALUE)
+            {
+                //can not be mapped, hand the file over to the caller
+                LOG.debug("not caching " + key + " of " + size + " bytes");
+                keepTemp = true;
+                return new FileBlob(temp.toFile(), fileName, mimeType);
+            }
+
+            final Path file = fDirectory.resolve(fFileNames.incrementAndGet() + ".blob");
+            move(temp, file);
+
+            //mapped before eviction, which might remove the file right away
+            final MappedByteBuffer buffer = map(file);
+            put(key, new CacheEntry(file, size, fileName, mimeType));
+
+            return new MappedBlob(buffer, fileName, mimeType);
+        }
+        finally
+        {
+            if(!keepTemp)
+            {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private void put(String key, CacheEntry entry)
+    {
+        synchronized(fEntries)
+        {
+            final CacheEntry previous = fEntries.put(key, entry);
+            fSize += entry.fSize;
+            if(previous != null)
+            {
+                fSize -= previous.fSize;
+                delete(previous.fFile);
+            }
+
+            //least recently used first
+            final Iterator<CacheEntry> entries = fEntries.values().iterator();
+            while(fSize > fMaxSize && entries.hasNext())
+            {
+                final CacheEntry eldest = entries.next();
+                entries.remove();
+                fSize -= eldest.fSize;
+                fEvictions.incrementAndGet();
+                delete(eldest.fFile);
+            }
+        }
+    }
+
+    /**
+     * @param key key whose entry is removed
+     */
+    public void invalidate(String key)
+    {
+        synchronized(fEntries)
+        {
+            final CacheEntry entry = fEntries.remove(key);
+            if(entry != null)
+            {
+                fSize -= entry.fSize;
+                delete(entry.fFile);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries and the cache directory.
+     */
+    public void clear()
+    {
+        synchronized(fEntries)
+        {
+            fEntries.clear();
+            fSize = 0;
+        }
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(fDirectory))
+        {
+            for(Path file : files)
+            {
+                delete(file);
+            }
+            Files.deleteIfExists(fDirectory);
+        }
+        catch(IOException e)
+        {
+            LOG.warn("could not remove blob cache " + fDirectory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            //the mapping stays valid after closing the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target);
+        }
+    }
+
+    private static void delete(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e)
+        {
+            //e.g. still mapped on Windows, removed with the directory
+            LOG.debug("could not delete " + file, e);
+        }
+    }
+
+    public Path getDirectory()
+    {
+        return fDirectory;
+    }
+
+    /**
+     * @return number of bytes currently cached
+     */
+    public long getSize()
+    {
+        synchronized(fEntries)
+        {
+            return fSize;
+        }
+    }
+
+    public int size()
+    {
+        synchronized(fEntries)
+        {
+            return fEntries.size();
+        }
+    }
+
+    public long getHits()
+    {
+        return fHits.get();
+    }
+
+    public long getMisses()
+    {
+        return fMisses.get();
+    }
+
+    public long getEvictions()
+    {
+        return fEvictions.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BlobCache[size=" + size() + ", bytes=" + getSize() + ", hits=" + getHits()
+            + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    private static class CacheEntry
+    {
+        private final Path fFile;
+        private final long fSize;
+        private final String fFileName, fMimeType;
+
+        private CacheEntry(Path file, long size, String fileName, String mimeType)
+        {
+            fFile = file;
+            fSize = size;
+            fFileName = fileName;
+            fMimeType = mimeType;
+        }
+    }
+}
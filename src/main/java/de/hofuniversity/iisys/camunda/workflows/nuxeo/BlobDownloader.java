@@ -0,0 +1,305 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams blobs to channels or files without keeping them in memory or in
+ * temporary files. Interrupted transfers are resumed with range requests
+ * from the last byte written.
+ * Downloads to a file are written to "<file>.part" first, so a later
+ * download of the same file continues where a failed one stopped. The
+ * ETag or modification date of the blob is kept in "<file>.part.validator"
+ * and sent with the resuming request (If-Range), so the download starts
+ * over if the blob changed in the meantime.
+ */
+public class BlobDownloader
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(BlobDownloader.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String VALIDATOR_SUFFIX = ".part.validator";
+
+    private final HttpUtil fHttp;
+    private final int fRetries;
+
+    /**
+     * @param http client used for the requests
+     * @param retries number of attempts to resume an interrupted transfer
+     */
+    public BlobDownloader(HttpUtil http, int retries)
+    {
+        if(retries < 0)
+        {
+            throw new IllegalArgumentException("invalid number of retries: " + retries);
+        }
+
+        fHttp = http;
+        fRetries = retries;
+    }
+
+    /**
+     * @param url URL of the blob
+     * @param out stream to write to, not closed
+     * @param listener listener for the progress, may be null
+     * @return number of bytes written
+     * @throws IOException if the download failed
+     */
+    public long download(URL url, OutputStream out, ProgressListener listener)
+        throws IOException
+    {
+        return download(url, Channels.newChannel(out), listener);
+    }
+
+    /**
+     * @param url URL of the blob
+     * @param out channel to write to, not closed
+     * @param listener listener for the progress, may be null
+     * @return number of bytes written
+     * @throws IOException if the download failed
+     */
+    public long download(URL url, WritableByteChannel out, ProgressListener listener)
+        throws IOException
+    {
+        return transfer(url, out, 0, null, null, listener);
+    }
+
+    /**
+     * Downloads to a file, resuming a previous partial download of it.
+     * The file is only replaced once the download is complete.
+     * @param url URL of the blob
+     * @param target file to write
+     * @param listener listener for the progress, may be null
+     * @return size of the file
+     * @throws IOException if the download failed
+     */
+    public long download(URL url, Path target, ProgressListener listener)
+        throws IOException
+    {
+        final Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        final Path validatorFile = target.resolveSibling(target.getFileName() + VALIDATOR_SUFFIX);
+        long size;
+
+        try(FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE))
+        {
+            long offset = channel.size();
+            final String validator = readValidator(validatorFile);
+            if(offset > 0 && validator == null)
+            {
+                //without a validator a changed blob would be mixed with the old one
+                LOG.debug("partial download of " + url + " can not be validated, restarting");
+                channel.truncate(0);
+                offset = 0;
+            }
+            else if(offset > 0)
+            {
+                LOG.debug("resuming download of " + url + " at byte " + offset);
+            }
+
+            try
+            {
+                size = transfer(url, channel, offset, validator, validatorFile, listener);
+            }
+            catch(HttpStatusException e)
+            {
+                //partial file longer than the blob, it must have changed
+                if(e.getStatus() != 416)
+                {
+                    throw e;
+                }
+                LOG.warn("partial download of " + url + " is stale, restarting");
+                channel.truncate(0);
+                size = transfer(url, channel, 0, null, validatorFile, listener);
+            }
+            channel.truncate(size);
+            channel.force(false);
+        }
+
+        try
+        {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(validatorFile);
+
+        return size;
+    }
+
+    private static String readValidator(Path file) throws IOException
+    {
+        if(!Files.exists(file))
+        {
+            return null;
+        }
+
+        final String validator = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        return validator.isEmpty() ? null : validator;
+    }
+
+    /**
+     * @param validator validator of the blob at the offset, may be null
+     * @param validatorFile file to keep the blob's validator in, null if the
+     *  download can not be resumed later on
+     */
+    private long transfer(URL url, WritableByteChannel out, long offset, String validator,
+        Path validatorFile, ProgressListener listener) throws IOException
+    {
+        final Transfer transfer = new Transfer(out, offset, validator, validatorFile, listener);
+
+        for(int attempt = 0;; ++attempt)
+        {
+            try
+            {
+                return fHttp.getRange(url, transfer.fPosition, transfer.fValidator, transfer);
+            }
+            catch(InterruptedIOException e)
+            {
+                throw e;
+            }
+            catch(HttpStatusException e)
+            {
+                if(!e.isTransient() || attempt >= fRetries)
+                {
+                    throw e;
+                }
+                LOG.warn("download of " + url + " failed, retrying at byte "
+                    + transfer.fPosition, e);
+            }
+            catch(IOException e)
+            {
+                if(attempt >= fRetries)
+                {
+                    throw e;
+                }
+                LOG.warn("download of " + url + " interrupted, resuming at byte "
+                    + transfer.fPosition, e);
+            }
+        }
+    }
+
+    /**
+     * Copies response bodies to the channel, keeping track of the position
+     * and the validator of the blob across resumed requests.
+     */
+    private static class Transfer implements HttpUtil.RangeHandler<Long>
+    {
+        private final WritableByteChannel fOut;
+        private final Path fValidatorFile;
+        private final ProgressListener fListener;
+
+        private long fPosition;
+        private String fValidator;
+
+        public Transfer(WritableByteChannel out, long offset, String validator,
+            Path validatorFile, ProgressListener listener)
+        {
+            fOut = out;
+            fPosition = offset;
+            fValidator = validator;
+            fValidatorFile = validatorFile;
+            fListener = listener;
+        }
+
+        @Override
+        public void start(long offset, String validator) throws IOException
+        {
+            if(offset != fPosition)
+            {
+                //the blob changed, only a file can be written again from the start
+                if(!(fOut instanceof FileChannel))
+                {
+                    throw new IOException("blob changed during the download, expected "
+                        + fValidator + ", got " + validator);
+                }
+                LOG.warn("blob changed since byte " + fPosition + " was downloaded, restarting");
+                fPosition = offset;
+            }
+
+            if(validator != null && !validator.equals(fValidator))
+            {
+                fValidator = validator;
+                if(fValidatorFile != null)
+                {
+                    //written before the body, so a partial file always has one
+                    Files.write(fValidatorFile, validator.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        @Override
+        public Long handle(InputStream in, Charset charset, long length)
+            throws IOException
+        {
+            final long total = length >= 0 ? fPosition + length : -1;
+            final ReadableByteChannel source = Channels.newChannel(in);
+
+            if(fOut instanceof FileChannel)
+            {
+                //let the file channel pull from the source directly
+                final FileChannel file = (FileChannel) fOut;
+                long count = file.transferFrom(source, fPosition, CHUNK_SIZE);
+                while(count > 0)
+                {
+                    fPosition += count;
+                    progress(total);
+                    count = file.transferFrom(source, fPosition, CHUNK_SIZE);
+                }
+            }
+            else
+            {
+                final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+                while(source.read(buffer) >= 0)
+                {
+                    buffer.flip();
+                    while(buffer.hasRemaining())
+                    {
+                        fPosition += fOut.write(buffer);
+                    }
+                    buffer.clear();
+                    progress(total);
+                }
+            }
+
+            if(total >= 0 && fPosition != total)
+            {
+                throw new IOException("expected " + total + " bytes, got " + fPosition);
+            }
+            progress(fPosition);
+
+            return fPosition;
+        }
+
+        private void progress(long total)
+        {
+            if(fListener != null)
+            {
+                fListener.progress(fPosition, total);
+            }
+        }
+    }
+}
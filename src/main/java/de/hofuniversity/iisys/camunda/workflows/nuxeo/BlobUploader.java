@@ -0,0 +1,438 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads files through Nuxeo's batch upload API ("api/v1/upload") in
+ * chunks, so memory use is bounded by the chunk size times the number of
+ * parallel chunk requests, independent of the file size.
+ * Failed chunks are retried, and uploading again to the same batch only
+ * sends the chunks the server does not have yet. Uploaded files are
+ * attached to documents with "Blob.AttachOnDocument".
+ */
+public class BlobUploader
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(BlobUploader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 5 * 1024 * 1024;
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    //parses the JSON object returned by the batch upload API
+    private static final HttpUtil.ResponseHandler<Map<?, ?>> JSON_HANDLER =
+        new HttpUtil.ResponseHandler<Map<?, ?>>()
+    {
+        @Override
+        public Map<?, ?> handle(InputStream in, Charset charset, long length)
+            throws IOException
+        {
+            return JsonUtil.parseObject(new InputStreamReader(in, charset), "upload");
+        }
+    };
+
+    private final HttpUtil fHttp;
+    private final String fUploadUrl;
+    private final ExecutorService fExecutor;
+
+    private final int fChunkSize, fParallelism, fRetries;
+
+    /**
+     * @param http client used for the requests
+     * @param uploadUrl URL of the batch upload API, ending with a slash
+     * @param executor executor sending the chunks
+     * @param chunkSize bytes per chunk
+     * @param parallelism maximum number of chunks sent concurrently
+     * @param retries number of attempts to repeat a failed chunk
+     */
+    public BlobUploader(HttpUtil http, String uploadUrl, ExecutorService executor,
+        int chunkSize, int parallelism, int retries)
+    {
+        if(chunkSize < 1 || parallelism < 1 || retries < 0)
+        {
+            throw new IllegalArgumentException("invalid chunk size " + chunkSize
+                + ", parallelism " + parallelism + " or retries " + retries);
+        }
+
+        fHttp = http;
+        fUploadUrl = uploadUrl;
+        fExecutor = executor;
+
+        fChunkSize = chunkSize;
+        fParallelism = parallelism;
+        fRetries = retries;
+    }
+
+    /**
+     * @return ID of a new, empty batch
+     * @throws IOException if the batch could not be created
+     */
+    public String createBatch() throws IOException
+    {
+        final Map<?, ?> json = fHttp.send(new URL(fUploadUrl), "POST", OCTET_STREAM,
+            new byte[0], JSON_HANDLER);
+
+        final Object batchId = json.get("batchId");
+        if(batchId == null)
+        {
+            throw new IOException("no batch ID in response: " + json);
+        }
+
+        return batchId.toString();
+    }
+
+    /**
+     * Uploads a file, skipping chunks already uploaded by a previous
+     * attempt with the same batch and index.
+     * @param batchId ID of the batch
+     * @param fileIdx index of the file within the batch
+     * @param file file to upload
+     * @param mimeType MIME type of the file, null to guess it
+     * @param listener listener for the progress, may be null, called from
+     *  the sending threads
+     * @throws IOException if the upload failed
+     */
+    public void upload(String batchId, int fileIdx, Path file, String mimeType,
+        ProgressListener listener) throws IOException
+    {
+        if(mimeType == null)
+        {
+            mimeType = Files.probeContentType(file);
+        }
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            upload(batchId, fileIdx, channel, channel.size(),
+                file.getFileName().toString(), mimeType, listener);
+        }
+    }
+
+    /**
+     * Uploads a stream of known length, skipping chunks already uploaded
+     * by a previous attempt with the same batch and index.
+     * @param batchId ID of the batch
+     * @param fileIdx index of the file within the batch
+     * @param in stream to upload, not closed
+     * @param size number of bytes in the stream
+     * @param fileName name of the file
+     * @param mimeType MIME type of the file, may be null
+     * @param listener listener for the progress, may be null, called from
+     *  the sending threads
+     * @throws IOException if the upload failed
+     */
+    public void upload(String batchId, int fileIdx, InputStream in, long size,
+        String fileName, String mimeType, ProgressListener listener) throws IOException
+    {
+        upload(batchId, fileIdx, Channels.newChannel(in), size, fileName, mimeType,
+            listener);
+    }
+
+    private void upload(String batchId, int fileIdx, ReadableByteChannel source,
+        long size, String fileName, String mimeType, ProgressListener listener)
+        throws IOException
+    {
+        final URL url = new URL(fUploadUrl + batchId + "/" + fileIdx);
+        final int chunkCount = (int) Math.max(1, (size + fChunkSize - 1) / fChunkSize);
+
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("X-Upload-Type", "chunked");
+        headers.put("X-Upload-Chunk-Count", Integer.toString(chunkCount));
+        headers.put("X-File-Name", URLEncoder.encode(fileName, "UTF-8").replace("+", "%20"));
+        headers.put("X-File-Size", Long.toString(size));
+        headers.put("X-File-Type", mimeType != null ? mimeType : OCTET_STREAM);
+
+        final Set<Integer> uploaded = getUploadedChunks(url, size, chunkCount);
+        final Progress progress = new Progress(listener, size);
+
+        //bounds the chunks in memory, read but not yet sent
+        final Semaphore permits = new Semaphore(fParallelism);
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        final List<Future<?>> sent = new ArrayList<Future<?>>();
+
+        try
+        {
+            for(int index = 0; index < chunkCount && failure.get() == null; ++index)
+            {
+                final int length = (int) Math.min(fChunkSize, size - (long) index * fChunkSize);
+
+                if(uploaded.contains(index))
+                {
+                    skip(source, length);
+                    progress.add(length);
+                    continue;
+                }
+
+                acquire(permits);
+                final byte[] chunk;
+                try
+                {
+                    chunk = read(source, length);
+                }
+                catch(IOException e)
+                {
+                    permits.release();
+                    throw e;
+                }
+
+                final Map<String, String> chunkHeaders = new HashMap<String, String>(headers);
+                chunkHeaders.put("X-Upload-Chunk-Index", Integer.toString(index));
+
+                sent.add(fExecutor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            sendChunk(url, chunk, chunkHeaders);
+                            progress.add(chunk.length);
+                        }
+                        catch(IOException e)
+                        {
+                            failure.compareAndSet(null, e);
+                        }
+                        finally
+                        {
+                            permits.release();
+                        }
+                    }
+                }));
+            }
+
+            await(sent);
+        }
+        finally
+        {
+            //on errors, do not keep sending in the background
+            for(Future<?> future : sent)
+            {
+                future.cancel(true);
+            }
+        }
+
+        if(failure.get() != null)
+        {
+            throw failure.get();
+        }
+    }
+
+    private void sendChunk(URL url, byte[] chunk, Map<String, String> headers)
+        throws IOException
+    {
+        for(int attempt = 0;; ++attempt)
+        {
+            try
+            {
+                fHttp.send(url, "POST", OCTET_STREAM, chunk, headers, HttpUtil.TEXT);
+                return;
+            }
+            catch(InterruptedIOException e)
+            {
+                throw e;
+            }
+            catch(IOException e)
+            {
+                if(attempt >= fRetries
+                    || (e instanceof HttpStatusException && !((HttpStatusException) e).isTransient()))
+                {
+                    throw e;
+                }
+                LOG.warn("upload of chunk " + headers.get("X-Upload-Chunk-Index")
+                    + " to " + url + " failed, retrying", e);
+            }
+        }
+    }
+
+    /**
+     * @return indexes of the chunks the server already has, if they belong
+     *  to an upload of the same size
+     */
+    private Set<Integer> getUploadedChunks(URL url, long size, int chunkCount)
+        throws IOException
+    {
+        final Set<Integer> uploaded = new HashSet<Integer>();
+
+        final Map<?, ?> json;
+        try
+        {
+            json = fHttp.get(url, JSON_HANDLER);
+        }
+        catch(HttpStatusException e)
+        {
+            //nothing uploaded yet
+            if(e.getStatus() == 404)
+            {
+                return uploaded;
+            }
+            throw e;
+        }
+
+        final Object ids = json.get("uploadedChunkIds");
+        if(ids instanceof List
+            && String.valueOf(size).equals(String.valueOf(json.get("size")))
+            && String.valueOf(chunkCount).equals(String.valueOf(json.get("chunkCount"))))
+        {
+            for(Object id : (List<?>) ids)
+            {
+                uploaded.add(Integer.valueOf(id.toString()));
+            }
+        }
+
+        if(!uploaded.isEmpty())
+        {
+            LOG.debug("resuming upload to " + url + ", " + uploaded.size()
+                + " of " + chunkCount + " chunks present");
+        }
+
+        return uploaded;
+    }
+
+    /**
+     * Attaches an uploaded file to a document and removes the batch.
+     * @param batchId ID of the batch
+     * @param fileIdx index of the file within the batch
+     * @param docId ID of the document
+     * @param xpath property to attach to, e.g. "file:content"
+     * @throws IOException if the file could not be attached
+     */
+    public void attach(String batchId, int fileIdx, String docId, String xpath)
+        throws IOException
+    {
+        final URL url = new URL(fUploadUrl + batchId + "/" + fileIdx
+            + "/execute/Blob.AttachOnDocument");
+
+        fHttp.requestJson(url, "POST", "{\"params\":{\"document\":\""
+            + escapeJson(docId) + "\",\"xpath\":\"" + escapeJson(xpath)
+            + "\",\"save\":true}}");
+    }
+
+    /**
+     * Removes a batch and all files uploaded to it.
+     * @param batchId ID of the batch
+     * @throws IOException if the batch could not be removed
+     */
+    public void drop(String batchId) throws IOException
+    {
+        fHttp.send(new URL(fUploadUrl + batchId), "DELETE", null, null, HttpUtil.TEXT);
+    }
+
+    private static void acquire(Semaphore permits) throws InterruptedIOException
+    {
+        try
+        {
+            permits.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting to send a chunk");
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws IOException
+    {
+        try
+        {
+            for(Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for chunks");
+        }
+        catch(ExecutionException e)
+        {
+            throw new IOException("sending a chunk failed", e.getCause());
+        }
+    }
+
+    private static byte[] read(ReadableByteChannel source, int length) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while(buffer.hasRemaining())
+        {
+            if(source.read(buffer) < 0)
+            {
+                throw new EOFException("expected " + length + " more bytes, got "
+                    + buffer.position());
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private static void skip(ReadableByteChannel source, int length) throws IOException
+    {
+        if(source instanceof FileChannel)
+        {
+            final FileChannel file = (FileChannel) source;
+            file.position(file.position() + length);
+        }
+        else
+        {
+            read(source, length);
+        }
+    }
+
+    private static String escapeJson(String value)
+    {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Sums up the bytes sent by all threads for the listener.
+     */
+    private static class Progress
+    {
+        private final ProgressListener fListener;
+        private final long fTotal;
+        private final AtomicLong fTransferred = new AtomicLong();
+
+        public Progress(ProgressListener listener, long total)
+        {
+            fListener = listener;
+            fTotal = total;
+        }
+
+        public void add(long bytes)
+        {
+            final long transferred = fTransferred.addAndGet(bytes);
+            if(fListener != null)
+            {
+                fListener.progress(transferred, fTotal);
+            }
+        }
+    }
+}
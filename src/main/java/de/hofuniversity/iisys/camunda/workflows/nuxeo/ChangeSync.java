@@ -0,0 +1,231 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental synchronization of changed documents, replacing full
+ * rescans by {@link NuxeoUtility#getAllDocumentIds(long, long)}.
+ * Documents are read ordered by dc:modified and ID, paged by keyset from
+ * a persisted {@link SyncCheckpoint}, so each poll only reads what changed
+ * since the previous one.
+ * Since transactions may commit after later ones, each poll re-reads a
+ * short overlap window before the checkpoint and skips documents it has
+ * already reported. Changes are delivered at least once: after a restart
+ * or a failed listener, some may be reported again.
+ * Documents moved to the trash are reported as deleted, documents removed
+ * permanently are not visible to NXQL and therefore not reported.
+ */
+public class ChangeSync
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(ChangeSync.class);
+
+    /** Live documents of type File, like {@link NuxeoUtility#getAllDocumentIds()}. */
+    public static final String DEFAULT_FILTER =
+        "ecm:primaryType = 'File' AND ecm:isVersion = 0 AND ecm:isProxy = 0";
+
+    /** Milliseconds re-read before the checkpoint on every poll. */
+    public static final long DEFAULT_OVERLAP = 5000;
+
+    private static final String DELETED_STATE = "deleted";
+
+    /**
+     * Receives the changes of a poll in the order of their modification.
+     */
+    public interface Listener
+    {
+        /**
+         * @param change the next change
+         * @throws Exception to abort the poll
+         */
+        void onChange(DocumentChange change) throws Exception;
+    }
+
+    private final NuxeoUtility fNuxeo;
+    private final NxqlQuery fQuery;
+    private final String fSchemas;
+    private final int fPageSize;
+
+    private final Path fStateFile;
+    private final long fOverlap;
+
+    //documents reported within the overlap window, ID to modification time
+    private final Map<String, Long> fRecent;
+
+    private SyncCheckpoint fCheckpoint;
+
+    /**
+     * Synchronizes live documents of type File, reading only dublincore.
+     * @param nuxeo utility to query with
+     * @param stateFile file the checkpoint is persisted in, null to start
+     *  from the beginning and not persist it
+     * @throws IOException if the checkpoint could not be read
+     */
+    public ChangeSync(NuxeoUtility nuxeo, Path stateFile) throws IOException
+    {
+        this(nuxeo, DEFAULT_FILTER, NuxeoUtility.SCHEMAS_DUBLINCORE, stateFile, DEFAULT_OVERLAP);
+    }
+
+    /**
+     * @param nuxeo utility to query with
+     * @param filter NXQL condition selecting the documents to synchronize
+     * @param schemas comma separated schemas to read, must include dublincore
+     * @param stateFile file the checkpoint is persisted in, null to start
+     *  from the beginning and not persist it
+     * @param overlap milliseconds re-read before the checkpoint
+     * @throws IOException if the checkpoint could not be read
+     */
+    public ChangeSync(NuxeoUtility nuxeo, String filter, String schemas, Path stateFile,
+        long overlap) throws IOException
+    {
+        if(overlap < 0)
+        {
+            throw new IllegalArgumentException("invalid overlap: " + overlap);
+        }
+
+        fNuxeo = nuxeo;
+        fQuery = NxqlQuery.of("SELECT * FROM Document WHERE (" + filter + ")"
+            + " AND (dc:modified > ? OR (dc:modified = ? AND ecm:uuid > ?))"
+            + " ORDER BY dc:modified, ecm:uuid");
+        fSchemas = schemas;
+        fPageSize = nuxeo.getPageSize();
+
+        fStateFile = stateFile;
+        fOverlap = overlap;
+
+        fRecent = new HashMap<String, Long>();
+
+        fCheckpoint = stateFile != null ? SyncCheckpoint.load(stateFile) : SyncCheckpoint.START;
+    }
+
+    /**
+     * Reports all changes since the previous poll and advances the
+     * checkpoint after each page.
+     * @param listener receiver of the changes
+     * @return number of reported changes
+     * @throws Exception if a query failed or the listener aborted
+     */
+    public synchronized int poll(Listener listener) throws Exception
+    {
+        //documents created after everything seen so far are new
+        final long since = fCheckpoint.getTimestamp();
+        final boolean initial = SyncCheckpoint.START.equals(fCheckpoint);
+
+        SyncCheckpoint cursor = initial ? fCheckpoint
+            : new SyncCheckpoint(Math.max(0, since - fOverlap), "");
+        SyncCheckpoint saved = fCheckpoint;
+        int count = 0;
+
+        Documents page;
+        do
+        {
+            final Date cursorTime = new Date(cursor.getTimestamp());
+            page = fNuxeo.queryPage(fQuery.bind(cursorTime, cursorTime, cursor.getId()),
+                fPageSize, fSchemas);
+
+            for(Document doc : page)
+            {
+                final long modified = getModified(doc);
+                cursor = new SyncCheckpoint(modified, doc.getId());
+
+                final Long reported = fRecent.get(doc.getId());
+                if(reported != null && reported == modified)
+                {
+                    continue;
+                }
+
+                listener.onChange(new DocumentChange(getType(doc, since, initial), doc,
+                    new Date(modified)));
+                fRecent.put(doc.getId(), modified);
+                ++count;
+
+                if(fCheckpoint.isBefore(modified, doc.getId()))
+                {
+                    fCheckpoint = cursor;
+                }
+            }
+
+            save(saved);
+            saved = fCheckpoint;
+            prune();
+        }
+        while(page.size() >= fPageSize);
+
+        if(count > 0)
+        {
+            LOG.debug(count + " document changes up to " + fCheckpoint);
+        }
+
+        return count;
+    }
+
+    private static long getModified(Document doc)
+    {
+        final PropertyMap props = doc.getProperties();
+        Date modified = props != null ? props.getDate("dc:modified") : null;
+        if(modified == null)
+        {
+            modified = doc.getLastModified();
+        }
+
+        return modified != null ? modified.getTime() : 0;
+    }
+
+    private static DocumentChange.Type getType(Document doc, long since, boolean initial)
+    {
+        if(DELETED_STATE.equals(doc.getState()))
+        {
+            return DocumentChange.Type.DELETED;
+        }
+
+        final PropertyMap props = doc.getProperties();
+        final Date created = props != null ? props.getDate("dc:created") : null;
+        if(initial || (created != null && created.getTime() > since))
+        {
+            return DocumentChange.Type.ADDED;
+        }
+
+        return DocumentChange.Type.UPDATED;
+    }
+
+    private void save(SyncCheckpoint saved) throws IOException
+    {
+        if(fStateFile != null && !fCheckpoint.equals(saved))
+        {
+            fCheckpoint.save(fStateFile);
+        }
+    }
+
+    //only documents within the overlap window can be read again
+    private void prune()
+    {
+        final long limit = fCheckpoint.getTimestamp() - fOverlap;
+
+        final Iterator<Long> reported = fRecent.values().iterator();
+        while(reported.hasNext())
+        {
+            if(reported.next() < limit)
+            {
+                reported.remove();
+            }
+        }
+    }
+
+    /**
+     * @return checkpoint after the last reported change
+     */
+    public synchronized SyncCheckpoint getCheckpoint()
+    {
+        return fCheckpoint;
+    }
+}
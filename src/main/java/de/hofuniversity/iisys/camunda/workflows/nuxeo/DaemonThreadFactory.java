@@ -0,0 +1,28 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads, so background work of the connector never
+ * keeps the process engine from shutting down.
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+    private final String fPrefix;
+    private final AtomicInteger fCount;
+
+    public DaemonThreadFactory(String prefix)
+    {
+        fPrefix = prefix;
+        fCount = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+        Thread thread = new Thread(r, fPrefix + "-" + fCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
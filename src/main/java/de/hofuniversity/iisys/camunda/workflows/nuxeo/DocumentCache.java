@@ -0,0 +1,175 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, size-bounded LRU cache for values keyed by document ID.
+ * Entries expire after a fixed time to live and carry the document version
+ * (dc:modified) they were read for, so they can be dropped once the
+ * document has been modified.
+ * @param <V> type of the cached values
+ */
+public class DocumentCache<V>
+{
+    private final int fMaxSize;
+    private final long fTimeToLive;
+
+    private final LinkedHashMap<String, CacheEntry<V>> fEntries;
+
+    private final AtomicLong fHits, fMisses, fEvictions;
+
+    /**
+     * @param maxSize maximum number of cached entries
+     * @param timeToLive milliseconds an entry stays valid, 0 or less for no expiry
+     */
+    public DocumentCache(int maxSize, long timeToLive)
+    {
+        if(maxSize < 1)
+        {
+            throw new IllegalArgumentException("invalid cache size: " + maxSize);
+        }
+
+        fMaxSize = maxSize;
+        fTimeToLive = timeToLive;
+
+        fHits = new AtomicLong();
+        fMisses = new AtomicLong();
+        fEvictions = new AtomicLong();
+
+        //access order for least recently used eviction
+        fEntries = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest)
+            {
+                boolean evict = size() > fMaxSize;
+                if(evict)
+                {
+                    fEvictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @param id document ID
+     * @return the cached value or null if there is no valid entry
+     */
+    public synchronized V get(String id)
+    {
+        CacheEntry<V> entry = fEntries.get(id);
+
+        if(entry != null && entry.isExpired())
+        {
+            fEntries.remove(id);
+            fEvictions.incrementAndGet();
+            entry = null;
+        }
+
+        if(entry == null)
+        {
+            fMisses.incrementAndGet();
+            return null;
+        }
+
+        fHits.incrementAndGet();
+        return entry.fValue;
+    }
+
+    /**
+     * @param id document ID
+     * @param value value to cache
+     * @param version document version the value belongs to, may be null
+     */
+    public synchronized void put(String id, V value, String version)
+    {
+        long expires = fTimeToLive > 0
+            ? System.currentTimeMillis() + fTimeToLive : Long.MAX_VALUE;
+
+        fEntries.put(id, new CacheEntry<V>(value, version, expires));
+    }
+
+    /**
+     * Removes the entry of a document if it was cached for a different
+     * version or without any version information.
+     * @param id document ID
+     * @param version current version of the document
+     * @return whether an entry was removed
+     */
+    public synchronized boolean invalidateIfModified(String id, String version)
+    {
+        CacheEntry<V> entry = fEntries.get(id);
+
+        if(entry != null && (entry.fVersion == null || !entry.fVersion.equals(version)))
+        {
+            fEntries.remove(id);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param id document ID whose entry is removed
+     */
+    public synchronized void invalidate(String id)
+    {
+        fEntries.remove(id);
+    }
+
+    public synchronized void clear()
+    {
+        fEntries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return fEntries.size();
+    }
+
+    public long getHits()
+    {
+        return fHits.get();
+    }
+
+    public long getMisses()
+    {
+        return fMisses.get();
+    }
+
+    public long getEvictions()
+    {
+        return fEvictions.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "DocumentCache[size=" + size() + ", hits=" + getHits()
+            + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    private static class CacheEntry<V>
+    {
+        private final V fValue;
+        private final String fVersion;
+        private final long fExpires;
+
+        private CacheEntry(V value, String version, long expires)
+        {
+            fValue = value;
+            fVersion = version;
+            fExpires = expires;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() > fExpires;
+        }
+    }
+}
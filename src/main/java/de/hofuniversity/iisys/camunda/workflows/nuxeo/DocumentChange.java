@@ -0,0 +1,66 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.Date;
+
+import org.nuxeo.ecm.automation.client.model.Document;
+
+/**
+ * Immutable change of a document found by {@link ChangeSync}.
+ */
+public class DocumentChange
+{
+    /**
+     * Kind of change since the previous synchronization.
+     */
+    public enum Type
+    {
+        /** Created since the previous synchronization. */
+        ADDED,
+        /** Modified since the previous synchronization. */
+        UPDATED,
+        /** Moved to the trash ("deleted" lifecycle state). */
+        DELETED
+    }
+
+    private final Type fType;
+    private final Document fDocument;
+    private final Date fModified;
+
+    /**
+     * @param type kind of change
+     * @param document the changed document
+     * @param modified modification time of the document
+     */
+    public DocumentChange(Type type, Document document, Date modified)
+    {
+        fType = type;
+        fDocument = document;
+        fModified = modified;
+    }
+
+    public Type getType()
+    {
+        return fType;
+    }
+
+    public Document getDocument()
+    {
+        return fDocument;
+    }
+
+    public String getId()
+    {
+        return fDocument.getId();
+    }
+
+    public Date getModified()
+    {
+        return fModified;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fType + " " + getId() + " at " + fModified.getTime();
+    }
+}
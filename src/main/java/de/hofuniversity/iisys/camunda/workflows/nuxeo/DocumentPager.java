@@ -0,0 +1,186 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+
+/**
+ * Iterates over the results of a query page by page, loading the next page
+ * in the background while the current one is consumed. At most two pages
+ * are held in memory at any time.
+ */
+public class DocumentPager implements Iterator<Document>
+{
+    /**
+     * Loads a single page of query results.
+     */
+    interface PageLoader
+    {
+        Documents load(int pageIndex) throws Exception;
+    }
+
+    private final PageLoader fLoader;
+    private final int fPageSize;
+    private final ExecutorService fExecutor;
+
+    private Iterator<Document> fCurrent;
+    private int fNextIndex;
+    private boolean fLastPage;
+
+    private PageTask fNext;
+
+    DocumentPager(PageLoader loader, int pageSize, ExecutorService executor)
+    {
+        if(pageSize < 1)
+        {
+            throw new IllegalArgumentException("invalid page size: " + pageSize);
+        }
+
+        fLoader = loader;
+        fPageSize = pageSize;
+        fExecutor = executor;
+
+        fCurrent = Collections.<Document>emptyList().iterator();
+        fNextIndex = 0;
+        fLastPage = false;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while(!fCurrent.hasNext() && !fLastPage)
+        {
+            Documents page = nextPage();
+
+            //a short page is the last one, no need to ask for more
+            fLastPage = page == null || page.size() < fPageSize;
+            if(page != null)
+            {
+                fCurrent = page.iterator();
+            }
+
+            if(!fLastPage)
+            {
+                prefetch();
+            }
+        }
+
+        return fCurrent.hasNext();
+    }
+
+    @Override
+    public Document next()
+    {
+        if(!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        return fCurrent.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Drops a page that is still being prefetched.
+     */
+    public void close()
+    {
+        if(fNext != null)
+        {
+            fNext.fClaimed.set(true);
+            fNext = null;
+        }
+        fLastPage = true;
+    }
+
+    private void prefetch()
+    {
+        final PageTask task = new PageTask(fNextIndex);
+
+        try
+        {
+            task.fFuture = fExecutor.submit(task);
+        }
+        catch(RejectedExecutionException e)
+        {
+            //loaded synchronously once needed
+        }
+
+        fNext = task;
+    }
+
+    private Documents nextPage()
+    {
+        PageTask task = fNext;
+        fNext = null;
+
+        try
+        {
+            //load inline unless the background task has already started,
+            //so a saturated executor can not block the iteration
+            if(task == null || task.fClaimed.compareAndSet(false, true))
+            {
+                return fLoader.load(fNextIndex++);
+            }
+
+            ++fNextIndex;
+            return task.fFuture.get();
+        }
+        catch(ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch(RuntimeException e)
+        {
+            throw e;
+        }
+        catch(Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class PageTask implements Callable<Documents>
+    {
+        private final int fIndex;
+        private final AtomicBoolean fClaimed;
+
+        private Future<Documents> fFuture;
+
+        private PageTask(int index)
+        {
+            fIndex = index;
+            fClaimed = new AtomicBoolean(false);
+        }
+
+        @Override
+        public Documents call() throws Exception
+        {
+            if(!fClaimed.compareAndSet(false, true))
+            {
+                return null;
+            }
+
+            return fLoader.load(fIndex);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.Properties;
+
+/**
+ * Describes a document to be created by
+ * {@link NuxeoUtility#createDocuments(String, java.util.List)}.
+ */
+public class DocumentSpec
+{
+    private final String fName;
+    private final String fType;
+    private final Properties fProperties;
+
+    /**
+     * Describes a document named after its title.
+     * @param type document type like "File" or "Folder"
+     * @param properties document properties including dc:title
+     */
+    public DocumentSpec(String type, Properties properties)
+    {
+        this(properties.getProperty("dc:title"), type, properties);
+    }
+
+    /**
+     * @param name name of the document in its parent
+     * @param type document type like "File" or "Folder"
+     * @param properties document properties
+     */
+    public DocumentSpec(String name, String type, Properties properties)
+    {
+        fName = name;
+        fType = type;
+        fProperties = properties;
+    }
+
+    public String getName()
+    {
+        return fName;
+    }
+
+    public String getType()
+    {
+        return fType;
+    }
+
+    public Properties getProperties()
+    {
+        return fProperties;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fType + " " + fName;
+    }
+}
@@ -0,0 +1,15 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import org.nuxeo.ecm.automation.client.model.Document;
+
+/**
+ * Callback receiving the documents of a paged query one by one.
+ */
+public interface DocumentVisitor
+{
+    /**
+     * @param doc the next document of the query result
+     * @throws Exception to abort the iteration
+     */
+    void visit(Document doc) throws Exception;
+}
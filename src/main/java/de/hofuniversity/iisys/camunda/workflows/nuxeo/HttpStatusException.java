@@ -0,0 +1,41 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Thrown if an HTTP request was answered with an error status.
+ */
+public class HttpStatusException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int fStatus;
+
+    /**
+     * @param status HTTP status code of the response
+     * @param url requested URL
+     */
+    public HttpStatusException(int status, URL url)
+    {
+        super("Server returned HTTP response code: " + status + " for URL: " + url);
+
+        fStatus = status;
+    }
+
+    /**
+     * @return HTTP status code of the response
+     */
+    public int getStatus()
+    {
+        return fStatus;
+    }
+
+    /**
+     * @return whether repeating the request might succeed
+     */
+    public boolean isTransient()
+    {
+        return fStatus >= 500 || fStatus == 408 || fStatus == 429;
+    }
+}
@@ -1,90 +1,685 @@
 package de.hofuniversity.iisys.camunda.workflows.nuxeo;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+/**
+ * HTTP client for Nuxeo's REST API. Limits the number of concurrent
+ * connections per host and always consumes and closes response streams,
+ * so the JVM's keep-alive cache can reuse the underlying sockets.
+ * Optionally asks for gzip or deflate compressed responses, which are
+ * decompressed transparently. Binary downloads can be resumed with range
+ * requests.
+ */
 public class HttpUtil
 {
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 60000;
+
+    private static final String JSON = "application/json; charset=UTF-8";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String IDENTITY = "identity";
+    private static final String IF_RANGE = "If-Range";
+
+    //the static methods keep working without timeouts and connection limit
+    private static final HttpUtil DEFAULT = new HttpUtil(null, null, Integer.MAX_VALUE, 0, 0);
+
+    /**
+     * Decodes the response body into a String using the response charset.
+     */
+    public static final ResponseHandler<String> TEXT = new ResponseHandler<String>()
+    {
+        @Override
+        public String handle(InputStream in, Charset charset, long length)
+            throws IOException
+        {
+            return new String(readBytes(in, length), charset);
+        }
+    };
+
+    /**
+     * Consumes a response body as a stream instead of a copy in memory.
+     * @param <T> type of the result
+     */
+    public interface ResponseHandler<T>
+    {
+        /**
+         * @param in the response body, closed by the caller
+         * @param charset charset given by the response or UTF-8
+         * @param length length of the body or -1 if unknown
+         * @return result of the handler
+         * @throws IOException if reading failed
+         */
+        T handle(InputStream in, Charset charset, long length) throws IOException;
+    }
+
+    /**
+     * Handler of range requests, told where the body starts before it is
+     * handed over.
+     * @param <T> type of the result
+     */
+    public interface RangeHandler<T> extends ResponseHandler<T>
+    {
+        /**
+         * @param offset offset the body starts at, 0 instead of the requested
+         *  offset if the resource no longer matches the validator
+         * @param validator strong ETag or Last-Modified date of the resource,
+         *  null if the server sends neither
+         * @throws IOException if the body can not be handled from the offset
+         */
+        void start(long offset, String validator) throws IOException;
+    }
+
+    private final String fAuthorization;
+
+    private final int fMaxConnections;
+    private final int fConnectTimeout, fReadTimeout;
+
+    private final ConcurrentMap<String, Semaphore> fHostLimits;
+
+    private final boolean fCompression;
+    private final TransferStats fStats;
+
+    public HttpUtil(String user, String password)
+    {
+        this(user, password, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT,
+            DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * @param user user for basic authentication, null for none
+     * @param password password of the user
+     * @param maxConnections maximum number of concurrent connections per host
+     * @param connectTimeout connect timeout in milliseconds, 0 for none
+     * @param readTimeout read timeout in milliseconds, 0 for none
+     */
+    public HttpUtil(String user, String password, int maxConnections,
+        int connectTimeout, int readTimeout)
+    {
+        this(user, password, maxConnections, connectTimeout, readTimeout, false);
+    }
+
+    /**
+     * @param user user for basic authentication, null for none
+     * @param password password of the user
+     * @param maxConnections maximum number of concurrent connections per host
+     * @param connectTimeout connect timeout in milliseconds, 0 for none
+     * @param readTimeout read timeout in milliseconds, 0 for none
+     * @param compression whether to ask for compressed responses
+     */
+    public HttpUtil(String user, String password, int maxConnections,
+        int connectTimeout, int readTimeout, boolean compression)
+    {
+        if(maxConnections < 1)
+        {
+            throw new IllegalArgumentException("invalid connection limit: "
+                + maxConnections);
+        }
+
+        //encoded once instead of on every request
+        fAuthorization = user != null ? basicAuth(user, password) : null;
+
+        fMaxConnections = maxConnections;
+        fConnectTimeout = connectTimeout;
+        fReadTimeout = readTimeout;
+
+        fHostLimits = new ConcurrentHashMap<String, Semaphore>();
+
+        fCompression = compression;
+        fStats = new TransferStats();
+    }
+
+    /**
+     * Reads a URL without timeouts and without limiting the number of
+     * concurrent connections, use an instance to apply limits.
+     * @param url URL to read
+     * @param user user for basic authentication
+     * @param password password of the user
+     * @return the response body
+     * @throws IOException if the request failed
+     */
     public static String getText(URL url, String user, String password)
         throws IOException
     {
-        final StringBuffer buffer = new StringBuffer();
-        
-        HttpURLConnection connection = (HttpURLConnection)
-            url.openConnection();
-        
-        
-        //authentication
+        return DEFAULT.request(url, "GET", null, null, basicAuth(user, password),
+            null, -1, TEXT);
+    }
+
+    /**
+     * Sends JSON without timeouts and without limiting the number of
+     * concurrent connections, use an instance to apply limits.
+     * @param url URL to send to
+     * @param method HTTP method
+     * @param data JSON to send
+     * @return the response body
+     * @throws IOException if the request failed
+     */
+    public static String sendJson(URL url, String method, String data)
+        throws IOException
+    {
+        return DEFAULT.request(url, method, JSON, toBytes(data), null, null, -1, TEXT);
+    }
+
+    /**
+     * @param url URL to read
+     * @return the response body
+     * @throws IOException if the request failed
+     */
+    public String getText(URL url) throws IOException
+    {
+        return get(url, TEXT);
+    }
+
+    /**
+     * @param url URL to read
+     * @param handler handler consuming the response body
+     * @return the result of the handler
+     * @throws IOException if the request failed
+     */
+    public <T> T get(URL url, ResponseHandler<T> handler) throws IOException
+    {
+        return request(url, "GET", null, null, fAuthorization, null, -1, handler);
+    }
+
+    /**
+     * Reads a binary body uncompressed, starting at the given offset. If the
+     * server ignores the range, the skipped bytes are read and discarded, so
+     * the handler always receives the body from the offset on.
+     * @param url URL to read
+     * @param offset offset to start reading at, 0 for the whole body
+     * @param handler handler consuming the response body, which receives the
+     *  length of the remaining body
+     * @return the result of the handler
+     * @throws IOException if the request failed
+     */
+    public <T> T getRange(URL url, long offset, ResponseHandler<T> handler)
+        throws IOException
+    {
+        if(offset < 0)
+        {
+            throw new IllegalArgumentException("invalid offset: " + offset);
+        }
+
+        return request(url, "GET", null, null, fAuthorization, null, offset, handler);
+    }
+
+    /**
+     * Reads a binary body uncompressed like {@link #getRange(URL, long, ResponseHandler)},
+     * but only from the offset on if the resource still matches the
+     * validator (If-Range). Otherwise the whole body is returned and the
+     * handler is told that it starts at 0.
+     * @param url URL to read
+     * @param offset offset to start reading at, 0 for the whole body
+     * @param validator ETag or Last-Modified date of the resource the
+     *  offset refers to, null to resume without checking it
+     * @param handler handler consuming the response body
+     * @return the result of the handler
+     * @throws IOException if the request failed
+     */
+    public <T> T getRange(URL url, long offset, String validator, RangeHandler<T> handler)
+        throws IOException
+    {
+        if(offset < 0)
+        {
+            throw new IllegalArgumentException("invalid offset: " + offset);
+        }
+
+        Map<String, String> headers = null;
+        if(offset > 0 && validator != null)
+        {
+            headers = Collections.singletonMap(IF_RANGE, validator);
+        }
+
+        return request(url, "GET", null, null, fAuthorization, headers, offset, handler);
+    }
+
+    /**
+     * @param url URL to send to
+     * @param method HTTP method
+     * @param data JSON to send, may be null
+     * @return the response body
+     * @throws IOException if the request failed
+     */
+    public String requestJson(URL url, String method, String data)
+        throws IOException
+    {
+        return request(url, method, JSON, toBytes(data), fAuthorization, null, -1, TEXT);
+    }
+
+    /**
+     * @param url URL to send to
+     * @param method HTTP method
+     * @param contentType content type of the body
+     * @param body request body, may be null
+     * @param handler handler consuming the response body
+     * @return the result of the handler
+     * @throws IOException if the request failed
+     */
+    public <T> T send(URL url, String method, String contentType, byte[] body,
+        ResponseHandler<T> handler) throws IOException
+    {
+        return request(url, method, contentType, body, fAuthorization, null, -1, handler);
+    }
+
+    /**
+     * @param url URL to send to
+     * @param method HTTP method
+     * @param contentType content type of the body
+     * @param body request body, may be null
+     * @param headers additional request headers
+     * @param handler handler consuming the response body
+     * @return the result of the handler
+     * @throws IOException if the request failed
+     */
+    public <T> T send(URL url, String method, String contentType, byte[] body,
+        Map<String, String> headers, ResponseHandler<T> handler) throws IOException
+    {
+        return request(url, method, contentType, body, fAuthorization, headers, -1,
+            handler);
+    }
+
+    /**
+     * @return bytes received and decoded by this client
+     */
+    public TransferStats getStats()
+    {
+        return fStats;
+    }
+
+    private static String basicAuth(String user, String password)
+    {
         String userpass = user + ":" + password;
-        String basicAuth = "Basic " +
+        return "Basic " +
             javax.xml.bind.DatatypeConverter.printBase64Binary(
                 userpass.getBytes());
+    }
+
+    private static byte[] toBytes(String data)
+    {
+        return data != null ? data.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @param offset -1 for a regular request, otherwise the offset of an
+     *  uncompressed range request
+     */
+    private <T> T request(URL url, String method, String contentType,
+        byte[] body, String authorization, Map<String, String> headers, long offset,
+        ResponseHandler<T> handler) throws IOException
+    {
+        final Semaphore limit = acquire(url);
+        HttpURLConnection connection = null;
+        boolean reusable = false;
+
+        try
+        {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(fConnectTimeout);
+            connection.setReadTimeout(fReadTimeout);
+            connection.setRequestMethod(method);
+
+            if(authorization != null)
+            {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            if(headers != null)
+            {
+                for(Entry<String, String> header : headers.entrySet())
+                {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            if(offset >= 0)
+            {
+                //ranges of compressed bodies can not be decoded on their own
+                connection.setRequestProperty("Accept-Encoding", IDENTITY);
+                if(offset > 0)
+                {
+                    connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                }
+            }
+            else if(fCompression)
+            {
+                connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+            }
+
+            //send data
+            if(body != null)
+            {
+                connection.setDoInput(true);
+                connection.setDoOutput(true);
+                connection.setUseCaches(false);
+                connection.setRequestProperty("Content-Type", contentType);
+                connection.setFixedLengthStreamingMode(body.length);
+
+                OutputStream out = connection.getOutputStream();
+                out.write(body);
+                out.close();
+            }
 
-        connection.setRequestProperty ("Authorization", basicAuth);
-        
-        
-        
+            final int status = connection.getResponseCode();
+            if(status == 416 && offset > 0)
+            {
+                drain(connection.getErrorStream());
+                reusable = true;
 
-        //read response
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(
-            connection.getInputStream()));
+                //nothing left if the offset is the end of the body
+                if(getRangeTotal(connection) == offset)
+                {
+                    start(handler, offset, connection);
+                    return handler.handle(new ByteArrayInputStream(new byte[0]),
+                        getCharset(connection), 0);
+                }
+                throw new HttpStatusException(status, url);
+            }
+            if(status >= 400)
+            {
+                //read the error body, so the connection can be reused
+                drain(connection.getErrorStream());
+                reusable = true;
 
-        String line = reader.readLine();
-        while (line != null)
+                throw new HttpStatusException(status, url);
+            }
+
+            final String encoding = connection.getContentEncoding();
+            final boolean compressed = "gzip".equalsIgnoreCase(encoding)
+                || "deflate".equalsIgnoreCase(encoding);
+
+            final InputStream wire = fStats.countWire(
+                connection.getInputStream(), compressed);
+            InputStream in = wire;
+            T result = null;
+            try
+            {
+                //the content length refers to the compressed body
+                long length = connection.getContentLengthLong();
+                if(compressed)
+                {
+                    in = fStats.countDecoded(decode(wire, encoding));
+                    length = -1;
+                }
+                else
+                {
+                    in = fStats.countDecoded(wire);
+                }
+
+                long start = 0;
+                if(offset > 0 && headers != null && headers.containsKey(IF_RANGE)
+                    && connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL)
+                {
+                    //the resource changed, the whole body is sent instead
+                    start = 0;
+                }
+                else if(offset > 0)
+                {
+                    length = seek(connection, in, offset, length);
+                    start = offset;
+                }
+                if(offset >= 0)
+                {
+                    start(handler, start, connection);
+                }
+
+                result = handler.handle(in, getCharset(connection), length);
+
+                //skip what the handler did not read
+                consume(in);
+                consume(wire);
+                reusable = true;
+            }
+            finally
+            {
+                in.close();
+            }
+
+            return result;
+        }
+        finally
+        {
+            //a partially read connection can not be kept alive
+            if(!reusable && connection != null)
+            {
+                connection.disconnect();
+            }
+
+            limit.release();
+        }
+    }
+
+    private static void start(ResponseHandler<?> handler, long offset,
+        HttpURLConnection connection) throws IOException
+    {
+        if(handler instanceof RangeHandler)
         {
-            buffer.append(line);
-            line = reader.readLine();
+            ((RangeHandler<?>) handler).start(offset, getValidator(connection));
         }
+    }
 
-        reader.close();
-        
-        return buffer.toString();
+    //weak ETags must not be used with If-Range
+    private static String getValidator(HttpURLConnection connection)
+    {
+        final String etag = connection.getHeaderField("ETag");
+        if(etag != null && !etag.startsWith("W/"))
+        {
+            return etag;
+        }
+
+        return connection.getHeaderField("Last-Modified");
     }
-    
-    public static String sendJson(URL url, String method, String data)
-        throws IOException
+
+    /**
+     * Positions a ranged response at the offset.
+     * @return the remaining length of the body
+     */
+    private static long seek(HttpURLConnection connection, InputStream in,
+        long offset, long length) throws IOException
+    {
+        if(connection.getResponseCode() == HttpURLConnection.HTTP_PARTIAL)
+        {
+            final long start = getRangeStart(connection);
+            if(start != offset)
+            {
+                throw new IOException("requested range from " + offset
+                    + ", got " + start + " for URL: " + connection.getURL());
+            }
+            return length;
+        }
+
+        //range not supported, skip to the offset
+        long skipped = 0;
+        while(skipped < offset)
+        {
+            long count = in.skip(offset - skipped);
+            if(count <= 0)
+            {
+                if(in.read() < 0)
+                {
+                    throw new EOFException("body ends before offset " + offset);
+                }
+                count = 1;
+            }
+            skipped += count;
+        }
+
+        return length >= 0 ? length - offset : -1;
+    }
+
+    //Content-Range: bytes <start>-<end>/<total>
+    private static long getRangeStart(HttpURLConnection connection)
     {
-        final StringBuffer buffer = new StringBuffer();
-        
-        HttpURLConnection connection = (HttpURLConnection)
-            url.openConnection();
+        final String range = connection.getHeaderField("Content-Range");
 
-        //send json data
-        connection.setRequestMethod(method);
-        
-        if(data != null)
+        try
         {
-            connection.setDoInput(true);
-            connection.setDoOutput(true);
-            connection.setUseCaches(false);
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setRequestProperty("Content-Length",
-                String.valueOf(data.getBytes().length));
+            int dash = range.indexOf('-');
+            return Long.parseLong(range.substring(range.indexOf(' ') + 1, dash).trim());
+        }
+        catch(RuntimeException e)
+        {
+            return -1;
+        }
+    }
+
+    //Content-Range: bytes */<total>
+    private static long getRangeTotal(HttpURLConnection connection)
+    {
+        final String range = connection.getHeaderField("Content-Range");
 
-            OutputStreamWriter writer = new OutputStreamWriter(
-                connection.getOutputStream());
-            writer.write(data);
-            writer.flush();
-            writer.close();
+        try
+        {
+            return Long.parseLong(range.substring(range.indexOf('/') + 1).trim());
+        }
+        catch(RuntimeException e)
+        {
+            return -1;
         }
+    }
 
-        //read response
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(
-            connection.getInputStream()));
+    private Semaphore acquire(URL url) throws IOException
+    {
+        final String host = url.getHost() + ":" + url.getPort();
 
-        String line = reader.readLine();
-        while (line != null)
+        Semaphore limit = fHostLimits.get(host);
+        if(limit == null)
         {
-            buffer.append(line);
-            line = reader.readLine();
+            fHostLimits.putIfAbsent(host, new Semaphore(fMaxConnections, true));
+            limit = fHostLimits.get(host);
         }
 
-        reader.close();
-        
-        return buffer.toString();
+        try
+        {
+            limit.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for a connection to " + host);
+        }
+
+        return limit;
+    }
+
+    private static Charset getCharset(HttpURLConnection connection)
+    {
+        final String type = connection.getContentType();
+
+        if(type != null)
+        {
+            for(String param : type.split(";"))
+            {
+                param = param.trim();
+                if(param.regionMatches(true, 0, "charset=", 0, 8))
+                {
+                    try
+                    {
+                        return Charset.forName(param.substring(8).replace("\"", ""));
+                    }
+                    catch(IllegalArgumentException e)
+                    {
+                        //unsupported, fall back to default
+                    }
+                }
+            }
+        }
+
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Reads a stream completely into a buffer sized by the expected length,
+     * so a body of known length is copied only once.
+     * @param in stream to read
+     * @param length expected length or -1 if unknown
+     * @return the bytes read
+     * @throws IOException if reading failed
+     */
+    public static byte[] readBytes(InputStream in, long length) throws IOException
+    {
+        if(length >= 0 && length <= Integer.MAX_VALUE)
+        {
+            final byte[] bytes = new byte[(int) length];
+
+            int read = 0;
+            while(read < bytes.length)
+            {
+                int count = in.read(bytes, read, bytes.length - read);
+                if(count < 0)
+                {
+                    throw new EOFException("expected " + length
+                        + " bytes, got " + read);
+                }
+                read += count;
+            }
+
+            return bytes;
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        final byte[] buffer = new byte[8192];
+
+        int count = in.read(buffer);
+        while(count >= 0)
+        {
+            out.write(buffer, 0, count);
+            count = in.read(buffer);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static InputStream decode(InputStream in, String encoding)
+        throws IOException
+    {
+        if("gzip".equalsIgnoreCase(encoding))
+        {
+            return new GZIPInputStream(in, 8192);
+        }
+
+        //zlib wrapped deflate as specified for HTTP
+        return new InflaterInputStream(in);
+    }
+
+    private static void consume(InputStream in) throws IOException
+    {
+        final byte[] buffer = new byte[4096];
+        while(in.read(buffer) >= 0)
+        {
+            //discard
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException
+    {
+        if(in == null)
+        {
+            return;
+        }
+
+        try
+        {
+            consume(in);
+        }
+        finally
+        {
+            in.close();
+        }
     }
-}
\ No newline at end of file
+}
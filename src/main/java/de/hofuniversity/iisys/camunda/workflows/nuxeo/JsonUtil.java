@@ -0,0 +1,48 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Parses the JSON responses of Nuxeo's REST API with Jackson, which the
+ * automation client depends on anyway.
+ */
+final class JsonUtil
+{
+    //thread-safe, as long as its configuration is not changed
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private JsonUtil()
+    {
+    }
+
+    /**
+     * @param reader JSON to parse
+     * @param what kind of response for error messages, e.g. "ACL"
+     * @return the JSON object as maps, lists, strings, numbers and booleans
+     * @throws IOException if the JSON could not be read or is not an object
+     */
+    static Map<?, ?> parseObject(Reader reader, String what) throws IOException
+    {
+        final Object json;
+        try
+        {
+            json = MAPPER.readValue(reader, Object.class);
+        }
+        catch(JsonProcessingException e)
+        {
+            throw new IOException("invalid " + what + " JSON", e);
+        }
+
+        if(!(json instanceof Map))
+        {
+            throw new IOException("unexpected " + what + " JSON: " + json);
+        }
+
+        return (Map<?, ?>) json;
+    }
+}
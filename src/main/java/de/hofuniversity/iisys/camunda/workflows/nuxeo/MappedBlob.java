@@ -0,0 +1,88 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.nuxeo.ecm.automation.client.model.Blob;
+
+/**
+ * Blob backed by a memory-mapped file of the {@link BlobCache}. Each
+ * stream reads its own view of the buffer, so the blob can be read
+ * repeatedly and concurrently, even after the file was evicted.
+ */
+public class MappedBlob extends Blob
+{
+    private final ByteBuffer fBuffer;
+
+    /**
+     * @param buffer content of the blob, not modified
+     * @param fileName name of the file
+     * @param mimeType MIME type of the content
+     */
+    public MappedBlob(ByteBuffer buffer, String fileName, String mimeType)
+    {
+        super(fileName, mimeType);
+
+        fBuffer = buffer;
+    }
+
+    @Override
+    public int getLength()
+    {
+        return fBuffer.remaining();
+    }
+
+    @Override
+    public InputStream getStream() throws IOException
+    {
+        return new BufferInputStream(fBuffer.duplicate());
+    }
+
+    private static class BufferInputStream extends InputStream
+    {
+        private final ByteBuffer fBuffer;
+
+        public BufferInputStream(ByteBuffer buffer)
+        {
+            fBuffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return fBuffer.hasRemaining() ? fBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len)
+        {
+            if(len == 0)
+            {
+                return 0;
+            }
+            if(!fBuffer.hasRemaining())
+            {
+                return -1;
+            }
+
+            len = Math.min(len, fBuffer.remaining());
+            fBuffer.get(bytes, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            final int count = (int) Math.max(0, Math.min(n, fBuffer.remaining()));
+            fBuffer.position(fBuffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return fBuffer.remaining();
+        }
+    }
+}
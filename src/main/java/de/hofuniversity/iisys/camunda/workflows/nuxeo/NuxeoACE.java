@@ -0,0 +1,112 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.Map;
+
+/**
+ * Immutable access control entry of a Nuxeo document, granting or denying
+ * a permission to a user or group.
+ */
+public class NuxeoACE
+{
+    /** Status of an entry which is currently in effect. */
+    public static final String STATUS_EFFECTIVE = "effective";
+
+    private final String fUsername;
+    private final String fPermission;
+    private final boolean fGranted;
+
+    private final String fCreator;
+    private final String fBegin, fEnd;
+    private final String fStatus;
+
+    /**
+     * @param username user or group the entry applies to
+     * @param permission granted or denied permission
+     * @param granted whether the permission is granted
+     * @param creator user who created the entry, may be null
+     * @param begin ISO 8601 start of the entry's validity, may be null
+     * @param end ISO 8601 end of the entry's validity, may be null
+     * @param status status like "effective" or "pending", may be null
+     */
+    public NuxeoACE(String username, String permission, boolean granted,
+        String creator, String begin, String end, String status)
+    {
+        fUsername = username;
+        fPermission = permission;
+        fGranted = granted;
+        fCreator = creator;
+        fBegin = begin;
+        fEnd = end;
+        fStatus = status;
+    }
+
+    /**
+     * @param json entry as returned by Nuxeo's REST API
+     * @return the parsed entry
+     */
+    static NuxeoACE fromJson(Map<?, ?> json)
+    {
+        return new NuxeoACE(getString(json, "username"),
+            getString(json, "permission"),
+            Boolean.TRUE.equals(json.get("granted")),
+            getString(json, "creator"), getString(json, "begin"),
+            getString(json, "end"), getString(json, "status"));
+    }
+
+    private static String getString(Map<?, ?> json, String key)
+    {
+        Object value = json.get(key);
+        return value != null ? value.toString() : null;
+    }
+
+    public String getUsername()
+    {
+        return fUsername;
+    }
+
+    public String getPermission()
+    {
+        return fPermission;
+    }
+
+    public boolean isGranted()
+    {
+        return fGranted;
+    }
+
+    public String getCreator()
+    {
+        return fCreator;
+    }
+
+    public String getBegin()
+    {
+        return fBegin;
+    }
+
+    public String getEnd()
+    {
+        return fEnd;
+    }
+
+    public String getStatus()
+    {
+        return fStatus;
+    }
+
+    /**
+     * @return whether the entry is in effect, entries of servers not
+     *  reporting a status always are
+     */
+    public boolean isEffective()
+    {
+        return fStatus == null || STATUS_EFFECTIVE.equals(fStatus);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (fGranted ? "+" : "-") + fUsername + ":" + fPermission
+            + (fStatus != null ? " (" + fStatus + ")" : "");
+    }
+}
@@ -0,0 +1,111 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, named access control list of a Nuxeo document like "local"
+ * or "inherited", with its entries in evaluation order.
+ */
+public class NuxeoACL
+{
+    /**
+     * Parses the ACLs of a document directly from the response of
+     * Nuxeo's "@acl" REST adapter.
+     */
+    public static final HttpUtil.ResponseHandler<List<NuxeoACL>> HANDLER =
+        new HttpUtil.ResponseHandler<List<NuxeoACL>>()
+    {
+        @Override
+        public List<NuxeoACL> handle(InputStream in, Charset charset, long length)
+            throws IOException
+        {
+            return parse(new InputStreamReader(in, charset));
+        }
+    };
+
+    private final String fName;
+    private final List<NuxeoACE> fEntries;
+
+    /**
+     * @param name name of the list
+     * @param entries entries of the list in evaluation order
+     */
+    public NuxeoACL(String name, List<NuxeoACE> entries)
+    {
+        fName = name;
+        fEntries = Collections.unmodifiableList(new ArrayList<NuxeoACE>(entries));
+    }
+
+    /**
+     * Parses the response of Nuxeo's "@acl" REST adapter, e.g.
+     * {"entity-type":"acls","acl":[{"name":"local","ace":[...]}]}.
+     * @param reader JSON to parse
+     * @return all ACLs of the document in evaluation order
+     * @throws IOException if the JSON could not be read or parsed
+     */
+    public static List<NuxeoACL> parse(Reader reader) throws IOException
+    {
+        final Map<?, ?> json = JsonUtil.parseObject(reader, "ACL");
+
+        final List<NuxeoACL> acls = new ArrayList<NuxeoACL>();
+        for(Map<?, ?> acl : getMaps(json, "acl"))
+        {
+            final List<NuxeoACE> entries = new ArrayList<NuxeoACE>();
+            for(Map<?, ?> ace : getMaps(acl, "ace"))
+            {
+                entries.add(NuxeoACE.fromJson(ace));
+            }
+
+            Object name = acl.get("name");
+            acls.add(new NuxeoACL(name != null ? name.toString() : null, entries));
+        }
+
+        return Collections.unmodifiableList(acls);
+    }
+
+    private static List<Map<?, ?>> getMaps(Map<?, ?> json, String key)
+    {
+        final List<Map<?, ?>> maps = new ArrayList<Map<?, ?>>();
+
+        Object value = json.get(key);
+        if(value instanceof List)
+        {
+            for(Object element : (List<?>) value)
+            {
+                if(element instanceof Map)
+                {
+                    maps.add((Map<?, ?>) element);
+                }
+            }
+        }
+
+        return maps;
+    }
+
+    public String getName()
+    {
+        return fName;
+    }
+
+    /**
+     * @return unmodifiable entries in evaluation order
+     */
+    public List<NuxeoACE> getEntries()
+    {
+        return fEntries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fName + fEntries;
+    }
+}
@@ -0,0 +1,19 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+/**
+ * Receives the outcome of an asynchronous Nuxeo operation.
+ * @param <T> type of the operation's result
+ */
+public interface NuxeoCallback<T>
+{
+    /**
+     * @param result result of the operation, may be null
+     */
+    void onSuccess(T result);
+
+    /**
+     * @param failure exception thrown by the operation or a
+     *  CancellationException if it was cancelled
+     */
+    void onFailure(Throwable failure);
+}
@@ -15,6 +15,45 @@ public class NuxeoConfig
 	public static final String DEBUG_USER = "debug.user";
 	public static final String DEBUG_PASSWORD = "debug.password";
 	
+	public static final String SESSION_POOL_MIN = "nuxeo.session.pool.min";
+	public static final String SESSION_POOL_MAX = "nuxeo.session.pool.max";
+	public static final String SESSION_IDLE_TIMEOUT = "nuxeo.session.idle.timeout";
+	public static final String SESSION_BORROW_TIMEOUT = "nuxeo.session.borrow.timeout";
+	
+	public static final String CACHE_SIZE = "nuxeo.cache.size";
+	public static final String CACHE_TTL = "nuxeo.cache.ttl";
+	
+	public static final String QUERY_PAGE_SIZE = "nuxeo.query.page.size";
+	public static final String EXECUTOR_THREADS = "nuxeo.executor.threads";
+	public static final String BATCH_SIZE = "nuxeo.batch.size";
+	
+	public static final String HTTP_MAX_CONNECTIONS = "nuxeo.http.max.connections";
+	public static final String HTTP_CONNECT_TIMEOUT = "nuxeo.http.connect.timeout";
+	public static final String HTTP_READ_TIMEOUT = "nuxeo.http.read.timeout";
+	public static final String HTTP_COMPRESSION = "nuxeo.http.compression";
+	
+	public static final String ASYNC_THREADS = "nuxeo.async.threads";
+	public static final String ASYNC_QUEUE_SIZE = "nuxeo.async.queue.size";
+	
+	public static final String DOWNLOAD_RETRIES = "nuxeo.download.retries";
+	public static final String UPLOAD_CHUNK_SIZE = "nuxeo.upload.chunk.size";
+	public static final String UPLOAD_PARALLELISM = "nuxeo.upload.parallelism";
+	public static final String UPLOAD_RETRIES = "nuxeo.upload.retries";
+	
+	public static final String BLOB_CACHE_DIR = "nuxeo.blob.cache.dir";
+	public static final String BLOB_CACHE_SIZE = "nuxeo.blob.cache.size";
+	
+	public static final String CMIS_CACHE_OBJECTS = "cmis.cache.objects";
+	public static final String CMIS_CACHE_PATHS = "cmis.cache.paths";
+	public static final String CMIS_CACHE_TYPES = "cmis.cache.types";
+	public static final String CMIS_CACHE_TTL = "cmis.cache.ttl";
+	
+	public static final String CMIS_HTTP_CONNECT_TIMEOUT = "cmis.http.connect.timeout";
+	public static final String CMIS_HTTP_READ_TIMEOUT = "cmis.http.read.timeout";
+	public static final String CMIS_HTTP_COMPRESSION = "cmis.http.compression";
+	public static final String CMIS_EXECUTOR_THREADS = "cmis.executor.threads";
+	public static final String CMIS_UPLOAD_CHUNK_SIZE = "cmis.upload.chunk.size";
+	
 	private static NuxeoConfig fInstance;
 	
 	private final Map<String, String> fConfig;
@@ -67,4 +106,41 @@ public class NuxeoConfig
 	{
 		return fConfig;
 	}
+	
+	public static boolean getBoolean(Map<String, String> config, String key, boolean def)
+	{
+		String value = config.get(key);
+		
+		if(value == null || value.trim().isEmpty())
+		{
+			return def;
+		}
+		
+		return Boolean.parseBoolean(value.trim());
+	}
+	
+	public static int getInt(Map<String, String> config, String key, int def)
+	{
+		return (int) getLong(config, key, def);
+	}
+	
+	public static long getLong(Map<String, String> config, String key, long def)
+	{
+		String value = config.get(key);
+		
+		if(value == null || value.trim().isEmpty())
+		{
+			return def;
+		}
+		
+		try
+		{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IllegalArgumentException("invalid value for " + key
+				+ ": " + value, e);
+		}
+	}
 }
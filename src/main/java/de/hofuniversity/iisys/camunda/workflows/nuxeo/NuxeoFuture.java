@@ -0,0 +1,102 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Future of an asynchronous Nuxeo operation which notifies callbacks once
+ * it completes, so results can be processed without blocking a thread.
+ * @param <T> type of the operation's result
+ */
+public class NuxeoFuture<T> extends FutureTask<T>
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(NuxeoFuture.class);
+
+    private final List<NuxeoCallback<? super T>> fCallbacks;
+
+    /**
+     * @param task operation to run
+     */
+    public NuxeoFuture(Callable<T> task)
+    {
+        super(task);
+
+        fCallbacks = new LinkedList<NuxeoCallback<? super T>>();
+    }
+
+    /**
+     * Registers a callback which is called by the thread completing the
+     * operation or immediately if it is already done. Callbacks should
+     * return quickly or hand off their work, since they occupy a worker.
+     * @param callback callback to notify
+     * @return this future
+     */
+    public NuxeoFuture<T> addCallback(NuxeoCallback<? super T> callback)
+    {
+        synchronized(fCallbacks)
+        {
+            if(!isDone())
+            {
+                fCallbacks.add(callback);
+                return this;
+            }
+        }
+
+        fire(callback);
+        return this;
+    }
+
+    @Override
+    protected void done()
+    {
+        final List<NuxeoCallback<? super T>> callbacks;
+
+        synchronized(fCallbacks)
+        {
+            callbacks = new LinkedList<NuxeoCallback<? super T>>(fCallbacks);
+            fCallbacks.clear();
+        }
+
+        for(NuxeoCallback<? super T> callback : callbacks)
+        {
+            fire(callback);
+        }
+    }
+
+    private void fire(NuxeoCallback<? super T> callback)
+    {
+        try
+        {
+            T result = null;
+            try
+            {
+                result = get();
+            }
+            catch(ExecutionException e)
+            {
+                callback.onFailure(e.getCause());
+                return;
+            }
+            catch(CancellationException | InterruptedException e)
+            {
+                //not interrupted once done
+                callback.onFailure(e);
+                return;
+            }
+
+            callback.onSuccess(result);
+        }
+        catch(RuntimeException e)
+        {
+            //must not keep the other callbacks from being notified
+            LOG.error("Nuxeo callback failed", e);
+        }
+    }
+}
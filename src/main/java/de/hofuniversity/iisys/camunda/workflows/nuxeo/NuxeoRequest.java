@@ -0,0 +1,130 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.nuxeo.ecm.automation.client.OperationRequest;
+import org.nuxeo.ecm.automation.client.Session;
+import org.nuxeo.ecm.automation.client.model.OperationInput;
+
+/**
+ * Description of an automation request, collected without a session. The
+ * request is only created on a pooled session when it is executed, so that
+ * building it can fail without holding a session, see
+ * {@link NuxeoUtility#execute(NuxeoRequest)}.
+ */
+final class NuxeoRequest
+{
+    private final String fOperationId;
+    private final Map<String, Object> fParameters;
+    private final Map<String, String> fHeaders;
+
+    private Object fInput;
+
+    /**
+     * @param operationId ID of the automation operation
+     */
+    NuxeoRequest(String operationId)
+    {
+        fOperationId = operationId;
+        fParameters = new LinkedHashMap<String, Object>();
+        fHeaders = new LinkedHashMap<String, String>();
+    }
+
+    /**
+     * @param key name of the parameter
+     * @param value value of the parameter, null removes it
+     * @return this request
+     */
+    NuxeoRequest set(String key, Object value)
+    {
+        fParameters.put(key, value);
+        return this;
+    }
+
+    /**
+     * @param input document, documents or blob the operation works on
+     * @return this request
+     */
+    NuxeoRequest setInput(OperationInput input)
+    {
+        fInput = input;
+        return this;
+    }
+
+    /**
+     * @param ref ID or path of the document the operation works on
+     * @return this request
+     */
+    NuxeoRequest setInput(String ref)
+    {
+        fInput = ref;
+        return this;
+    }
+
+    /**
+     * @param key name of the header
+     * @param value value of the header
+     * @return this request
+     */
+    NuxeoRequest setHeader(String key, String value)
+    {
+        fHeaders.put(key, value);
+        return this;
+    }
+
+    /**
+     * @return ID of the automation operation
+     */
+    String getOperationId()
+    {
+        return fOperationId;
+    }
+
+    /**
+     * @return parameters set so far, in the order they were set
+     */
+    Map<String, Object> getParameters()
+    {
+        return fParameters;
+    }
+
+    /**
+     * Creates the request on a session.
+     * @param session session to create the request on
+     * @return the request, ready to be executed
+     * @throws IllegalArgumentException if the operation does not accept a parameter
+     */
+    OperationRequest build(Session session)
+    {
+        final OperationRequest request = session.newRequest(fOperationId);
+
+        if(fInput instanceof OperationInput)
+        {
+            request.setInput((OperationInput) fInput);
+        }
+        else if(fInput != null)
+        {
+            request.setInput((String) fInput);
+        }
+
+        for(Entry<String, Object> param : fParameters.entrySet())
+        {
+            request.set(param.getKey(), param.getValue());
+        }
+
+        for(Entry<String, String> header : fHeaders.entrySet())
+        {
+            request.setHeader(header.getKey(), header.getValue());
+        }
+
+        return request;
+    }
+
+    @Override
+    public String toString()
+    {
+        return fOperationId + " " + fParameters;
+    }
+}
@@ -2,53 +2,106 @@ package de.hofuniversity.iisys.camunda.workflows.nuxeo;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.nuxeo.ecm.automation.client.Constants;
-import org.nuxeo.ecm.automation.client.OperationRequest;
 import org.nuxeo.ecm.automation.client.Session;
-import org.nuxeo.ecm.automation.client.jaxrs.impl.HttpAutomationClient;
 import org.nuxeo.ecm.automation.client.model.Blob;
+import org.nuxeo.ecm.automation.client.model.DocRef;
+import org.nuxeo.ecm.automation.client.model.DocRefs;
 import org.nuxeo.ecm.automation.client.model.Document;
 import org.nuxeo.ecm.automation.client.model.Documents;
 import org.nuxeo.ecm.automation.client.model.FileBlob;
+import org.nuxeo.ecm.automation.client.model.OperationInput;
 import org.nuxeo.ecm.automation.client.model.PaginableDocuments;
 import org.nuxeo.ecm.automation.client.model.PropertyList;
 import org.nuxeo.ecm.automation.client.model.PropertyMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class NuxeoUtility implements Runnable
+public class NuxeoUtility
 {
+    /** All schemas of a document. */
+    public static final String SCHEMAS_ALL = "*";
+    /** Only the dublincore schema, e.g. for dc:modified or dc:title. */
+    public static final String SCHEMAS_DUBLINCORE = "dublincore";
+    /** No schemas, only ID, path, type, state and other system fields. */
+    public static final String SCHEMAS_NONE = "";
+
     private static final transient Logger LOG = LoggerFactory.getLogger(NuxeoUtility.class);
-    private static final long SESSION_TIMEOUT = 30000;
-    private static final long SESSION_CHECK_INTERVAL = 5000;
+
+    private static final String ALL_VERSIONS_QUERY = "SELECT ecm:uuid, ecm:versionVersionableId FROM Document "
+        + "WHERE ecm:isVersion = 1 AND ecm:primaryType = 'File' "
+        + "ORDER BY ecm:versionVersionableId, uid:major_version, uid:minor_version, ecm:uuid";
+    private static final NxqlQuery VERSIONS_QUERY = NxqlQuery.of("SELECT ecm:uuid, ecm:versionVersionableId FROM Document "
+        + "WHERE ecm:isVersion = 1 AND ecm:primaryType = 'File' AND ecm:versionVersionableId IN ? "
+        + "ORDER BY ecm:versionVersionableId, uid:major_version, uid:minor_version, ecm:uuid");
+
+    private static final String FILES_QUERY = "SELECT ecm:uuid FROM Document WHERE ecm:primaryType = 'File'";
+    private static final NxqlQuery FILES_MODIFIED_QUERY = NxqlQuery.of(FILES_QUERY
+        + " AND dc:modified >= ? AND dc:modified <= ?");
+
+    private static final NxqlQuery DOCUMENT_QUERY = NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid = ?");
+    private static final NxqlQuery DOCUMENTS_QUERY = NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid IN ?");
+
+    //9999-12-31T23:59:59.999Z, the last time NXQL timestamps can express
+    private static final long MAX_TIME = 253402300799999L;
 
     private static final Object LOCK = new Object();
     private static NuxeoUtility fInstance;
 
-    private final SimpleDateFormat fFormat;
-
-    private final String fNuxeoAutoUrl, fNuxeoIdUrl;
+    private final String fNuxeoUrl, fNuxeoAutoUrl, fNuxeoIdUrl, fNuxeoUploadUrl;
 
     private final String fUser, fPassword;
 
-    private final Map<String, List<String>> fSubIds;
-    private final Map<String, Document> fDocuments;
-
-    private long fLastRequest = 0;
-    private HttpAutomationClient fClient;
-    private Session fSession;
+    private final DocumentCache<List<String>> fSubIds;
+    private final DocumentCache<Document> fDocuments;
+    private final DocumentCache<Document> fHeaders;
+    //properties of cached documents as read, cached documents are handed
+    //out and may be modified by callers
+    private final DocumentCache<Map<String, String>> fSnapshots;
+    private final DocumentCache<List<NuxeoACL>> fACLs;
+    //counts permission changes, guarded by fACLs
+    private long fACLGeneration = 0;
+    private final BlobCache fBlobs;
+
+    private final SessionPool fSessions;
+    private final HttpUtil fHttp;
+    private final BlobDownloader fDownloader;
+    private final BlobUploader fUploader;
+    private final ExecutorService fExecutor;
+
+    private final int fPageSize;
+    private final int fBatchSize;
 
     public static NuxeoUtility getInstance(String url, String user, String password)
     {
@@ -57,6 +110,16 @@ public class NuxeoUtility implements Runnable
             if(fInstance == null)
             {
                 fInstance = new NuxeoUtility(url, user, password);
+
+                try
+                {
+                    fInstance.warmUp();
+                }
+                catch(IOException e)
+                {
+                    //sessions are opened on demand later on
+                    LOG.warn("could not warm up Nuxeo session pool", e);
+                }
             }
         }
 
@@ -65,177 +128,710 @@ public class NuxeoUtility implements Runnable
 
     public NuxeoUtility(String url, String user, String password)
     {
-        fSubIds = new HashMap<String, List<String>>();
-        fDocuments = new HashMap<String, Document>();
+        this(url, user, password, readConfig());
+    }
 
-        fFormat = new SimpleDateFormat("yyyy-MM-dd");
+    /**
+     * @param url base URL of the Nuxeo instance
+     * @param user user to authenticate with
+     * @param password password of the user
+     * @param config connector configuration, see {@link NuxeoConfig}
+     */
+    public NuxeoUtility(String url, String user, String password, Map<String, String> config)
+    {
+        this(url, user, password, config, null);
+    }
 
+    /**
+     * @param url base URL of the Nuxeo instance
+     * @param user user to authenticate with
+     * @param password password of the user
+     * @param config connector configuration, see {@link NuxeoConfig}
+     * @param sessions session pool to use, null to create one from the configuration
+     */
+    NuxeoUtility(String url, String user, String password, Map<String, String> config,
+        SessionPool sessions)
+    {
+        final int cacheSize = NuxeoConfig.getInt(config, NuxeoConfig.CACHE_SIZE, 10000);
+        final long cacheTtl = NuxeoConfig.getLong(config, NuxeoConfig.CACHE_TTL, 600000);
+        fSubIds = new DocumentCache<List<String>>(cacheSize, cacheTtl);
+        fDocuments = new DocumentCache<Document>(cacheSize, cacheTtl);
+        fHeaders = new DocumentCache<Document>(cacheSize, cacheTtl);
+        fSnapshots = new DocumentCache<Map<String, String>>(cacheSize, cacheTtl);
+        fACLs = new DocumentCache<List<NuxeoACL>>(cacheSize, cacheTtl);
+        fBlobs = createBlobCache(config);
+
+        fNuxeoUrl = url;
         fNuxeoAutoUrl = url + "site/automation";
         fNuxeoIdUrl = url + "api/v1/id/";
+        fNuxeoUploadUrl = url + "api/v1/upload/";
 
         fUser = user;
         fPassword = password;
 
-        fClient = null;
-        fSession = null;
+        fPageSize = NuxeoConfig.getInt(config, NuxeoConfig.QUERY_PAGE_SIZE, 1000);
+        fBatchSize = NuxeoConfig.getInt(config, NuxeoConfig.BATCH_SIZE, 100);
+
+        final boolean compression = NuxeoConfig.getBoolean(config, NuxeoConfig.HTTP_COMPRESSION, false);
+
+        fSessions = sessions != null ? sessions : new SessionPool(fNuxeoAutoUrl, fUser, fPassword,
+            NuxeoConfig.getInt(config, NuxeoConfig.SESSION_POOL_MIN, 1),
+            NuxeoConfig.getInt(config, NuxeoConfig.SESSION_POOL_MAX, 8),
+            NuxeoConfig.getLong(config, NuxeoConfig.SESSION_IDLE_TIMEOUT, 300000),
+            NuxeoConfig.getLong(config, NuxeoConfig.SESSION_BORROW_TIMEOUT, 30000),
+            compression);
+
+        fHttp = new HttpUtil(fUser, fPassword,
+            NuxeoConfig.getInt(config, NuxeoConfig.HTTP_MAX_CONNECTIONS, HttpUtil.DEFAULT_MAX_CONNECTIONS),
+            NuxeoConfig.getInt(config, NuxeoConfig.HTTP_CONNECT_TIMEOUT, HttpUtil.DEFAULT_CONNECT_TIMEOUT),
+            NuxeoConfig.getInt(config, NuxeoConfig.HTTP_READ_TIMEOUT, HttpUtil.DEFAULT_READ_TIMEOUT),
+            compression);
+        fDownloader = new BlobDownloader(fHttp,
+            NuxeoConfig.getInt(config, NuxeoConfig.DOWNLOAD_RETRIES, 3));
+
+        fExecutor = Executors.newFixedThreadPool(
+            NuxeoConfig.getInt(config, NuxeoConfig.EXECUTOR_THREADS, 4),
+            new DaemonThreadFactory("nuxeo-worker"));
+
+        fUploader = new BlobUploader(fHttp, fNuxeoUploadUrl, fExecutor,
+            NuxeoConfig.getInt(config, NuxeoConfig.UPLOAD_CHUNK_SIZE, BlobUploader.DEFAULT_CHUNK_SIZE),
+            NuxeoConfig.getInt(config, NuxeoConfig.UPLOAD_PARALLELISM, 4),
+            NuxeoConfig.getInt(config, NuxeoConfig.UPLOAD_RETRIES, 3));
     }
 
-    @Override
-    public void run()
+    private static BlobCache createBlobCache(Map<String, String> config)
     {
-        while(fSession != null)
+        final long size = NuxeoConfig.getLong(config, NuxeoConfig.BLOB_CACHE_SIZE, 0);
+        if(size <= 0)
         {
-            try
-            {
-                Thread.sleep(SESSION_CHECK_INTERVAL);
-            }
-            catch (InterruptedException e)
-            {
-                e.printStackTrace();
-            }
+            return null;
+        }
 
+        String dir = config.get(NuxeoConfig.BLOB_CACHE_DIR);
+        if(dir == null || dir.isEmpty())
+        {
+            dir = System.getProperty("java.io.tmpdir");
+        }
 
-            //terminate session if there were no requests
-            if (fLastRequest < System.currentTimeMillis() + SESSION_TIMEOUT && fSession != null)
-            {
-                fSession.close();
-                fClient.shutdown();
-                fSession = null;
-                fClient = null;
-            }
+        try
+        {
+            return new BlobCache(Paths.get(dir), size);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            LOG.warn("could not create blob cache in " + dir + ", blobs are not cached", e);
+            return null;
         }
     }
 
+    private static Map<String, String> readConfig()
+    {
+        try
+        {
+            return NuxeoConfig.getInstance().getConfiguration();
+        }
+        catch(RuntimeException e)
+        {
+            LOG.warn("could not read " + NuxeoConfig.PROPERTIES + ", using defaults", e);
+            return new HashMap<String, String>();
+        }
+    }
+
+    /**
+     * Opens the minimum number of pooled sessions in advance, so the first
+     * requests do not have to authenticate.
+     * @throws IOException if a session could not be opened
+     */
+    public void warmUp() throws IOException
+    {
+        fSessions.warmUp();
+    }
+
+    /**
+     * Returns a session for ad-hoc requests, shared by all callers and opened
+     * on first use. It is not taken from the pool and must not be released.
+     * @return an open automation session
+     * @throws IOException if the session could not be opened
+     */
     public Session getSession() throws IOException
     {
-        fLastRequest = System.currentTimeMillis();
+        return fSessions.getShared();
+    }
 
-        if(fSession == null)
-        {
-            fClient = new HttpAutomationClient(fNuxeoAutoUrl);
-            fSession = fClient.getSession(fUser, fPassword);
+    /**
+     * Borrows a pooled session for ad-hoc use. The session is reserved for
+     * the caller until it is given back with {@link #releaseSession(Session)},
+     * which must be called in a finally block, otherwise the pool runs out of
+     * sessions.
+     * @return an exclusively borrowed automation session
+     * @throws IOException if no session could be opened in time
+     */
+    public Session borrowSession() throws IOException
+    {
+        return fSessions.borrow();
+    }
+
+    /**
+     * Gives a session returned by {@link #borrowSession()} back to the pool.
+     * @param session session to release, may be null
+     */
+    public void releaseSession(Session session)
+    {
+        fSessions.release(session);
+    }
+
+    private static NuxeoRequest newRequest(String operationId)
+    {
+        return new NuxeoRequest(operationId);
+    }
+
+    /**
+     * Borrows a session, creates the request on it and executes it. The
+     * session is given back in any case, also if the request is rejected
+     * while it is created.
+     * @param request request to execute
+     * @return the result of the operation
+     * @throws IOException if no session is available or the request fails
+     */
+    Object execute(NuxeoRequest request) throws IOException
+    {
+        final Session session = fSessions.borrow();
 
-            //start watchdog, automatically terminating sessions
-            new Thread(this).start();
+        try
+        {
+            return request.build(session).execute();
         }
+        finally
+        {
+            fSessions.release(session);
+        }
+    }
 
-        return fSession;
+    private Blob getFile(String uri) throws IOException
+    {
+        final Session session = fSessions.borrow();
+
+        try
+        {
+            return session.getFile(uri);
+        }
+        finally
+        {
+            fSessions.release(session);
+        }
     }
 
     public List<String> getAllDocumentIds() throws Exception
     {
-        clearBuffers();
+        return getAllDocumentIds(FILES_QUERY, true);
+    }
+
+    public List<String> getAllDocumentIds(long from, long to) throws Exception
+    {
+        Date fromDate = new Date(from);
+        Date toDate = new Date(Math.min(to, MAX_TIME));
+
+        return getAllDocumentIds(FILES_MODIFIED_QUERY.bind(fromDate, toDate), false);
+    }
 
-        final List<String> ids = new LinkedList<String>();
+    /**
+     * @param query query for the documents
+     * @param allFiles whether the query finds all files, so that the versions
+     *  of all files are read instead of those of the found documents
+     */
+    private List<String> getAllDocumentIds(String query, boolean allFiles) throws Exception
+    {
+        final List<String> ids = new ArrayList<String>();
+        final Map<String, String> modified = new HashMap<String, String>();
 
-        Documents docs = (Documents) getSession().newRequest("Document.Query")
-.setHeader(Constants.HEADER_NX_SCHEMAS, "*")
-                .set("query", "SELECT ecm:uuid FROM Document " + "WHERE ecm:primaryType = 'File'").execute();
+        //stable order for paging, only one page is held at a time and only
+        //dublincore is read to detect modified documents
+        forEachDocument(query + " ORDER BY ecm:uuid", fPageSize, SCHEMAS_DUBLINCORE, new DocumentVisitor()
+        {
+            @Override
+            public void visit(Document doc)
+            {
+                ids.add(doc.getId());
+                modified.put(doc.getId(), cacheDocument(doc, SCHEMAS_DUBLINCORE));
+            }
+        });
 
-        //debug output
-        // debugLogDocs(docs);
+        //a constant number of requests for all versions, while the few
+        //documents of a time window only need their own versions
+        final Map<String, List<String>> versions = allFiles ? getAllVersionIds() : getAllVersionIds(ids);
+        final List<List<String>> subIds = new ArrayList<List<String>>(ids.size());
 
-        String id = null;
-        for(Document doc : docs)
+        for(String id : ids)
         {
-            id = doc.getId();
-            ids.add(id);
-            fDocuments.put(id, doc);
-            getAllVersions(id);
+            List<String> idList = versions.get(id);
+            if(idList == null)
+            {
+                idList = Collections.emptyList();
+            }
+            fSubIds.put(id, idList, modified.get(id));
+            subIds.add(idList);
         }
 
         //filter out all second level IDs
-        //TODO: maybe collect / cache in external list
-        for(Entry<String, List<String>> subEntries : fSubIds.entrySet())
+        return filterVersionIds(ids, subIds);
+    }
+
+    /**
+     * Runs a query page by page and hands each resulting document to the
+     * visitor, while the next page is already loaded in the background.
+     * @param query NXQL query, should be ordered for stable paging
+     * @param pageSize number of documents per request
+     * @param visitor callback for each document
+     * @throws Exception if a page could not be loaded or the visitor failed
+     */
+    public void forEachDocument(String query, int pageSize, DocumentVisitor visitor) throws Exception
+    {
+        forEachDocument(query, pageSize, SCHEMAS_ALL, visitor);
+    }
+
+    /**
+     * Runs a query page by page like {@link #forEachDocument(String, int, DocumentVisitor)},
+     * reading only the given schemas.
+     * @param query NXQL query, should be ordered for stable paging
+     * @param pageSize number of documents per request
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @param visitor callback for each document
+     * @throws Exception if a page could not be loaded or the visitor failed
+     */
+    public void forEachDocument(String query, int pageSize, String schemas, DocumentVisitor visitor) throws Exception
+    {
+        final DocumentPager pager = iterateDocuments(query, pageSize, schemas);
+
+        try
         {
-            for(String subId : subEntries.getValue())
+            while(pager.hasNext())
             {
-                ids.remove(subId);
+                visitor.visit(pager.next());
             }
         }
+        finally
+        {
+            pager.close();
+        }
+    }
 
-        return ids;
+    /**
+     * Creates an iterator over the results of a query loading one page at a
+     * time, the next page is prefetched in the background.
+     * @param query NXQL query, should be ordered for stable paging
+     * @param pageSize number of documents per request
+     * @return iterator over all resulting documents
+     */
+    public DocumentPager iterateDocuments(String query, int pageSize)
+    {
+        return iterateDocuments(query, pageSize, SCHEMAS_ALL);
     }
 
-    public List<String> getAllDocumentIds(long from, long to) throws Exception
+    /**
+     * Creates a paged iterator like {@link #iterateDocuments(String, int)},
+     * reading only the given schemas.
+     * @param query NXQL query, should be ordered for stable paging
+     * @param pageSize number of documents per request
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return iterator over all resulting documents
+     */
+    public DocumentPager iterateDocuments(final String query, final int pageSize, final String schemas)
     {
-        clearBuffers();
+        return new DocumentPager(new DocumentPager.PageLoader()
+        {
+            @Override
+            public Documents load(int pageIndex) throws Exception
+            {
+                return (Documents) execute(project(newRequest("Document.Query"), schemas)
+                    .set("query", query)
+                    .set("pageSize", pageSize)
+                    .set("currentPageIndex", pageIndex));
+            }
+        }, pageSize, fExecutor);
+    }
 
-        final List<String> ids = new LinkedList<String>();
+    /**
+     * Reads the first page of a query, for paging by keyset instead of
+     * page index.
+     * @param query NXQL query
+     * @param pageSize maximum number of documents
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return the resulting documents
+     * @throws Exception if the query failed
+     */
+    Documents queryPage(String query, int pageSize, String schemas) throws Exception
+    {
+        return (Documents) execute(project(newRequest("Document.Query"), schemas)
+            .set("query", query)
+            .set("pageSize", pageSize)
+            .set("currentPageIndex", 0));
+    }
 
-        Date fromDate = new Date(from);
-        Date toDate = new Date(to);
+    /**
+     * @return number of documents per request for paged queries
+     */
+    int getPageSize()
+    {
+        return fPageSize;
+    }
+
+    /**
+     * Removes all version IDs from a list of document IDs in a single pass,
+     * keeping the order of the remaining IDs.
+     * @param ids document IDs to filter
+     * @param versions version ID lists of the documents
+     * @return the IDs which are not a version of any document
+     */
+    static List<String> filterVersionIds(List<String> ids, Collection<List<String>> versions)
+    {
+        final Set<String> versionIds = new HashSet<String>();
+        for(List<String> idList : versions)
+        {
+            versionIds.addAll(idList);
+        }
 
-        Documents docs = (Documents) getSession().newRequest("Document.Query")
-                .setHeader(Constants.HEADER_NX_SCHEMAS, "*")
-                .set("query",
-                        "SELECT ecm:uuid FROM Document " + "WHERE ecm:primaryType = 'File' " + "AND dc:modified >= '" + fFormat.format(fromDate) + "' " + "AND dc:modified <= '"
-                                + fFormat.format(toDate) + "'").execute();
+        final List<String> filtered = new ArrayList<String>(ids.size());
+        for(String id : ids)
+        {
+            if(!versionIds.contains(id))
+            {
+                filtered.add(id);
+            }
+        }
 
-        //debug output
-        // debugLogDocs(docs);
+        return filtered;
+    }
 
-        String id = null;
-        for(Document doc : docs)
+    /**
+     * Limits the schemas returned for the documents of a request.
+     * @param request request to limit
+     * @param schemas comma separated schemas, see {@link #SCHEMAS_ALL}
+     * @return the request
+     */
+    private static NuxeoRequest project(NuxeoRequest request, String schemas)
+    {
+        //without the header Nuxeo only returns the system fields
+        if(schemas != null && !schemas.isEmpty())
         {
-            id = doc.getId();
-            ids.add(id);
-            fDocuments.put(id, doc);
-            getAllVersions(id);
+            request.setHeader(Constants.HEADER_NX_SCHEMAS, schemas);
         }
 
-        //filter out all second level IDs
-        //TODO: maybe collect / cache in external list
-        for(Entry<String, List<String>> subEntries : fSubIds.entrySet())
+        return request;
+    }
+
+    /**
+     * @param schemas schemas documents were read with
+     * @return the cache for such documents or null if they are not cached
+     */
+    private DocumentCache<Document> getCache(String schemas)
+    {
+        if(SCHEMAS_ALL.equals(schemas))
+        {
+            return fDocuments;
+        }
+        else if(SCHEMAS_DUBLINCORE.equals(schemas))
+        {
+            return fHeaders;
+        }
+
+        return null;
+    }
+
+    /**
+     * Caches a document and drops all other cached data of it if the
+     * document has been modified since.
+     * @param doc document to cache
+     * @param schemas schemas the document was read with
+     * @return the document's version (dc:modified), null if it was read
+     *  without dublincore
+     */
+    private String cacheDocument(Document doc, String schemas)
+    {
+        final String version = doc.getProperties().getString("dc:modified");
+        final DocumentCache<Document> cache = getCache(schemas);
+
+        //without dublincore the version is unknown, which does not mean
+        //that the cached data of the document is outdated
+        if(version != null)
         {
-            for(String subId : subEntries.getValue())
+            fSubIds.invalidateIfModified(doc.getId(), version);
+            if(cache != fDocuments)
+            {
+                fDocuments.invalidateIfModified(doc.getId(), version);
+                fSnapshots.invalidateIfModified(doc.getId(), version);
+            }
+            if(cache != fHeaders)
             {
-                ids.remove(subId);
+                fHeaders.invalidateIfModified(doc.getId(), version);
             }
         }
 
-        return ids;
+        if(cache != null)
+        {
+            cache.put(doc.getId(), doc, version);
+        }
+        if(cache == fDocuments)
+        {
+            fSnapshots.put(doc.getId(), PropertyUpdates.snapshot(doc.getProperties()), version);
+        }
+
+        return version;
+    }
+
+    /**
+     * Removes a modified document from all caches.
+     * @param doc modified document, may be null
+     */
+    private void invalidate(Document doc)
+    {
+        if(doc != null && doc.getId() != null)
+        {
+            invalidate(doc.getId());
+        }
+    }
+
+    /**
+     * Removes a modified document from all caches.
+     * @param id ID of the modified document
+     */
+    private void invalidate(String id)
+    {
+        fDocuments.invalidate(id);
+        fHeaders.invalidate(id);
+        fSnapshots.invalidate(id);
+        fSubIds.invalidate(id);
+    }
+
+    /**
+     * Removes all cached ACLs, since permission changes and moves also
+     * affect the inherited ACLs of all descendants.
+     */
+    private void invalidateACLs()
+    {
+        synchronized(fACLs)
+        {
+            ++fACLGeneration;
+            fACLs.clear();
+        }
+    }
+
+    /**
+     * @return cache of documents read with all schemas
+     */
+    public DocumentCache<Document> getDocumentCache()
+    {
+        return fDocuments;
     }
 
-    private void clearBuffers()
+    /**
+     * @return cache of documents read with the dublincore schema only
+     */
+    public DocumentCache<Document> getHeaderCache()
     {
-        fDocuments.clear();
-        fSubIds.clear();
+        return fHeaders;
+    }
+
+    /**
+     * @return cache of version ID lists by document ID
+     */
+    public DocumentCache<List<String>> getVersionCache()
+    {
+        return fSubIds;
+    }
+
+    /**
+     * @return cache of ACLs by document ID
+     */
+    public DocumentCache<List<NuxeoACL>> getACLCache()
+    {
+        return fACLs;
+    }
+
+    /**
+     * @return bytes received and decoded by automation requests
+     */
+    public TransferStats getAutomationStats()
+    {
+        return fSessions.getStats();
+    }
+
+    /**
+     * @return bytes received and decoded by REST requests
+     */
+    public TransferStats getRestStats()
+    {
+        return fHttp.getStats();
     }
 
     public Document getDocument(String id) throws Exception
     {
-        Document doc = fDocuments.get(id);
+        return getDocument(id, SCHEMAS_ALL);
+    }
+
+    /**
+     * Reads a document with a subset of its schemas. Documents read with all
+     * schemas or with dublincore only are cached.
+     * @param id ID of the document
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return the document
+     * @throws Exception if the document could not be found
+     */
+    public Document getDocument(String id, String schemas) throws Exception
+    {
+        Document doc = getCachedDocument(id, schemas);
 
         //try retrieving the document if it's not yet available
         if(doc == null)
         {
-            Documents docs = (Documents) getSession().newRequest("Document.Query")
-.setHeader(Constants.HEADER_NX_SCHEMAS, "*")
-                    .set("query", "SELECT * FROM Document " + "WHERE ecm:uuid = '" + id + "'").execute();
+            doc = fetchDocument(id, schemas);
+            cacheDocument(doc, schemas);
+        }
+
+        return doc;
+    }
+
+    /**
+     * Reads a document directly by its ID, without going through the query
+     * engine and without using the cache.
+     * @param id ID or path of the document
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return the document
+     * @throws Exception if the document could not be found
+     */
+    Document fetchDocument(String id, String schemas) throws Exception
+    {
+        return (Document) execute(project(newRequest("Document.Fetch"), schemas)
+                .set("value", id));
+    }
+
+    /**
+     * Reads a document with an NXQL query by its ID without using the cache,
+     * the former lookup kept for comparing both in benchmarks.
+     * @param id ID of the document
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return the document
+     * @throws Exception if the document could not be found
+     */
+    Document queryDocument(String id, String schemas) throws Exception
+    {
+        Documents docs = (Documents) execute(project(newRequest("Document.Query"), schemas)
+                .set("query", DOCUMENT_QUERY.bind(id)));
+
+        if(docs.size() == 0)
+        {
+            throw new Exception("document not found");
+        }
+        else if(docs.size() > 1)
+        {
+            throw new Exception("too many documents found");
+        }
+
+        return docs.iterator().next();
+    }
+
+    /**
+     * @param id ID of the document
+     * @param schemas schemas the document is needed with
+     * @return a cached document containing the schemas or null
+     */
+    private Document getCachedDocument(String id, String schemas)
+    {
+        final DocumentCache<Document> cache = getCache(schemas);
+        Document doc = null;
 
-            if(docs.size() == 1)
+        //a document with all schemas contains dublincore as well
+        if(cache == fHeaders)
+        {
+            doc = fDocuments.get(id);
+        }
+        if(doc == null && cache != null)
+        {
+            doc = cache.get(id);
+        }
+
+        return doc;
+    }
+
+    public Map<String, Document> getDocuments(Collection<String> ids) throws Exception
+    {
+        return getDocuments(ids, SCHEMAS_ALL);
+    }
+
+    /**
+     * Reads many documents with one query per chunk of uncached IDs instead
+     * of one query per ID, chunks are queried concurrently.
+     * @param ids IDs of the documents
+     * @param schemas comma separated schemas to read, see {@link #SCHEMAS_ALL}
+     * @return the documents by ID in the order of the IDs, IDs of documents
+     *  which do not exist are left out
+     * @throws Exception if the documents could not be read
+     */
+    public Map<String, Document> getDocuments(Collection<String> ids, final String schemas) throws Exception
+    {
+        final Map<String, Document> docs = new LinkedHashMap<String, Document>();
+        final List<String> missing = new ArrayList<String>();
+
+        for(String id : ids)
+        {
+            if(!docs.containsKey(id))
             {
-                doc = docs.iterator().next();
+                //placeholder for missing documents keeps the order of the IDs
+                Document doc = getCachedDocument(id, schemas);
+                docs.put(id, doc);
+
+                if(doc == null)
+                {
+                    missing.add(id);
+                }
             }
-            else if(docs.size() == 0)
+        }
+
+        final List<Callable<Documents>> tasks = new ArrayList<Callable<Documents>>();
+        for(int start = 0; start < missing.size(); start += fBatchSize)
+        {
+            final List<String> chunk = missing.subList(start, Math.min(start + fBatchSize, missing.size()));
+
+            tasks.add(new Callable<Documents>()
             {
-                throw new Exception("document not found");
+                @Override
+                public Documents call() throws Exception
+                {
+                    return (Documents) execute(project(newRequest("Document.Query"), schemas)
+                        .set("query", DOCUMENTS_QUERY.bind(chunk))
+                        .set("pageSize", chunk.size()));
+                }
+            });
+        }
+
+        final BatchResult<Documents> result = runBatch(tasks);
+        result.throwIfFailed();
+
+        for(Documents found : result.getResults())
+        {
+            for(Document doc : found)
+            {
+                cacheDocument(doc, schemas);
+                docs.put(doc.getId(), doc);
             }
-            else
+        }
+
+        final Iterator<Document> iter = docs.values().iterator();
+        while(iter.hasNext())
+        {
+            if(iter.next() == null)
             {
-                throw new Exception("too many documents found");
+                iter.remove();
             }
         }
 
-        return doc;
+        return docs;
     }
 
     public String getDocumentVersion(String id) throws Exception
     {
         String version = null;
 
-        Document doc = getDocument(id);
+        Document doc = getDocument(id, SCHEMAS_DUBLINCORE);
         if(doc != null)
         {
             //TODO: more complete version string encompassing more values
@@ -249,7 +845,7 @@ public class NuxeoUtility implements Runnable
     {
         Date date = null;
 
-        Document doc = getDocument(id);
+        Document doc = getDocument(id, SCHEMAS_DUBLINCORE);
         if(doc != null)
         {
             date = doc.getLastModified();
@@ -272,9 +868,130 @@ public class NuxeoUtility implements Runnable
         return uri;
     }
 
+    /**
+     * Reads the file content of a document. With the blob cache enabled,
+     * the content is streamed to disk once per digest and returned
+     * memory-mapped afterwards.
+     * @param id ID of the document
+     * @return the file content
+     * @throws Exception if the content could not be read
+     */
     public Blob getBlob(String id) throws Exception
     {
-        return getSession().getFile(getURI(id));
+        if(fBlobs != null)
+        {
+            final Document doc = getDocument(id);
+            final PropertyMap content = doc != null ? doc.getProperties().getMap("file:content") : null;
+            final String key = content != null ? getBlobKey(doc, content) : null;
+
+            if(key != null)
+            {
+                final URL url = new URL(new URL(fNuxeoUrl), content.getString("data"));
+                return fBlobs.get(key, content.getString("name"), content.getString("mime-type"),
+                    new BlobCache.Loader()
+                {
+                    @Override
+                    public Blob load(Path target) throws Exception
+                    {
+                        //a blob changing during the download is written again from
+                        //the start, a shorter one must not keep the old tail
+                        try(FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING))
+                        {
+                            channel.truncate(fDownloader.download(url, channel, null));
+                        }
+                        return null;
+                    }
+                });
+            }
+        }
+
+        return getFile(getURI(id));
+    }
+
+    /**
+     * Streams the file content of a document without buffering it.
+     * @param id ID of the document
+     * @param out stream to write to, not closed
+     * @param listener listener for the progress, may be null
+     * @return number of bytes written
+     * @throws Exception if the download failed
+     */
+    public long downloadBlob(String id, OutputStream out, ProgressListener listener)
+        throws Exception
+    {
+        return fDownloader.download(getBlobURL(id), out, listener);
+    }
+
+    /**
+     * Streams the file content of a document without buffering it.
+     * @param id ID of the document
+     * @param out channel to write to, not closed
+     * @param listener listener for the progress, may be null
+     * @return number of bytes written
+     * @throws Exception if the download failed
+     */
+    public long downloadBlob(String id, WritableByteChannel out, ProgressListener listener)
+        throws Exception
+    {
+        return fDownloader.download(getBlobURL(id), out, listener);
+    }
+
+    /**
+     * Downloads the file content of a document to a file, resuming a
+     * previous partial download, see {@link BlobDownloader}.
+     * @param id ID of the document
+     * @param target file to write
+     * @param listener listener for the progress, may be null
+     * @return size of the file
+     * @throws Exception if the download failed
+     */
+    public long downloadBlob(String id, Path target, ProgressListener listener)
+        throws Exception
+    {
+        return fDownloader.download(getBlobURL(id), target, listener);
+    }
+
+    private URL getBlobURL(String id) throws Exception
+    {
+        final String uri = getURI(id);
+        if(uri == null)
+        {
+            throw new IOException("document " + id + " has no file content");
+        }
+
+        //absolute download URLs are kept, relative ones refer to the instance
+        return new URL(new URL(fNuxeoUrl), uri);
+    }
+
+    /**
+     * @return key of the file content, its digest if known, otherwise the
+     *  document ID and version, null if neither is known
+     */
+    private static String getBlobKey(Document doc, PropertyMap content)
+    {
+        if(content.getString("data") == null)
+        {
+            return null;
+        }
+
+        final String digest = content.getString("digest");
+        if(digest != null && !digest.isEmpty())
+        {
+            //identical content of different documents is cached once
+            return "digest:" + digest;
+        }
+
+        final Date modified = doc.getLastModified();
+        return modified != null ? "doc:" + doc.getId() + "@" + modified.getTime() : null;
+    }
+
+    /**
+     * @return cache of blob contents, null if disabled
+     */
+    public BlobCache getBlobCache()
+    {
+        return fBlobs;
     }
 
     public String getPath(String id) throws Exception
@@ -290,20 +1007,134 @@ public class NuxeoUtility implements Runnable
         return path;
     }
 
-    //TODO: placeholder
+    /**
+     * Reads the ACLs of a document as returned by the REST API, uncached.
+     * @param id ID of the document
+     * @return the ACLs as JSON
+     * @throws Exception if the ACLs could not be read
+     */
     public String getACLs(String id) throws Exception
     {
-        String acl = null;
-
         //request via document id
-        String uri = fNuxeoIdUrl + id + "/@acl";
+        return fHttp.getText(new URL(fNuxeoIdUrl + id + "/@acl"));
+    }
+
+    /**
+     * Reads the ACLs of a document, parsed once and cached until
+     * permissions are changed.
+     * @param id ID of the document
+     * @return unmodifiable ACLs of the document in evaluation order
+     * @throws Exception if the ACLs could not be read
+     */
+    public List<NuxeoACL> getParsedACLs(String id) throws Exception
+    {
+        List<NuxeoACL> acls = fACLs.get(id);
+
+        if(acls == null)
+        {
+            final long generation;
+            synchronized(fACLs)
+            {
+                generation = fACLGeneration;
+            }
+
+            //request via document id
+            URL url = new URL(fNuxeoIdUrl + id + "/@acl");
+            acls = fHttp.get(url, NuxeoACL.HANDLER);
+
+            synchronized(fACLs)
+            {
+                //ACLs read before a permission change may be outdated and
+                //must not be cached after the cache has been cleared
+                if(generation == fACLGeneration)
+                {
+                    fACLs.put(id, acls, null);
+                }
+            }
+        }
+
+        return acls;
+    }
+
+    /**
+     * Reads the ACLs of several documents, uncached ones are requested
+     * concurrently.
+     * @param ids IDs of the documents
+     * @return unmodifiable ACLs by document ID, in the order of the IDs
+     * @throws Exception if any ACLs could not be read
+     */
+    public Map<String, List<NuxeoACL>> getParsedACLs(Collection<String> ids) throws Exception
+    {
+        final Map<String, List<NuxeoACL>> acls = new LinkedHashMap<String, List<NuxeoACL>>();
+        final Map<String, Future<List<NuxeoACL>>> tasks = new HashMap<String, Future<List<NuxeoACL>>>();
+
+        for(final String id : ids)
+        {
+            if(acls.containsKey(id))
+            {
+                continue;
+            }
+
+            //placeholder for missing entries keeps the order of the IDs
+            List<NuxeoACL> cached = fACLs.get(id);
+            acls.put(id, cached);
+
+            if(cached == null)
+            {
+                tasks.put(id, fExecutor.submit(new Callable<List<NuxeoACL>>()
+                {
+                    @Override
+                    public List<NuxeoACL> call() throws Exception
+                    {
+                        return getParsedACLs(id);
+                    }
+                }));
+            }
+        }
 
-        URL url = new URL(uri);
-        acl = HttpUtil.getText(url, fUser, fPassword);
+        try
+        {
+            for(Entry<String, Future<List<NuxeoACL>>> task : tasks.entrySet())
+            {
+                acls.put(task.getKey(), await(task.getValue()));
+            }
+        }
+        finally
+        {
+            //stop remaining requests if one failed
+            for(Future<List<NuxeoACL>> task : tasks.values())
+            {
+                task.cancel(true);
+            }
+        }
 
-        //TODO: evaluate JSON object
+        return acls;
+    }
 
-        return acl;
+    /**
+     * Waits for a background task, rethrowing its failure as is.
+     * @param task task to wait for
+     * @return the task's result
+     * @throws Exception the task's failure
+     */
+    private static <T> T await(Future<T> task) throws Exception
+    {
+        try
+        {
+            return task.get();
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            else if(e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -320,20 +1151,108 @@ public class NuxeoUtility implements Runnable
         {
             //create new ID list
             idList = new LinkedList<String>();
-            fSubIds.put(id, idList);
 
             //actually read all version IDs
-            Documents docs = (Documents) getSession().newRequest("Document.GetVersions").setHeader(Constants.HEADER_NX_SCHEMAS, "*").setInput(id).execute();
+            Documents docs = (Documents) execute(project(newRequest("Document.GetVersions"), SCHEMAS_NONE).setInput(id));
 
             for(Document doc : docs)
             {
                 idList.add(doc.getId());
             }
+
+            idList = Collections.unmodifiableList(idList);
+            fSubIds.put(id, idList, null);
         }
 
         return idList;
     }
 
+    /**
+     * Reads the IDs of all file versions using one paged result set query
+     * instead of one Document.GetVersions call per document.
+     * @return {@link List}s of version IDs by the ID of the versioned document
+     * @throws Exception
+     */
+    private Map<String, List<String>> getAllVersionIds() throws Exception
+    {
+        final Map<String, List<String>> versions = new HashMap<String, List<String>>();
+
+        readVersionIds(ALL_VERSIONS_QUERY, versions);
+
+        return unmodifiableLists(versions);
+    }
+
+    /**
+     * Reads the IDs of the versions of the given documents using paged
+     * result set queries, one per chunk of documents, instead of one
+     * Document.GetVersions call per document.
+     * @param ids IDs of the versioned documents
+     * @return {@link List}s of version IDs by the ID of the versioned document
+     * @throws Exception
+     */
+    private Map<String, List<String>> getAllVersionIds(List<String> ids) throws Exception
+    {
+        final Map<String, List<String>> versions = new HashMap<String, List<String>>();
+
+        for(int start = 0; start < ids.size(); start += fBatchSize)
+        {
+            readVersionIds(VERSIONS_QUERY.bind(ids.subList(start, Math.min(start + fBatchSize, ids.size()))),
+                versions);
+        }
+
+        return unmodifiableLists(versions);
+    }
+
+    /**
+     * @param query result set query for ecm:uuid and ecm:versionVersionableId
+     * @param versions version IDs by the ID of the versioned document to add to
+     */
+    private void readVersionIds(String query, Map<String, List<String>> versions) throws Exception
+    {
+        int page = 0;
+        int rows = 0;
+        do
+        {
+            Object result = execute(newRequest("Resultset.PageProvider")
+                .set("query", query)
+                .set("pageSize", fPageSize)
+                .set("currentPageIndex", page));
+
+            rows = 0;
+            if(result instanceof List)
+            {
+                for(Object row : (List<?>) result)
+                {
+                    Map<?, ?> record = (Map<?, ?>) row;
+                    String versionableId = (String) record.get("ecm:versionVersionableId");
+
+                    List<String> idList = versions.get(versionableId);
+                    if(idList == null)
+                    {
+                        idList = new LinkedList<String>();
+                        versions.put(versionableId, idList);
+                    }
+                    idList.add((String) record.get("ecm:uuid"));
+
+                    ++rows;
+                }
+            }
+
+            ++page;
+        }
+        while(rows == fPageSize);
+    }
+
+    private static Map<String, List<String>> unmodifiableLists(Map<String, List<String>> versions)
+    {
+        for(Entry<String, List<String>> entry : versions.entrySet())
+        {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+
+        return versions;
+    }
+
     /**
      * Creates a Document with the given properties and type.
      * @param doc
@@ -344,24 +1263,218 @@ public class NuxeoUtility implements Runnable
      */
     public Document createDocument(Document doc, final String type, final Properties properties) throws Exception
     {
-        OperationRequest request = null;
+        return createDocument(doc, properties.get("dc:title"), type, properties);
+    }
+
+    private Document createDocument(OperationInput parent, Object name, String type, Properties properties) throws Exception
+    {
+        NuxeoRequest request = null;
         Document result = null;
 
-        request = getSession().newRequest("Document.Create");
+        request = newRequest("Document.Create");
 
         // parameters
         // for(Entry<String, Object> paramE : params.entrySet())
         // {
         // request = request.set(paramE.getKey(), paramE.getValue());
         // }
-        request.set("name", properties.get("dc:title"));
+        request.set("name", name);
         request.set("type", type);
         request.set("properties", properties);
         // input document
-        request.setInput(doc);
+        request.setInput(parent);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
+
+        return result;
+    }
+
+    /**
+     * Uploads a file in chunks and attaches it as file content of a
+     * document, e.g. one returned by
+     * {@link #createDocument(Document, String, Properties)}.
+     * @param doc document to attach to
+     * @param file file to upload
+     * @param mimeType MIME type of the file, null to guess it
+     * @param listener listener for the progress, may be null
+     * @throws Exception if the upload failed
+     */
+    public void attachBlob(Document doc, Path file, String mimeType, ProgressListener listener) throws Exception
+    {
+        final String batchId = fUploader.createBatch();
+        try
+        {
+            fUploader.upload(batchId, 0, file, mimeType, listener);
+        }
+        catch(IOException e)
+        {
+            dropUpload(batchId);
+            throw e;
+        }
+
+        attachUpload(batchId, doc);
+    }
+
+    /**
+     * Uploads a stream in chunks and attaches it as file content of a
+     * document, e.g. one returned by
+     * {@link #createDocument(Document, String, Properties)}.
+     * @param doc document to attach to
+     * @param in stream to upload, not closed
+     * @param size number of bytes in the stream
+     * @param fileName name of the file
+     * @param mimeType MIME type of the file, may be null
+     * @param listener listener for the progress, may be null
+     * @throws Exception if the upload failed
+     */
+    public void attachBlob(Document doc, InputStream in, long size, String fileName, String mimeType,
+        ProgressListener listener) throws Exception
+    {
+        final String batchId = fUploader.createBatch();
+        try
+        {
+            fUploader.upload(batchId, 0, in, size, fileName, mimeType, listener);
+        }
+        catch(IOException e)
+        {
+            dropUpload(batchId);
+            throw e;
+        }
+
+        attachUpload(batchId, doc);
+    }
+
+    private void attachUpload(String batchId, Document doc) throws IOException
+    {
+        try
+        {
+            fUploader.attach(batchId, 0, doc.getId(), "file:content");
+        }
+        catch(IOException e)
+        {
+            dropUpload(batchId);
+            throw e;
+        }
+        finally
+        {
+            invalidate(doc);
+        }
+    }
+
+    private void dropUpload(String batchId)
+    {
+        try
+        {
+            fUploader.drop(batchId);
+        }
+        catch(IOException e)
+        {
+            LOG.warn("could not drop upload batch " + batchId, e);
+        }
+    }
+
+    /**
+     * @return uploader for uploads resumable across calls, which keeps
+     *  failed batches for another attempt
+     */
+    public BlobUploader getBlobUploader()
+    {
+        return fUploader;
+    }
+
+    /**
+     * Creates several documents in one parent concurrently, one failing
+     * document does not keep the others from being created.
+     * @param parent parent of the new documents
+     * @param specs documents to create
+     * @return the created documents or failures in the order of the specs
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public BatchResult<Document> createDocuments(Document parent, List<DocumentSpec> specs) throws InterruptedException
+    {
+        return createDocuments((OperationInput) parent, specs);
+    }
+
+    /**
+     * Creates several documents like {@link #createDocuments(Document, List)}
+     * without reading the parent document first.
+     * @param parentId ID or path of the parent of the new documents
+     * @param specs documents to create
+     * @return the created documents or failures in the order of the specs
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public BatchResult<Document> createDocuments(String parentId, List<DocumentSpec> specs) throws InterruptedException
+    {
+        return createDocuments(new DocRef(parentId), specs);
+    }
+
+    private BatchResult<Document> createDocuments(final OperationInput parent, List<DocumentSpec> specs) throws InterruptedException
+    {
+        final List<Callable<Document>> tasks = new ArrayList<Callable<Document>>(specs.size());
+
+        for(final DocumentSpec spec : specs)
+        {
+            tasks.add(new Callable<Document>()
+            {
+                @Override
+                public Document call() throws Exception
+                {
+                    return createDocument(parent, spec.getName(), spec.getType(), spec.getProperties());
+                }
+            });
+        }
+
+        return runBatch(tasks);
+    }
+
+    /**
+     * Runs independent tasks concurrently on the worker pool and collects
+     * their results or failures.
+     * @param tasks tasks to run
+     * @return results or failures in the order of the tasks
+     * @throws InterruptedException if interrupted while waiting, remaining
+     *  tasks are cancelled
+     */
+    private <T> BatchResult<T> runBatch(List<? extends Callable<T>> tasks) throws InterruptedException
+    {
+        final BatchResult<T> result = new BatchResult<T>(tasks.size());
+        final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+
+        for(Callable<T> task : tasks)
+        {
+            futures.add(fExecutor.submit(task));
+        }
+
+        try
+        {
+            for(int i = 0; i < futures.size(); ++i)
+            {
+                try
+                {
+                    result.setResult(i, futures.get(i).get());
+                }
+                catch(ExecutionException e)
+                {
+                    if(e.getCause() instanceof Exception)
+                    {
+                        result.setFailure(i, (Exception) e.getCause());
+                    }
+                    else
+                    {
+                        result.setFailure(i, e);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            //only has an effect if interrupted
+            for(Future<T> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
 
         return result;
     }
@@ -374,11 +1487,11 @@ public class NuxeoUtility implements Runnable
      */
     public Document updateDocument(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
         // TODO: document body?
-        request = getSession().newRequest("Document.Update");
+        request = newRequest("Document.Update");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -389,7 +1502,117 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
+
+        invalidate(doc);
+
+        return result;
+    }
+
+    /**
+     * Updates the properties of many documents. Properties already having
+     * the new value in a cached document as it was read are not sent, documents with the
+     * same remaining changes are updated together by one request per batch
+     * and batches run concurrently on the worker pool.
+     * @param changes changed properties by document ID
+     * @return updated documents or failures in the iteration order of the
+     *  changes, documents without actual changes are not requested again
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public BatchResult<Document> updateDocuments(Map<String, ? extends Map<String, ?>> changes) throws InterruptedException
+    {
+        final List<String> ids = new ArrayList<String>(changes.keySet());
+        final BatchResult<Document> result = new BatchResult<Document>(ids.size());
+
+        //documents by their remaining changes
+        final Map<Map<String, String>, List<Integer>> groups = new LinkedHashMap<Map<String, String>, List<Integer>>();
+
+        for(int i = 0; i < ids.size(); ++i)
+        {
+            final String id = ids.get(i);
+            final Document cached = fDocuments.get(id);
+
+            //not diffed against the cached document, which callers may have
+            //changed without updating it
+            Map<String, String> delta = PropertyUpdates.toStrings(changes.get(id));
+            delta = PropertyUpdates.diff(delta, cached != null ? fSnapshots.get(id) : null);
+
+            if(delta.isEmpty())
+            {
+                result.setResult(i, cached);
+                continue;
+            }
+
+            List<Integer> group = groups.get(delta);
+            if(group == null)
+            {
+                group = new ArrayList<Integer>();
+                groups.put(delta, group);
+            }
+            group.add(i);
+        }
+
+        final List<Callable<Documents>> tasks = new ArrayList<Callable<Documents>>();
+        final List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+
+        for(Entry<Map<String, String>, List<Integer>> group : groups.entrySet())
+        {
+            final PropertyMap properties = PropertyUpdates.toPropertyMap(group.getKey());
+            final List<Integer> indices = group.getValue();
+
+            for(int start = 0; start < indices.size(); start += fBatchSize)
+            {
+                final DocRefs refs = new DocRefs();
+                final List<Integer> chunk = indices.subList(start, Math.min(start + fBatchSize, indices.size()));
+                for(int index : chunk)
+                {
+                    refs.add(new DocRef(ids.get(index)));
+                }
+
+                chunks.add(chunk);
+                tasks.add(new Callable<Documents>()
+                {
+                    @Override
+                    public Documents call() throws Exception
+                    {
+                        return toDocuments(execute(newRequest("Document.Update")
+                            .set("properties", properties).setInput(refs)));
+                    }
+                });
+            }
+        }
+
+        final BatchResult<Documents> updates = runBatch(tasks);
+
+        for(int c = 0; c < chunks.size(); ++c)
+        {
+            final List<Integer> chunk = chunks.get(c);
+            final Documents docs = updates.getResult(c);
+
+            final Map<String, Document> byId = new HashMap<String, Document>();
+            if(docs != null)
+            {
+                for(Document doc : docs)
+                {
+                    byId.put(doc.getId(), doc);
+                }
+            }
+
+            for(int index : chunk)
+            {
+                final String id = ids.get(index);
+                invalidate(id);
+
+                if(updates.isSuccess(c))
+                {
+                    result.setResult(index, byId.get(id));
+                }
+                else
+                {
+                    result.setFailure(index, updates.getFailure(c));
+                }
+            }
+        }
 
         return result;
     }
@@ -403,7 +1626,9 @@ public class NuxeoUtility implements Runnable
     {
         Document result = null;
 
-        result = (Document) getSession().newRequest("Document.Lock").setInput(document).execute();
+        result = (Document) execute(newRequest("Document.Lock").setInput(document));
+
+        invalidate(document);
 
         return result;
     }
@@ -413,7 +1638,8 @@ public class NuxeoUtility implements Runnable
      * @throws Exception
      */
     public Document unlockDocument(Document document) throws Exception {
-        Document result = (Document) getSession().newRequest("Document.Unlock").setInput(document).execute();
+        Document result = (Document) execute(newRequest("Document.Unlock").setInput(document));
+        invalidate(document);
         return result;
     }
     /**
@@ -425,7 +1651,9 @@ public class NuxeoUtility implements Runnable
     {
         Document result = null;
 
-        result = (Document) getSession().newRequest("Document.CheckOut").setInput(document).execute();
+        result = (Document) execute(newRequest("Document.CheckOut").setInput(document));
+
+        invalidate(document);
 
         return result;
     }
@@ -439,10 +1667,10 @@ public class NuxeoUtility implements Runnable
      */
     public Document checkinDocument(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
-        request = getSession().newRequest("Document.CheckIn");
+        request = newRequest("Document.CheckIn");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -453,7 +1681,9 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
+
+        invalidate(doc);
 
         return result;
     }
@@ -467,7 +1697,9 @@ public class NuxeoUtility implements Runnable
     {
         Document result = null;
 
-        result = (Document) getSession().newRequest("Document.Delete").setInput(doc).execute();
+        result = (Document) execute(newRequest("Document.Delete").setInput(doc));
+
+        invalidate(doc);
 
         return result;
     }
@@ -476,7 +1708,9 @@ public class NuxeoUtility implements Runnable
     {
         Document result = null;
 
-        result = (Document) getSession().newRequest("Document.SetLifeCycle").set("value", value).setInput(doc).execute();
+        result = (Document) execute(newRequest("Document.SetLifeCycle").set("value", value).setInput(doc));
+
+        invalidate(doc);
 
         return result;
     }
@@ -489,10 +1723,10 @@ public class NuxeoUtility implements Runnable
      */
     public Document addPermission(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
-        request = getSession().newRequest("Document.AddPermission");
+        request = newRequest("Document.AddPermission");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -503,7 +1737,10 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
+
+        invalidate(doc);
+        invalidateACLs();
 
         return result;
     }
@@ -517,10 +1754,10 @@ public class NuxeoUtility implements Runnable
      */
     public Document removePermission(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
-        request = getSession().newRequest("Document.RemovePermission");
+        request = newRequest("Document.RemovePermission");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -531,7 +1768,10 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
+
+        invalidate(doc);
+        invalidateACLs();
 
         return result;
     }
@@ -547,11 +1787,11 @@ public class NuxeoUtility implements Runnable
 
     public Document startWorkflow(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
         // TODO: JSON representation?
-        request = getSession().newRequest("Context.StartWorkflow");
+        request = newRequest("Context.StartWorkflow");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -562,7 +1802,7 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
 
         return result;
     }
@@ -570,7 +1810,7 @@ public class NuxeoUtility implements Runnable
     public void setWorkflowVar(String id, String name, Object value) throws Exception
     {
         // TODO: ?
-        getSession().newRequest("Context.SetWorkflowVar").set("workflowInstanceId", id).set("name", name).set("value", value).execute();
+        execute(newRequest("Context.SetWorkflowVar").set("workflowInstanceId", id).set("name", name).set("value", value));
 
     }
 
@@ -579,7 +1819,7 @@ public class NuxeoUtility implements Runnable
         // TODO: instance ID?
         // TODO: input not used?
 
-        Document result = (Document) getSession().newRequest("Context.SetWorkflowVar").set("name", name).set("value", value).setInput(doc).execute();
+        Document result = (Document) execute(newRequest("Context.SetWorkflowVar").set("name", name).set("value", value).setInput(doc));
 
         return result;
     }
@@ -592,7 +1832,7 @@ public class NuxeoUtility implements Runnable
     public Documents cancelWorkflow(Document doc) throws Exception
     {
         // TODO: right way?
-        Documents docs = (Documents) getSession().newRequest("cancelWorkflow").setInput(doc).execute();
+        Documents docs = (Documents) execute(newRequest("cancelWorkflow").setInput(doc));
 
         return docs;
     }
@@ -600,7 +1840,7 @@ public class NuxeoUtility implements Runnable
     public Documents terminateWorkflow(Document doc) throws Exception
     {
         // TODO: right way?
-        Documents docs = (Documents) getSession().newRequest("terminateWorkflow").setInput(doc).execute();
+        Documents docs = (Documents) execute(newRequest("terminateWorkflow").setInput(doc));
 
         return docs;
     }
@@ -609,7 +1849,7 @@ public class NuxeoUtility implements Runnable
     {
         Documents result = null;
 
-        result = (Documents) getSession().newRequest("Workflow.GetTask").execute();
+        result = (Documents) execute(newRequest("Workflow.GetTask"));
 
         return result;
     }
@@ -619,7 +1859,7 @@ public class NuxeoUtility implements Runnable
         Document result = null;
 
         // TODO: ID parameter not supported?
-        Object o = getSession().newRequest("Workflow.GetTask").execute();
+        Object o = execute(newRequest("Workflow.GetTask"));
         if (o instanceof Documents) {
             Documents docs = (Documents) o;
 
@@ -644,13 +1884,13 @@ public class NuxeoUtility implements Runnable
     {
         Document result = null;
         Documents docs = null;
-        OperationRequest request = null;
+        NuxeoRequest request = null;
 
         // create request
         if (routing) {
-            request = getSession().newRequest("Workflow.CreateRoutingTask");
+            request = newRequest("Workflow.CreateRoutingTask");
         } else {
-            request = getSession().newRequest("Workflow.CreateTask");
+            request = newRequest("Workflow.CreateTask");
         }
 
         // parameters
@@ -662,7 +1902,7 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        Object o = request.execute();
+        Object o = execute(request);
 
         // get result
         if (o instanceof Documents) {
@@ -689,10 +1929,10 @@ public class NuxeoUtility implements Runnable
         // TODO: "setTaskDone"?
         // TODO: "Document.Routing.EvaluateCondition"?
 
-        OperationRequest request = null;
+        NuxeoRequest request = null;
 
         // create request
-        request = getSession().newRequest("Workflow.CompleteTaskOperation");
+        request = newRequest("Workflow.CompleteTaskOperation");
 
         // parameters
         for (Entry<String, Object> paramE : parameters.entrySet()) {
@@ -703,7 +1943,7 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        Object o = request.execute();
+        Object o = execute(request);
 
         if (o instanceof Documents) {
             result = ((Documents) o).get(0);
@@ -771,7 +2011,7 @@ public class NuxeoUtility implements Runnable
 
                 if(path != null)
                 {
-                    final FileBlob blob = (FileBlob) getSession().getFile(path);
+                    final FileBlob blob = (FileBlob) getFile(path);
 
                     if(blob != null)
                     {
@@ -823,25 +2063,24 @@ public class NuxeoUtility implements Runnable
 
     public void shutdown()
     {
-        if(fSession != null)
+        fExecutor.shutdown();
+        fSessions.shutdown();
+
+        if(fBlobs != null)
         {
-            fSession.close();
-            fClient.shutdown();
+            fBlobs.clear();
         }
-
-        fSession = null;
-        fClient = null;
     }
 
     public Document startCamundaWorkflow(Document doc, Map<String, Object> params) throws Exception
     {
-        OperationRequest request = null;
+        NuxeoRequest request = null;
         Document result = null;
 
         // "Context.StartWorkflow"
 
         // TODO: JSON representation?
-        request = getSession().newRequest("Camunda.StartWorkflow");
+        request = newRequest("Camunda.StartWorkflow");
 
         // parameters
         for (Entry<String, Object> paramE : params.entrySet()) {
@@ -852,7 +2091,7 @@ public class NuxeoUtility implements Runnable
         request.setInput(doc);
 
         // execute
-        result = (Document) request.execute();
+        result = (Document) execute(request);
 
         return result;
     }
@@ -864,7 +2103,7 @@ public class NuxeoUtility implements Runnable
      * @throws Exception
      */
     public Document createCollection(final String name, final String description, final Document doc) throws Exception {
-        OperationRequest request = getSession().newRequest("Collection.CreateCollection");
+        NuxeoRequest request = newRequest("Collection.CreateCollection");
         request.set("name", name);
         if (description != null && !description.equals("")) {
             request.set("description", description);
@@ -875,7 +2114,7 @@ public class NuxeoUtility implements Runnable
         }
 
         // execute
-        Object o = request.execute();
+        Object o = execute(request);
         LOG.debug(o + "");
 
         // return
@@ -888,21 +2127,21 @@ public class NuxeoUtility implements Runnable
      * @throws Exception
      */
     public List<Document> getDocumentsFromCollection(Document collection) throws Exception {
-        OperationRequest request = getSession().newRequest("Collection.GetDocumentsFromCollection");
+        NuxeoRequest request = newRequest("Collection.GetDocumentsFromCollection");
 
         // Set Params
         request.setInput(collection);
 
         // execute
-        PaginableDocuments result = (PaginableDocuments) request.execute();
+        PaginableDocuments result = (PaginableDocuments) execute(request);
 
         return result.list();
 
     }
 
     public FileBlob getTopLevelFolder() throws Exception {
-        OperationRequest request = getSession().newRequest("NuxeoDrive.GetTopLevelFolder");
-        return (FileBlob) request.execute();
+        NuxeoRequest request = newRequest("NuxeoDrive.GetTopLevelFolder");
+        return (FileBlob) execute(request);
     }
 
     /**
@@ -912,11 +2151,11 @@ public class NuxeoUtility implements Runnable
      */
     public List<Document> getCollections(final String searchTerm) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Collection.GetCollections");
+        NuxeoRequest request = newRequest("Collection.GetCollections");
         request.set("searchTerm", searchTerm);
 
         // execute
-        PaginableDocuments paginableDocuments = (PaginableDocuments) request.execute();
+        PaginableDocuments paginableDocuments = (PaginableDocuments) execute(request);
 
         // return
         return paginableDocuments.list();
@@ -925,20 +2164,123 @@ public class NuxeoUtility implements Runnable
     /**
      * @param collection The Collection the {@link Document}s will be added
      * @param documentsToAdd The {@link Document}s You want to add
-     * @throws Exception
+     * @throws Exception the failure of the first chunk of documents that could not be added
+     * @see #addDocumentsToCollectionWithResult(Document, Collection)
      */
     public void addDocumentsToCollection(Document collection, Collection<Document> documentsToAdd) throws Exception {
-        // request
-        OperationRequest request = getSession().newRequest("Collection.AddToCollection");
-        // set collection to which we want to add
-        request.set("collection", collection);
+        addDocumentsToCollectionWithResult(collection, documentsToAdd).throwIfFailed();
+    }
 
-        // add documents
-        for (Document doc : documentsToAdd) {
-            request.setInput(doc);
+    /**
+     * Adds documents to a collection with one request per chunk of documents.
+     * Chunks are sent one after another, since each one modifies the collection.
+     * @param collection The Collection the {@link Document}s will be added
+     * @param documentsToAdd The {@link Document}s You want to add
+     * @return the added documents or the failure of each chunk of documents
+     * @throws Exception
+     */
+    public BatchResult<Documents> addDocumentsToCollectionWithResult(Document collection, Collection<Document> documentsToAdd) throws Exception {
+        return updateCollection("Collection.AddToCollection", collection, documentsToAdd);
+    }
+
+    /**
+     * Removes documents from a collection with one request per chunk of documents.
+     * @param collection The Collection the {@link Document}s will be removed from
+     * @param documentsToRemove The {@link Document}s You want to remove
+     * @return the removed documents or the failure of each chunk of documents
+     * @throws Exception
+     */
+    public BatchResult<Documents> removeDocumentsFromCollection(Document collection, Collection<Document> documentsToRemove) throws Exception {
+        return updateCollection("Collection.RemoveFromCollection", collection, documentsToRemove);
+    }
+
+    private BatchResult<Documents> updateCollection(final String operation, final Document collection, Collection<Document> documents) throws Exception {
+        final List<Documents> chunks = chunk(documents);
+        final BatchResult<Documents> result = new BatchResult<Documents>(chunks.size());
+
+        for (int i = 0; i < chunks.size(); ++i) {
+            try {
+                // the collection is passed by reference
+                result.setResult(i, toDocuments(execute(newRequest(operation)
+                    .set("collection", collection.getId()).setInput(chunks.get(i)))));
+            } catch (IOException | RuntimeException e) {
+                result.setFailure(i, e);
+            }
+
+            // membership is stored in the members as well
+            for (Document doc : chunks.get(i)) {
+                invalidate(doc);
+            }
+        }
+        invalidate(collection);
+
+        return result;
+    }
+
+    /**
+     * Moves documents to another folder with one request per chunk of documents,
+     * chunks are sent concurrently.
+     * @param documentsToMove The {@link Document}s You want to move
+     * @param target Where You want to move them to
+     * @return the moved documents or the failure of each chunk of documents
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public BatchResult<Documents> moveDocuments(Collection<Document> documentsToMove, final Document target) throws InterruptedException {
+        final List<Documents> chunks = chunk(documentsToMove);
+        final List<Callable<Documents>> tasks = new ArrayList<Callable<Documents>>(chunks.size());
+
+        for (final Documents chunk : chunks) {
+            tasks.add(new Callable<Documents>() {
+                @Override
+                public Documents call() throws Exception {
+                    return toDocuments(execute(newRequest("Document.Move")
+                        .setInput(chunk).set("target", target.getId())));
+                }
+            });
+        }
+
+        final BatchResult<Documents> result = runBatch(tasks);
+
+        for (Documents chunk : chunks) {
+            for (Document doc : chunk) {
+                invalidate(doc);
+            }
+        }
+        invalidateACLs();
+
+        return result;
+    }
+
+    /**
+     * @param documents documents to split
+     * @return the documents in chunks of the configured batch size
+     */
+    private List<Documents> chunk(Collection<Document> documents) {
+        final List<Documents> chunks = new ArrayList<Documents>();
+        Documents chunk = null;
+
+        for (Document doc : documents) {
+            if (chunk == null || chunk.size() == fBatchSize) {
+                chunk = new Documents();
+                chunks.add(chunk);
+            }
+            chunk.add(doc);
         }
 
-        request.execute();
+        return chunks;
+    }
+
+    /**
+     * @param result result of an operation on documents
+     * @return the result as list, single documents are wrapped
+     */
+    private static Documents toDocuments(Object result) {
+        if (result instanceof Document) {
+            Documents docs = new Documents();
+            docs.add((Document) result);
+            return docs;
+        }
+        return (Documents) result;
     }
 
     /**
@@ -950,13 +2292,16 @@ public class NuxeoUtility implements Runnable
      */
     public Document moveDocument(Document documentToMove, Document target) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.Move");
+        NuxeoRequest request = newRequest("Document.Move");
         // set doc
         request.setInput(documentToMove);
         // set target
         request.set("target", target.getId());
 
-        Document document = (Document) request.execute();
+        Document document = (Document) execute(request);
+        invalidate(documentToMove);
+        invalidateACLs();
+
         return document;
     }
 
@@ -970,8 +2315,32 @@ public class NuxeoUtility implements Runnable
      * @throws Exception
      */
     public Blob renderDocument(final Document documentToRender, final String template, final String filename, final String mimetype, final String type) throws Exception {
+        // cache renderings per document version and parameters
+        final Date modified = documentToRender.getLastModified();
+        if (fBlobs == null || modified == null) {
+            return (Blob) execute(newRenderRequest(documentToRender, template, filename, mimetype, type));
+        }
+
+        // the request is only built and sent if the rendering is not cached yet
+        final String key = "render:" + documentToRender.getId() + "@" + modified.getTime() + ":" + template + ":"
+            + filename + ":" + mimetype + ":" + type;
+        return fBlobs.get(key, null, null, new BlobCache.Loader() {
+            @Override
+            public Blob load(Path target) throws Exception {
+                Blob blob = (Blob) execute(newRenderRequest(documentToRender, template, filename, mimetype, type));
+                try (InputStream in = blob.getStream();
+                        FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel.truncate(channel.transferFrom(Channels.newChannel(in), 0, Long.MAX_VALUE));
+                }
+                return blob;
+            }
+        });
+    }
+
+    private static NuxeoRequest newRenderRequest(Document documentToRender, String template, String filename, String mimetype, String type) {
         // request
-        OperationRequest request = getSession().newRequest("Render.Document");
+        final NuxeoRequest request = newRequest("Render.Document");
         // set doc
         request.setInput(documentToRender);
         // set params
@@ -980,9 +2349,7 @@ public class NuxeoUtility implements Runnable
         request.set("mimetype", mimetype);
         request.set("type", type);
 
-        Blob blob = (Blob) request.execute();
-        return blob;
-
+        return request;
     }
 
     /**
@@ -991,19 +2358,19 @@ public class NuxeoUtility implements Runnable
      */
     public void addCurrentDocumentToWorklist(final Document document) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Seam.AddToWorklist");
+        NuxeoRequest request = newRequest("Seam.AddToWorklist");
         // set doc
         request.setInput(document);
 
         // execute
-        request.execute();
+        execute(request);
     }
 
     public List<Document> getDocumentsFromWorkList() throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Seam.FetchFromWorklist");
+        NuxeoRequest request = newRequest("Seam.FetchFromWorklist");
         // execute
-        Documents documents = (Documents) request.execute();
+        Documents documents = (Documents) execute(request);
         return documents.list();
     }
 
@@ -1018,7 +2385,7 @@ public class NuxeoUtility implements Runnable
      */
     public Document addPermissionToDocument(final Document document, final String permission, final String user, final String acl, final boolean blockInteritence) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.AddPermission");
+        NuxeoRequest request = newRequest("Document.AddPermission");
         request.setInput(document);
         request.set("permission", permission);
         request.set("username", user);
@@ -1027,7 +2394,10 @@ public class NuxeoUtility implements Runnable
         request.set("acl", acl);
 
         // execute
-        Document documentRet = (Document) request.execute();
+        Document documentRet = (Document) execute(request);
+        invalidate(document);
+        invalidateACLs();
+
         return documentRet;
     }
 
@@ -1040,12 +2410,15 @@ public class NuxeoUtility implements Runnable
      */
     public Document removePermissionFromDocument(final Document document, final String user, final String acl) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.RemovePermission");
+        NuxeoRequest request = newRequest("Document.RemovePermission");
         request.setInput(document);
         request.set("user", user);
         request.set("acl", acl);
         // execute
-        Document documentRet = (Document) request.execute();
+        Document documentRet = (Document) execute(request);
+        invalidate(document);
+        invalidateACLs();
+
         return documentRet;
     }
 
@@ -1056,9 +2429,8 @@ public class NuxeoUtility implements Runnable
      */
     public void getPermissionForADocument(final Document documentToCheck) throws Exception {
 
-        PaginableDocuments docs = (PaginableDocuments) getSession().newRequest("Document.Query")
-.setHeader(Constants.HEADER_NX_SCHEMAS, "*")
-                .set("query", "SELECT * FROM Document " /* + "WHERE docID = '" + documentToCheck.getId() + "'" */).execute();
+        PaginableDocuments docs = (PaginableDocuments) execute(project(newRequest("Document.Query"), SCHEMAS_ALL)
+                .set("query", "SELECT * FROM Document " /* + "WHERE docID = '" + documentToCheck.getId() + "'" */));
 
         LOG.debug(docs + "");
         for (Document doc : docs.list()) {
@@ -1074,7 +2446,7 @@ public class NuxeoUtility implements Runnable
      */
     public Blob queryUsers(final String pattern, final String tenantId) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Services.QueryUsers");
+        NuxeoRequest request = newRequest("Services.QueryUsers");
         if (pattern != null) {
             request.set("pattern", pattern);
         }
@@ -1082,7 +2454,7 @@ public class NuxeoUtility implements Runnable
             request.set("tenantId", tenantId);
         }
         // execute
-        Blob blob = (Blob) request.execute();
+        Blob blob = (Blob) execute(request);
         return blob;
     }
 
@@ -1096,12 +2468,12 @@ public class NuxeoUtility implements Runnable
      */
     public Document publishDocumentToSection(final Document documentToPublish, final Document targetSection, final boolean override) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.Publish");
+        NuxeoRequest request = newRequest("Document.Publish");
         // set params
         request.setInput(documentToPublish);
         request.set("target", targetSection.getId());
 
-        Document doc = (Document) request.execute();
+        Document doc = (Document) execute(request);
         return doc;
     }
 
@@ -1125,10 +2497,10 @@ public class NuxeoUtility implements Runnable
      */
     public List<Document> getChildrenOfDocument(final Document parentDocument) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.GetChildren");
+        NuxeoRequest request = newRequest("Document.GetChildren");
         // set params
         request.setInput(parentDocument);
-        Documents docs = (Documents) request.execute();
+        Documents docs = (Documents) execute(request);
         return docs.list();
     }
     /**
@@ -1146,7 +2518,7 @@ public class NuxeoUtility implements Runnable
             final boolean prefixIdentifiers,
  final boolean resolveGroups) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Context.GetUsersGroupIdsWithPermissionOnDoc");
+        NuxeoRequest request = newRequest("Context.GetUsersGroupIdsWithPermissionOnDoc");
         // set params
         request.setInput(document);
         request.set("permission", permission);
@@ -1155,8 +2527,8 @@ public class NuxeoUtility implements Runnable
         request.set("prefix identifiers", prefixIdentifiers);
         request.set("resolve groups", resolveGroups);
 
-        Document doc = (Document) request.execute();
-        LOG.debug("" + request.getContextParameters());
+        Document doc = (Document) execute(request);
+        LOG.debug("" + request.getParameters());
 
         return doc;
     }
@@ -1168,11 +2540,13 @@ public class NuxeoUtility implements Runnable
      */
     public Document approveDocument(final Document document) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("ApproveDocument");
+        NuxeoRequest request = newRequest("ApproveDocument");
         // set params
         request.setInput(document);
 
-        Document doc = (Document) request.execute();
+        Document doc = (Document) execute(request);
+        invalidate(document);
+
         return doc;
     }
 
@@ -1184,21 +2558,23 @@ public class NuxeoUtility implements Runnable
      */
     public Document tagDocument(final Document document, String tags) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Services.TagDocument");
+        NuxeoRequest request = newRequest("Services.TagDocument");
         // set params
         request.setInput(document);
         request.set("tags", tags);
 
-        Document doc = (Document) request.execute();
+        Document doc = (Document) execute(request);
+        invalidate(document);
+
         return doc;
     }
 
     public void resumeWorkflow(final String workflowId) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Workflow.ResumeNodeOperation");
+        NuxeoRequest request = newRequest("Workflow.ResumeNodeOperation");
         // set params
         request.set("workflowInstanceId", workflowId);
-        request.execute();
+        execute(request);
     }
     // public void cancelWorkflow(final String workflowId) throws Exception {
     // // request
@@ -1210,14 +2586,14 @@ public class NuxeoUtility implements Runnable
 
     public Document startWorkflow(final Document document, final String workflowId, final boolean start, final Properties properties) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Context.StartWorkflow");
+        NuxeoRequest request = newRequest("Context.StartWorkflow");
         // set params
         request.setInput(document);
         request.set("id", workflowId);
         request.set("start", start);
         request.set("variables", properties);
         // exec + return
-        Document doc = (Document) request.execute();
+        Document doc = (Document) execute(request);
         return doc;
     }
 
@@ -1228,11 +2604,11 @@ public class NuxeoUtility implements Runnable
      */
     public List<Document> getDocumentVersions(final Document document) throws Exception {
         // request
-        OperationRequest request = getSession().newRequest("Document.GetVersions");
+        NuxeoRequest request = newRequest("Document.GetVersions");
         // set params
         request.setInput(document);
         // exec + return
-        List<Document> docs = ((Documents) request.execute()).list();
+        List<Document> docs = ((Documents) execute(request)).list();
         return docs;
     }
     public Document createFolder(final String name, final String parentId) throws Exception {
@@ -1240,7 +2616,8 @@ public class NuxeoUtility implements Runnable
         Properties properties = new Properties();
         properties.setProperty("dc:title", name);
         // properties.setProperty("dc:description", "some Description");
-        Document doc = createDocument(getDocument(parentId), "Folder", properties);
+        //the parent is only referenced, there is no need to read it
+        Document doc = createDocument(new DocRef(parentId), name, "Folder", properties);
         // exec + return
         return doc;
     }
@@ -1253,14 +2630,16 @@ public class NuxeoUtility implements Runnable
      */
     public Document createVersion(Document document, String increment, boolean saveDocument) throws IOException {
         // request
-        OperationRequest request = getSession().newRequest("Document.CreateVersion");
+        NuxeoRequest request = newRequest("Document.CreateVersion");
         // set params
         request.setInput(document);
         request.set("increment", increment);
         request.set("saveDocument", saveDocument);
 
         // exec + return
-        Document doc = ((Document) request.execute());
+        Document doc = ((Document) execute(request));
+        invalidate(document);
+
         return doc;
 
     }
@@ -0,0 +1,222 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable NXQL query template with "?" placeholders, which are replaced
+ * by escaped literals when binding parameters. Templates are parsed once
+ * and shared, so binding only concatenates the prepared fragments.
+ * Question marks inside quoted literals of the template are kept as is.
+ */
+public final class NxqlQuery
+{
+    private static final int MAX_CACHED = 256;
+
+    private static final ConcurrentMap<String, NxqlQuery> TEMPLATES =
+        new ConcurrentHashMap<String, NxqlQuery>();
+
+    private final String fTemplate;
+    private final List<String> fFragments;
+
+    private NxqlQuery(String template)
+    {
+        fTemplate = template;
+        fFragments = Collections.unmodifiableList(parse(template));
+    }
+
+    /**
+     * @param template NXQL with "?" as placeholders for parameters
+     * @return the parsed template, shared with previous callers
+     */
+    public static NxqlQuery of(String template)
+    {
+        NxqlQuery query = TEMPLATES.get(template);
+
+        if(query == null)
+        {
+            query = new NxqlQuery(template);
+
+            //templates are meant to be constants, do not grow without bounds
+            if(TEMPLATES.size() < MAX_CACHED)
+            {
+                NxqlQuery previous = TEMPLATES.putIfAbsent(template, query);
+                if(previous != null)
+                {
+                    query = previous;
+                }
+            }
+        }
+
+        return query;
+    }
+
+    private static List<String> parse(String template)
+    {
+        final List<String> fragments = new ArrayList<String>();
+        final StringBuilder fragment = new StringBuilder();
+        char quote = 0;
+
+        for(int i = 0; i < template.length(); ++i)
+        {
+            char c = template.charAt(i);
+
+            if(quote != 0)
+            {
+                fragment.append(c);
+                if(c == '\\' && i + 1 < template.length())
+                {
+                    fragment.append(template.charAt(++i));
+                }
+                else if(c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if(c == '\'' || c == '"')
+            {
+                quote = c;
+                fragment.append(c);
+            }
+            else if(c == '?')
+            {
+                fragments.add(fragment.toString());
+                fragment.setLength(0);
+            }
+            else
+            {
+                fragment.append(c);
+            }
+        }
+        fragments.add(fragment.toString());
+
+        return fragments;
+    }
+
+    /**
+     * @return number of placeholders in the template
+     */
+    public int getParameterCount()
+    {
+        return fFragments.size() - 1;
+    }
+
+    /**
+     * Replaces the placeholders by literals: strings are quoted and
+     * escaped, dates become UTC timestamps, booleans 1 or 0 and collections
+     * parenthesized lists for IN clauses.
+     * @param params one value per placeholder
+     * @return the resulting NXQL
+     * @throws IllegalArgumentException if the number of values does not
+     *  match or a value is null or an empty collection
+     */
+    public String bind(Object... params)
+    {
+        if(params.length != getParameterCount())
+        {
+            throw new IllegalArgumentException("expected " + getParameterCount()
+                + " parameters, got " + params.length + " for: " + fTemplate);
+        }
+
+        final StringBuilder nxql = new StringBuilder(fTemplate.length() + 16 * params.length);
+
+        nxql.append(fFragments.get(0));
+        for(int i = 0; i < params.length; ++i)
+        {
+            appendLiteral(nxql, params[i]);
+            nxql.append(fFragments.get(i + 1));
+        }
+
+        return nxql.toString();
+    }
+
+    private static void appendLiteral(StringBuilder nxql, Object value)
+    {
+        if(value == null)
+        {
+            throw new IllegalArgumentException("NXQL parameters must not be null");
+        }
+        else if(value instanceof Collection)
+        {
+            final Collection<?> values = (Collection<?>) value;
+            if(values.isEmpty())
+            {
+                throw new IllegalArgumentException("NXQL lists must not be empty");
+            }
+
+            nxql.append('(');
+            boolean first = true;
+            for(Object element : values)
+            {
+                if(!first)
+                {
+                    nxql.append(", ");
+                }
+                appendLiteral(nxql, element);
+                first = false;
+            }
+            nxql.append(')');
+        }
+        else if(value instanceof Number)
+        {
+            nxql.append(value);
+        }
+        else if(value instanceof Boolean)
+        {
+            nxql.append((Boolean) value ? 1 : 0);
+        }
+        else if(value instanceof Calendar)
+        {
+            appendLiteral(nxql, ((Calendar) value).getTime());
+        }
+        else if(value instanceof Date)
+        {
+            //not shared, SimpleDateFormat is not thread-safe
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+            nxql.append("TIMESTAMP '").append(format.format((Date) value)).append('\'');
+        }
+        else
+        {
+            nxql.append(escape(value.toString()));
+        }
+    }
+
+    /**
+     * @param value string to use in NXQL
+     * @return the value as quoted and escaped NXQL string literal
+     */
+    public static String escape(String value)
+    {
+        final StringBuilder literal = new StringBuilder(value.length() + 2);
+
+        literal.append('\'');
+        for(int i = 0; i < value.length(); ++i)
+        {
+            char c = value.charAt(i);
+            if(c == '\'' || c == '\\')
+            {
+                literal.append('\\');
+            }
+            literal.append(c);
+        }
+        literal.append('\'');
+
+        return literal.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return fTemplate;
+    }
+}
@@ -0,0 +1,13 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+/**
+ * Receives the progress of a blob transfer.
+ */
+public interface ProgressListener
+{
+    /**
+     * @param transferred bytes transferred so far, including resumed ones
+     * @param total total number of bytes or -1 if unknown
+     */
+    void progress(long transferred, long total);
+}
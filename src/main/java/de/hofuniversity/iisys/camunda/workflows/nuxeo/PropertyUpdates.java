@@ -0,0 +1,147 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+/**
+ * Helpers for converting and diffing property changes sent by
+ * {@link NuxeoUtility#updateDocuments(Map)}.
+ */
+final class PropertyUpdates
+{
+    private PropertyUpdates()
+    {
+    }
+
+    /**
+     * Converts property values to the string encoding used by automation's
+     * "properties" parameters: dates in ISO 8601, lists comma separated.
+     * @param delta changed properties
+     * @return the properties as strings, sorted by name
+     */
+    static Map<String, String> toStrings(Map<String, ?> delta)
+    {
+        final Map<String, String> strings = new TreeMap<String, String>();
+
+        for(Entry<String, ?> entry : delta.entrySet())
+        {
+            strings.put(entry.getKey(), toString(entry.getValue()));
+        }
+
+        return strings;
+    }
+
+    private static String toString(Object value)
+    {
+        if(value == null)
+        {
+            return "";
+        }
+        else if(value instanceof Calendar)
+        {
+            return toString(((Calendar) value).getTime());
+        }
+        else if(value instanceof Date)
+        {
+            //not shared, SimpleDateFormat is not thread-safe
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format.format((Date) value);
+        }
+        else if(value instanceof Collection)
+        {
+            final StringBuilder list = new StringBuilder();
+            for(Object element : (Collection<?>) value)
+            {
+                if(list.length() > 0)
+                {
+                    list.append(',');
+                }
+                list.append(toString(element));
+            }
+            return list.toString();
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Copies the properties of a document as read, so that later changes
+     * to the document do not affect the diff.
+     * @param properties properties of a document
+     * @return the properties as strings
+     */
+    static Map<String, String> snapshot(PropertyMap properties)
+    {
+        final Map<String, String> snapshot = new HashMap<String, String>();
+
+        if(properties != null)
+        {
+            for(String key : properties.getKeys())
+            {
+                Object value = properties.get(key);
+                snapshot.put(key, value != null ? value.toString() : "");
+            }
+        }
+
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Removes all properties which already have the given value.
+     * @param delta changed properties as strings
+     * @param current snapshot of the current properties, null if unknown
+     * @return the properties which actually change
+     */
+    static Map<String, String> diff(Map<String, String> delta, Map<String, String> current)
+    {
+        if(current == null)
+        {
+            return delta;
+        }
+
+        final Map<String, String> changed = new TreeMap<String, String>();
+
+        for(Entry<String, String> entry : delta.entrySet())
+        {
+            String currentValue = current.get(entry.getKey());
+            if(currentValue == null)
+            {
+                currentValue = "";
+            }
+
+            if(!currentValue.equals(entry.getValue()))
+            {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * @param properties properties as strings
+     * @return the properties as automation parameter
+     */
+    static PropertyMap toPropertyMap(Map<String, String> properties)
+    {
+        final PropertyMap map = new PropertyMap();
+
+        for(Entry<String, String> entry : properties.entrySet())
+        {
+            map.set(entry.getKey(), entry.getValue());
+        }
+
+        return map;
+    }
+}
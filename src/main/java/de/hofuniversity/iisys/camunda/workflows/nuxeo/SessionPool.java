@@ -0,0 +1,522 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.nuxeo.ecm.automation.client.AutomationClient;
+import org.nuxeo.ecm.automation.client.Session;
+import org.nuxeo.ecm.automation.client.jaxrs.impl.HttpAutomationClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe pool of authenticated Nuxeo automation sessions.
+ * Sessions are borrowed for a single request and released afterwards, idle
+ * sessions exceeding the minimum pool size are closed by one reaper thread
+ * shared by all pools.
+ * Optionally asks for gzip or deflate compressed automation responses.
+ */
+public class SessionPool
+{
+    private static final transient Logger LOG = LoggerFactory.getLogger(SessionPool.class);
+
+    private static final ScheduledExecutorService REAPER =
+        Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory("nuxeo-session-reaper"));
+
+    private final String fUrl, fUser, fPassword;
+
+    private final int fMinSize, fMaxSize;
+    private final long fIdleTimeout, fBorrowTimeout;
+
+    private final boolean fCompression;
+    private final TransferStats fStats;
+
+    private final LinkedList<PooledSession> fIdle;
+    private final Map<Session, PooledSession> fBorrowed;
+
+    private final ScheduledFuture<?> fReaperTask;
+
+    private final Object fSharedLock = new Object();
+    private PooledSession fShared;
+
+    private int fOpen = 0;
+    private boolean fClosed = false;
+
+    /**
+     * @param url automation URL of the Nuxeo instance
+     * @param user user to authenticate with
+     * @param password password of the user
+     * @param minSize number of sessions kept open even when idle
+     * @param maxSize maximum number of concurrently open sessions
+     * @param idleTimeout milliseconds after which an unused session is closed
+     * @param borrowTimeout milliseconds to wait for a session if the pool is exhausted
+     */
+    public SessionPool(String url, String user, String password, int minSize,
+        int maxSize, long idleTimeout, long borrowTimeout)
+    {
+        this(url, user, password, minSize, maxSize, idleTimeout, borrowTimeout, false);
+    }
+
+    /**
+     * @param url automation URL of the Nuxeo instance
+     * @param user user to authenticate with
+     * @param password password of the user
+     * @param minSize number of sessions kept open even when idle
+     * @param maxSize maximum number of concurrently open sessions
+     * @param idleTimeout milliseconds after which an unused session is closed
+     * @param borrowTimeout milliseconds to wait for a session if the pool is exhausted
+     * @param compression whether to ask for compressed responses
+     */
+    public SessionPool(String url, String user, String password, int minSize,
+        int maxSize, long idleTimeout, long borrowTimeout, boolean compression)
+    {
+        if(minSize < 0 || maxSize < 1 || minSize > maxSize)
+        {
+            throw new IllegalArgumentException("invalid pool size: min "
+                + minSize + ", max " + maxSize);
+        }
+
+        fUrl = url;
+        fUser = user;
+        fPassword = password;
+
+        fMinSize = minSize;
+        fMaxSize = maxSize;
+        fIdleTimeout = idleTimeout;
+        fBorrowTimeout = borrowTimeout;
+
+        fCompression = compression;
+        fStats = new TransferStats();
+
+        fIdle = new LinkedList<PooledSession>();
+        fBorrowed = new IdentityHashMap<Session, PooledSession>();
+
+        //check at least every few seconds, but not more often than needed
+        final long interval = Math.max(1000, Math.min(idleTimeout / 2, 60000));
+        fReaperTask = REAPER.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reap();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens sessions until the minimum pool size is reached.
+     * @throws IOException if a session could not be opened
+     */
+    public void warmUp() throws IOException
+    {
+        while(true)
+        {
+            synchronized(this)
+            {
+                if(fClosed || fOpen >= fMinSize)
+                {
+                    return;
+                }
+                ++fOpen;
+            }
+
+            PooledSession pooled = null;
+            try
+            {
+                pooled = open();
+            }
+            finally
+            {
+                synchronized(this)
+                {
+                    if(pooled != null)
+                    {
+                        fIdle.addLast(pooled);
+                    }
+                    else
+                    {
+                        //free the slot reserved above, otherwise a failed
+                        //warm-up permanently shrinks the pool
+                        --fOpen;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Borrows a session which has to be given back using
+     * {@link #release(Session)} once the request has been executed.
+     * @return an exclusively borrowed session
+     * @throws IOException if no session could be opened in time
+     */
+    public Session borrow() throws IOException
+    {
+        final long deadline = System.currentTimeMillis() + fBorrowTimeout;
+        PooledSession pooled = null;
+
+        synchronized(this)
+        {
+            while(pooled == null)
+            {
+                if(fClosed)
+                {
+                    throw new IOException("session pool has been shut down");
+                }
+
+                if(!fIdle.isEmpty())
+                {
+                    //most recently used first, so surplus sessions age out
+                    pooled = fIdle.removeFirst();
+                }
+                else if(fOpen < fMaxSize)
+                {
+                    //reserve a slot and connect outside of the lock
+                    ++fOpen;
+                    break;
+                }
+                else
+                {
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0)
+                    {
+                        throw new IOException("timed out waiting for a Nuxeo session");
+                    }
+
+                    try
+                    {
+                        wait(wait);
+                    }
+                    catch(InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("interrupted waiting for a Nuxeo session");
+                    }
+                }
+            }
+        }
+
+        if(pooled == null)
+        {
+            try
+            {
+                pooled = open();
+            }
+            catch(IOException | RuntimeException e)
+            {
+                synchronized(this)
+                {
+                    --fOpen;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+
+        synchronized(this)
+        {
+            fBorrowed.put(pooled.fSession, pooled);
+        }
+
+        return pooled.fSession;
+    }
+
+    /**
+     * Returns a session shared by all callers, which is opened on first use.
+     * It does not take a slot of the pool and is never given back, so
+     * requests on it are not limited by the pool size.
+     * @return the shared session
+     * @throws IOException if the session could not be opened
+     */
+    public Session getShared() throws IOException
+    {
+        synchronized(fSharedLock)
+        {
+            if(fShared == null)
+            {
+                synchronized(this)
+                {
+                    if(fClosed)
+                    {
+                        throw new IOException("session pool has been shut down");
+                    }
+                }
+                fShared = open();
+            }
+            return fShared.fSession;
+        }
+    }
+
+    /**
+     * Gives a borrowed session back to the pool.
+     * Sessions not borrowed from this pool are ignored.
+     * @param session session to give back
+     */
+    public void release(Session session)
+    {
+        PooledSession pooled = null;
+        boolean close = false;
+
+        synchronized(this)
+        {
+            pooled = fBorrowed.remove(session);
+            if(pooled == null)
+            {
+                return;
+            }
+
+            if(fClosed)
+            {
+                --fOpen;
+                close = true;
+            }
+            else
+            {
+                pooled.fLastUsed = System.currentTimeMillis();
+                fIdle.addFirst(pooled);
+            }
+            notifyAll();
+        }
+
+        if(close)
+        {
+            pooled.close();
+        }
+    }
+
+    /**
+     * @return number of currently open sessions, idle or borrowed
+     */
+    public synchronized int getOpenCount()
+    {
+        return fOpen;
+    }
+
+    /**
+     * @return number of currently idle sessions
+     */
+    public synchronized int getIdleCount()
+    {
+        return fIdle.size();
+    }
+
+    /**
+     * @return bytes received and decoded by the sessions of this pool
+     */
+    public TransferStats getStats()
+    {
+        return fStats;
+    }
+
+    private void reap()
+    {
+        final List<PooledSession> expired = new LinkedList<PooledSession>();
+        final long limit = System.currentTimeMillis() - fIdleTimeout;
+
+        synchronized(this)
+        {
+            //oldest sessions are at the end of the idle list
+            Iterator<PooledSession> iter = fIdle.descendingIterator();
+            while(iter.hasNext() && fOpen > fMinSize)
+            {
+                PooledSession pooled = iter.next();
+                if(pooled.fLastUsed < limit)
+                {
+                    iter.remove();
+                    --fOpen;
+                    expired.add(pooled);
+                }
+            }
+        }
+
+        for(PooledSession pooled : expired)
+        {
+            pooled.close();
+        }
+    }
+
+    private PooledSession open() throws IOException
+    {
+        return new PooledSession(openSession());
+    }
+
+    /**
+     * Opens a new session with its own client, tests replace it with fakes.
+     * @return the session
+     * @throws IOException if the session could not be opened
+     */
+    Session openSession() throws IOException
+    {
+        HttpAutomationClient client = new HttpAutomationClient(fUrl);
+        try
+        {
+            instrument(client.http());
+            return client.getSession(fUser, fPassword);
+        }
+        catch(Exception e)
+        {
+            client.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the received bytes before and after decompression and enables
+     * compression if configured. Response interceptors run in the order they
+     * were added, so the decompressing one sits between the counters.
+     * @param http HTTP client of an automation client
+     */
+    private void instrument(HttpClient http)
+    {
+        if(!(http instanceof AbstractHttpClient))
+        {
+            LOG.warn("can not configure HTTP client of type " + http);
+            return;
+        }
+
+        final AbstractHttpClient client = (AbstractHttpClient) http;
+
+        client.addResponseInterceptor(new CountingInterceptor(true));
+        if(fCompression)
+        {
+            client.addRequestInterceptor(new RequestAcceptEncoding());
+            client.addResponseInterceptor(new ResponseContentEncoding());
+        }
+        client.addResponseInterceptor(new CountingInterceptor(false));
+    }
+
+    /**
+     * Closes all idle sessions and the shared one, borrowed sessions are
+     * closed when released.
+     */
+    public void shutdown()
+    {
+        final List<PooledSession> idle;
+
+        synchronized(this)
+        {
+            fClosed = true;
+            fReaperTask.cancel(false);
+
+            idle = new LinkedList<PooledSession>(fIdle);
+            fOpen -= fIdle.size();
+            fIdle.clear();
+            notifyAll();
+        }
+
+        for(PooledSession pooled : idle)
+        {
+            pooled.close();
+        }
+
+        synchronized(fSharedLock)
+        {
+            if(fShared != null)
+            {
+                fShared.close();
+                fShared = null;
+            }
+        }
+    }
+
+    private class CountingInterceptor implements HttpResponseInterceptor
+    {
+        private final boolean fWire;
+
+        private CountingInterceptor(boolean wire)
+        {
+            fWire = wire;
+        }
+
+        @Override
+        public void process(HttpResponse response, HttpContext context)
+            throws HttpException, IOException
+        {
+            final HttpEntity entity = response.getEntity();
+            if(entity == null)
+            {
+                return;
+            }
+
+            String encoding = null;
+            if(entity.getContentEncoding() != null)
+            {
+                encoding = entity.getContentEncoding().getValue();
+            }
+            final boolean compressed = "gzip".equalsIgnoreCase(encoding)
+                || "deflate".equalsIgnoreCase(encoding);
+
+            response.setEntity(new HttpEntityWrapper(entity)
+            {
+                private InputStream fContent;
+
+                @Override
+                public InputStream getContent() throws IOException
+                {
+                    //streamed entities return the same stream every time
+                    if(fContent == null)
+                    {
+                        fContent = fWire
+                            ? fStats.countWire(super.getContent(), compressed)
+                            : fStats.countDecoded(super.getContent());
+                    }
+                    return fContent;
+                }
+            });
+        }
+    }
+
+    private static class PooledSession
+    {
+        private final Session fSession;
+
+        private long fLastUsed;
+
+        private PooledSession(Session session)
+        {
+            fSession = session;
+            fLastUsed = System.currentTimeMillis();
+        }
+
+        private void close()
+        {
+            try
+            {
+                fSession.close();
+            }
+            catch(RuntimeException e)
+            {
+                LOG.warn("failed to close Nuxeo session", e);
+            }
+
+            //each session has its own client and connection manager
+            final AutomationClient client = fSession.getClient();
+            if(client != null)
+            {
+                client.shutdown();
+            }
+        }
+    }
+}
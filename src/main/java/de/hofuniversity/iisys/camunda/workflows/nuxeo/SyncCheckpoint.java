@@ -0,0 +1,150 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Immutable high-water mark of a {@link ChangeSync}: the modification time
+ * and ID of the last document processed, in the order documents are
+ * synchronized.
+ */
+public final class SyncCheckpoint
+{
+    /** Checkpoint before all documents. */
+    public static final SyncCheckpoint START = new SyncCheckpoint(0, "");
+
+    private static final String TIMESTAMP = "timestamp";
+    private static final String ID = "id";
+
+    private final long fTimestamp;
+    private final String fId;
+
+    /**
+     * @param timestamp modification time of the last document in milliseconds
+     * @param id ID of the last document
+     */
+    public SyncCheckpoint(long timestamp, String id)
+    {
+        if(id == null)
+        {
+            throw new IllegalArgumentException("checkpoint ID must not be null");
+        }
+
+        fTimestamp = timestamp;
+        fId = id;
+    }
+
+    /**
+     * @param file file to read
+     * @return the saved checkpoint or {@link #START} if there is none
+     * @throws IOException if the file could not be read or is invalid
+     */
+    public static SyncCheckpoint load(Path file) throws IOException
+    {
+        if(!Files.exists(file))
+        {
+            return START;
+        }
+
+        final Properties props = new Properties();
+        try(InputStream in = Files.newInputStream(file))
+        {
+            props.load(in);
+        }
+
+        try
+        {
+            return new SyncCheckpoint(Long.parseLong(props.getProperty(TIMESTAMP)),
+                props.getProperty(ID, ""));
+        }
+        catch(NumberFormatException e)
+        {
+            throw new IOException("invalid checkpoint in " + file, e);
+        }
+    }
+
+    /**
+     * Replaces the file atomically, so a crash leaves the previous
+     * checkpoint intact.
+     * @param file file to write
+     * @throws IOException if the file could not be written
+     */
+    public void save(Path file) throws IOException
+    {
+        final Properties props = new Properties();
+        props.setProperty(TIMESTAMP, Long.toString(fTimestamp));
+        props.setProperty(ID, fId);
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(OutputStream out = Files.newOutputStream(temp))
+        {
+            props.store(out, "Nuxeo change sync checkpoint");
+        }
+
+        try
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(AtomicMoveNotSupportedException e)
+        {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return modification time of the last document in milliseconds
+     */
+    public long getTimestamp()
+    {
+        return fTimestamp;
+    }
+
+    /**
+     * @return ID of the last document, empty at the start
+     */
+    public String getId()
+    {
+        return fId;
+    }
+
+    /**
+     * @param timestamp modification time of a document
+     * @param id ID of the document
+     * @return whether the document comes after this checkpoint
+     */
+    public boolean isBefore(long timestamp, String id)
+    {
+        return fTimestamp < timestamp || (fTimestamp == timestamp && fId.compareTo(id) < 0);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if(!(obj instanceof SyncCheckpoint))
+        {
+            return false;
+        }
+
+        final SyncCheckpoint other = (SyncCheckpoint) obj;
+        return fTimestamp == other.fTimestamp && fId.equals(other.fId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (fTimestamp ^ (fTimestamp >>> 32)) * 31 + fId.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return fTimestamp + "/" + fId;
+    }
+}
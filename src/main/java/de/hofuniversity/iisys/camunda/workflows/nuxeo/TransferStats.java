@@ -0,0 +1,154 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters for response bodies, comparing the bytes received
+ * over the network with the bytes after decompression.
+ */
+public class TransferStats
+{
+    private final AtomicLong fResponses, fCompressed;
+    private final AtomicLong fWireBytes, fDecodedBytes;
+
+    public TransferStats()
+    {
+        fResponses = new AtomicLong();
+        fCompressed = new AtomicLong();
+        fWireBytes = new AtomicLong();
+        fDecodedBytes = new AtomicLong();
+    }
+
+    /**
+     * Counts a response and wraps its body as received from the network.
+     * @param in response body before decompression
+     * @param compressed whether the body is compressed
+     * @return stream counting the bytes read
+     */
+    public InputStream countWire(InputStream in, boolean compressed)
+    {
+        fResponses.incrementAndGet();
+        if(compressed)
+        {
+            fCompressed.incrementAndGet();
+        }
+
+        return new CountingInputStream(in, fWireBytes);
+    }
+
+    /**
+     * @param in response body after decompression
+     * @return stream counting the bytes read
+     */
+    public InputStream countDecoded(InputStream in)
+    {
+        return new CountingInputStream(in, fDecodedBytes);
+    }
+
+    /**
+     * @return number of counted responses
+     */
+    public long getResponses()
+    {
+        return fResponses.get();
+    }
+
+    /**
+     * @return number of counted responses which were compressed
+     */
+    public long getCompressedResponses()
+    {
+        return fCompressed.get();
+    }
+
+    /**
+     * @return bytes received over the network
+     */
+    public long getWireBytes()
+    {
+        return fWireBytes.get();
+    }
+
+    /**
+     * @return bytes after decompression
+     */
+    public long getDecodedBytes()
+    {
+        return fDecodedBytes.get();
+    }
+
+    /**
+     * @return bytes saved by compression
+     */
+    public long getSavedBytes()
+    {
+        return getDecodedBytes() - getWireBytes();
+    }
+
+    public void reset()
+    {
+        fResponses.set(0);
+        fCompressed.set(0);
+        fWireBytes.set(0);
+        fDecodedBytes.set(0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransferStats[responses=" + getResponses() + ", compressed="
+            + getCompressedResponses() + ", wireBytes=" + getWireBytes()
+            + ", decodedBytes=" + getDecodedBytes() + "]";
+    }
+
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private final AtomicLong fCounter;
+
+        private CountingInputStream(InputStream in, AtomicLong counter)
+        {
+            super(in);
+            fCounter = counter;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if(b >= 0)
+            {
+                fCounter.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int count = super.read(b, off, len);
+            if(count > 0)
+            {
+                fCounter.addAndGet(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            fCounter.addAndGet(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            //reset would count bytes twice
+            return false;
+        }
+    }
+}
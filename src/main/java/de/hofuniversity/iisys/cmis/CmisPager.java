@@ -0,0 +1,182 @@
+package de.hofuniversity.iisys.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+
+/**
+ * Iterates over CMIS query results page by page, loading the next page in the background while the current one is
+ * consumed. At most two pages are held in memory at any time.
+ * @param <T> type of the results, e.g. QueryResult or CmisObject
+ */
+public class CmisPager<T> implements Iterator<T> {
+    /**
+     * Runs the query from a given position.
+     * @param <T> type of the results
+     */
+    interface PageLoader<T> {
+        /**
+         * @param skipCount number of results to skip
+         * @return results from the position on, only the first page is read
+         */
+        ItemIterable<T> load(long skipCount);
+    }
+
+    private final PageLoader<T> loader;
+    private final int pageSize;
+    private final ExecutorService executor;
+
+    private Iterator<T> current;
+    private long position;
+    private boolean lastPage;
+
+    private PageTask next;
+
+    CmisPager(final PageLoader<T> loader, final int pageSize, final ExecutorService executor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("invalid page size: " + pageSize);
+        }
+
+        this.loader = loader;
+        this.pageSize = pageSize;
+        this.executor = executor;
+
+        current = Collections.<T> emptyList().iterator();
+        position = 0;
+        lastPage = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !lastPage) {
+            Page<T> page = nextPage();
+            current = page.items.iterator();
+
+            // a short page is the last one, even if the repository does not tell
+            lastPage = !page.more || page.items.size() < pageSize;
+            if (!lastPage) {
+                prefetch();
+            }
+        }
+
+        return current.hasNext();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Drops a page that is still being prefetched.
+     */
+    public void close() {
+        if (next != null) {
+            next.claimed.set(true);
+            next = null;
+        }
+        lastPage = true;
+    }
+
+    private void prefetch() {
+        final PageTask task = new PageTask(position);
+
+        try {
+            task.future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            // loaded synchronously once needed
+        }
+
+        next = task;
+    }
+
+    private Page<T> nextPage() {
+        PageTask task = next;
+        next = null;
+
+        final long skipCount = position;
+        position += pageSize;
+
+        // load inline unless the background task has already started,
+        // so a saturated executor can not block the iteration
+        if (task == null || task.claimed.compareAndSet(false, true)) {
+            return load(skipCount);
+        }
+
+        try {
+            return task.future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CmisRuntimeException("could not load page at " + skipCount, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CmisRuntimeException("interrupted while loading page at " + skipCount, e);
+        }
+    }
+
+    private Page<T> load(final long skipCount) {
+        final ItemIterable<T> page = loader.load(skipCount).getPage();
+
+        // reads the page, so the background task does the round trip
+        final List<T> items = new ArrayList<T>(pageSize);
+        for (T item : page) {
+            items.add(item);
+        }
+
+        return new Page<T>(items, page.getHasMoreItems());
+    }
+
+    private static class Page<T> {
+        private final List<T> items;
+        private final boolean more;
+
+        private Page(final List<T> items, final boolean more) {
+            this.items = items;
+            this.more = more;
+        }
+    }
+
+    private class PageTask implements Callable<Page<T>> {
+        private final long skipCount;
+        private final AtomicBoolean claimed;
+
+        private Future<Page<T>> future;
+
+        private PageTask(final long skipCount) {
+            this.skipCount = skipCount;
+            this.claimed = new AtomicBoolean(false);
+        }
+
+        @Override
+        public Page<T> call() {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+
+            return load(skipCount);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package de.hofuniversity.iisys.cmis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.SessionFactory;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.DaemonThreadFactory;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.NuxeoConfig;
+
+/**
+ * Process-wide pool of CMIS sessions keyed by URL, user, repository and
+ * binding. OpenCMIS sessions are thread-safe, so all {@link OpenCMISClient}s
+ * with the same key share one session and its warmed object, path and type
+ * caches. Each session is created only once, concurrent requests for it wait
+ * for the first one. The pool also provides the threads prefetching query
+ * result pages.
+ */
+public class CmisSessionPool {
+    private static final transient Logger LOG = LoggerFactory.getLogger(CmisSessionPool.class);
+
+    /** Default number of cached objects, as in OpenCMIS. */
+    public static final int DEFAULT_CACHE_OBJECTS = 1000;
+    /** Default number of cached path to ID mappings, as in OpenCMIS. */
+    public static final int DEFAULT_CACHE_PATHS = 1000;
+    /** Default number of cached type definitions, as in OpenCMIS. */
+    public static final int DEFAULT_CACHE_TYPES = 100;
+    /** Default lifetime of cached objects and paths in milliseconds, as in OpenCMIS. */
+    public static final long DEFAULT_CACHE_TTL = 2 * 60 * 60 * 1000;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final int DEFAULT_READ_TIMEOUT = 60000;
+    private static final int DEFAULT_EXECUTOR_THREADS = 4;
+
+    /** Default number of bytes per appended chunk of large uploads. */
+    public static final long DEFAULT_UPLOAD_CHUNK_SIZE = 5 * 1024 * 1024;
+
+    private static CmisSessionPool instance;
+
+    private final SessionFactory factory;
+    private final Map<String, String> tuning;
+    private final ConcurrentMap<SessionKey, FutureTask<Session>> sessions;
+    private final ExecutorService executor;
+    private final long uploadChunkSize;
+
+    /**
+     * @return the shared pool, configured by the connector's properties
+     */
+    public static synchronized CmisSessionPool getInstance() {
+        if (instance == null) {
+            instance = new CmisSessionPool(SessionFactoryImpl.newInstance(), readConfig());
+        }
+        return instance;
+    }
+
+    private static Map<String, String> readConfig() {
+        try {
+            return NuxeoConfig.getInstance().getConfiguration();
+        } catch (RuntimeException e) {
+            LOG.warn("could not read " + NuxeoConfig.PROPERTIES + ", using defaults", e);
+            return new HashMap<String, String>();
+        }
+    }
+
+    /**
+     * @param factory factory creating new sessions
+     * @param config configuration containing the cmis.* cache and HTTP settings
+     */
+    public CmisSessionPool(final SessionFactory factory, final Map<String, String> config) {
+        this.factory = factory;
+        this.sessions = new ConcurrentHashMap<SessionKey, FutureTask<Session>>();
+
+        tuning = new HashMap<String, String>();
+        tuning.put(SessionParameter.CACHE_SIZE_OBJECTS,
+                String.valueOf(NuxeoConfig.getInt(config, NuxeoConfig.CMIS_CACHE_OBJECTS, DEFAULT_CACHE_OBJECTS)));
+        tuning.put(SessionParameter.CACHE_SIZE_PATHTOID,
+                String.valueOf(NuxeoConfig.getInt(config, NuxeoConfig.CMIS_CACHE_PATHS, DEFAULT_CACHE_PATHS)));
+        tuning.put(SessionParameter.CACHE_SIZE_TYPES,
+                String.valueOf(NuxeoConfig.getInt(config, NuxeoConfig.CMIS_CACHE_TYPES, DEFAULT_CACHE_TYPES)));
+
+        final String ttl = String.valueOf(NuxeoConfig.getLong(config, NuxeoConfig.CMIS_CACHE_TTL, DEFAULT_CACHE_TTL));
+        tuning.put(SessionParameter.CACHE_TTL_OBJECTS, ttl);
+        tuning.put(SessionParameter.CACHE_TTL_PATHTOID, ttl);
+
+        tuning.put(SessionParameter.CONNECT_TIMEOUT,
+                String.valueOf(NuxeoConfig.getInt(config, NuxeoConfig.CMIS_HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT)));
+        tuning.put(SessionParameter.READ_TIMEOUT,
+                String.valueOf(NuxeoConfig.getInt(config, NuxeoConfig.CMIS_HTTP_READ_TIMEOUT, DEFAULT_READ_TIMEOUT)));
+        tuning.put(SessionParameter.COMPRESSION,
+                String.valueOf(NuxeoConfig.getBoolean(config, NuxeoConfig.CMIS_HTTP_COMPRESSION, false)));
+
+        executor = Executors.newFixedThreadPool(
+                NuxeoConfig.getInt(config, NuxeoConfig.CMIS_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS),
+                new DaemonThreadFactory("cmis-worker"));
+
+        uploadChunkSize = NuxeoConfig.getLong(config, NuxeoConfig.CMIS_UPLOAD_CHUNK_SIZE, DEFAULT_UPLOAD_CHUNK_SIZE);
+        if (uploadChunkSize < 1) {
+            throw new IllegalArgumentException("invalid upload chunk size: " + uploadChunkSize);
+        }
+    }
+
+    /**
+     * Returns the pooled session for the given connection or creates it.
+     * @param url URL of the binding, e.g. .../atom/cmis for AtomPub or .../json/cmis for the browser binding,
+     *            or the class name of the service factory for the local binding
+     * @param user user name
+     * @param password password of the user, sessions are only shared with the same password
+     * @param repositoryId ID of the repository
+     * @param bindingType binding type, {@link BindingType#BROWSER}, {@link BindingType#ATOMPUB} or
+     *            {@link BindingType#LOCAL}
+     * @return the shared session
+     * @throws IllegalArgumentException if the binding type is not supported
+     */
+    public Session getSession(final String url, final String user, final String password, final String repositoryId,
+            final String bindingType) {
+        getBindingType(bindingType);
+        final SessionKey key = new SessionKey(url, user, password, repositoryId, bindingType);
+
+        FutureTask<Session> task = sessions.get(key);
+        if (task == null) {
+            final FutureTask<Session> created = new FutureTask<Session>(new Callable<Session>() {
+                @Override
+                public Session call() {
+                    LOG.debug("creating CMIS session " + key);
+                    return factory.createSession(getParameters(key));
+                }
+            });
+
+            task = sessions.putIfAbsent(key, created);
+            if (task == null) {
+                task = created;
+                task.run();
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CmisRuntimeException("interrupted while waiting for session " + key, e);
+        } catch (ExecutionException e) {
+            // retried by the next request
+            sessions.remove(key, task);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CmisRuntimeException("could not create session " + key, cause);
+        }
+    }
+
+    Map<String, String> getParameters(final SessionKey key) {
+        final Map<String, String> parameters = new HashMap<String, String>(tuning);
+        parameters.put(SessionParameter.BINDING_TYPE, key.bindingType);
+        switch (getBindingType(key.bindingType)) {
+        case ATOMPUB:
+            parameters.put(SessionParameter.ATOMPUB_URL, key.url);
+            break;
+        case BROWSER:
+            parameters.put(SessionParameter.BROWSER_URL, key.url);
+            // short property IDs instead of repeating the definitions
+            parameters.put(SessionParameter.BROWSER_SUCCINCT, "true");
+            break;
+        case LOCAL:
+            parameters.put(SessionParameter.LOCAL_FACTORY, key.url);
+            break;
+        default:
+            throw new IllegalStateException("unsupported binding " + key.bindingType);
+        }
+        parameters.put(SessionParameter.REPOSITORY_ID, key.repositoryId);
+        parameters.put(SessionParameter.USER, key.user);
+        parameters.put(SessionParameter.PASSWORD, key.password);
+        return parameters;
+    }
+
+    /**
+     * @param bindingType value of a binding type
+     * @return the binding type, if supported
+     * @throws IllegalArgumentException if the binding type is unknown or not supported
+     */
+    static BindingType getBindingType(final String bindingType) {
+        if (bindingType == null) {
+            throw new IllegalArgumentException("binding type must not be null");
+        }
+
+        final BindingType type = BindingType.fromValue(bindingType);
+        if (type != BindingType.ATOMPUB && type != BindingType.BROWSER && type != BindingType.LOCAL) {
+            // web services need an endpoint per CMIS service, custom bindings their SPI class
+            throw new IllegalArgumentException("unsupported binding " + bindingType
+                    + ", use " + BindingType.BROWSER.value() + " or " + BindingType.ATOMPUB.value());
+        }
+        return type;
+    }
+
+    /**
+     * Removes the session of a connection, e.g. after its credentials changed.
+     * Clients still using it are not affected.
+     */
+    public void invalidate(final String url, final String user, final String password, final String repositoryId,
+            final String bindingType) {
+        sessions.remove(new SessionKey(url, user, password, repositoryId, bindingType));
+    }
+
+    /**
+     * Removes all sessions.
+     */
+    public void clear() {
+        sessions.clear();
+    }
+
+    /**
+     * @return shared executor for background work like prefetching result pages
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return number of bytes per appended chunk of large uploads
+     */
+    public long getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+
+    /**
+     * @return number of pooled sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    static final class SessionKey {
+        private final String url, user, password, repositoryId, bindingType;
+
+        SessionKey(final String url, final String user, final String password, final String repositoryId,
+                final String bindingType) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.repositoryId = repositoryId;
+            this.bindingType = bindingType;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof SessionKey)) {
+                return false;
+            }
+            final SessionKey other = (SessionKey) obj;
+            return equal(url, other.url) && equal(user, other.user) && equal(password, other.password)
+                    && equal(repositoryId, other.repositoryId) && equal(bindingType, other.bindingType);
+        }
+
+        private static boolean equal(final String a, final String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 17;
+            for (String value : new String[] { url, user, password, repositoryId, bindingType }) {
+                hash = hash * 31 + (value != null ? value.hashCode() : 0);
+            }
+            return hash;
+        }
+
+        // without the password
+        @Override
+        public String toString() {
+            return user + "@" + url + "/" + repositoryId + " (" + bindingType + ")";
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package de.hofuniversity.iisys.cmis;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+
+/**
+ * Parallel traversal of a folder hierarchy, replacing getDescendants(-1), which materializes the whole tree. Folders
+ * are read page by page with getChildren and walked breadth-first by a work-stealing pool. Once the configured number
+ * of folders is queued, further subfolders are walked depth-first by the current thread, so memory is bounded by the
+ * queue, the depth and the page size instead of the size of the tree.
+ */
+public class CmisTreeWalker {
+    /** Depth for walking the whole tree. */
+    public static final int UNLIMITED_DEPTH = -1;
+
+    private static final int QUEUED_PER_THREAD = 16;
+
+    /**
+     * Receives every object below the root, called concurrently from the walker's threads.
+     */
+    public interface Visitor {
+        /**
+         * @param object document, folder or other fileable object
+         * @param depth depth below the root, starting with 1 for its children
+         * @return whether to walk the children of a folder, ignored for other objects
+         * @throws Exception to abort the walk
+         */
+        boolean visit(FileableCmisObject object, int depth) throws Exception;
+    }
+
+    private final int parallelism;
+    private final int maxQueued;
+
+    /**
+     * @param parallelism number of folders read at once
+     */
+    public CmisTreeWalker(final int parallelism) {
+        this(parallelism, parallelism * QUEUED_PER_THREAD);
+    }
+
+    /**
+     * @param parallelism number of folders read at once
+     * @param maxQueued number of folders queued before subfolders are walked by the current thread
+     */
+    public CmisTreeWalker(final int parallelism, final int maxQueued) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("invalid parallelism: " + parallelism);
+        }
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("invalid queue size: " + maxQueued);
+        }
+
+        this.parallelism = parallelism;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Walks the tree below a folder and returns once all objects were visited or the walk failed.
+     * @param root folder to start at, not visited itself
+     * @param maxDepth depth to descend to, 1 for the children of the root, {@link #UNLIMITED_DEPTH} for all
+     * @param context context for reading the children, defining page size and properties, null for the default
+     * @param visitor thread-safe visitor of the objects
+     * @return number of visited objects
+     * @throws Exception the first exception of the visitor or the repository
+     */
+    public long walk(final Folder root, final int maxDepth, final OperationContext context, final Visitor visitor)
+            throws Exception {
+        if (maxDepth == 0) {
+            return 0;
+        }
+
+        final Walk walk = new Walk(maxDepth, context, visitor);
+
+        // asynchronous mode runs queued folders first in, first out
+        final ForkJoinPool pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null,
+                true);
+        try {
+            walk.pending.set(1);
+            pool.execute(walk.new FolderTask(root, 0));
+            walk.done.await();
+        } finally {
+            // stops the remaining tasks after a failure
+            pool.shutdownNow();
+        }
+
+        final Throwable failure = walk.failure.get();
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return walk.visited.get();
+    }
+
+    /**
+     * State of a single walk.
+     */
+    private class Walk {
+        private final int maxDepth;
+        private final OperationContext context;
+        private final Visitor visitor;
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicLong visited = new AtomicLong();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Walk(final int maxDepth, final OperationContext context, final Visitor visitor) {
+            this.maxDepth = maxDepth;
+            this.context = context;
+            this.visitor = visitor;
+        }
+
+        private Iterator<CmisObject> children(final Folder folder) {
+            return (context != null ? folder.getChildren(context) : folder.getChildren()).iterator();
+        }
+
+        /**
+         * Walks the children of a folder, forking subfolders while the queue has room.
+         */
+        private class FolderTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final Folder folder;
+            private final int depth;
+
+            private FolderTask(final Folder folder, final int depth) {
+                this.folder = folder;
+                this.depth = depth;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    walk();
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    if (pending.decrementAndGet() == 0 || failure.get() != null) {
+                        done.countDown();
+                    }
+                }
+            }
+
+            // one iterator over the current page of children per level, instead of recursion
+            private void walk() throws Exception {
+                final Deque<Frame> stack = new ArrayDeque<Frame>();
+                stack.push(new Frame(children(folder), depth + 1));
+
+                while (!stack.isEmpty() && failure.get() == null) {
+                    final Frame frame = stack.peek();
+                    if (!frame.children.hasNext()) {
+                        stack.pop();
+                        continue;
+                    }
+
+                    final CmisObject child = frame.children.next();
+                    if (!(child instanceof FileableCmisObject)) {
+                        continue;
+                    }
+
+                    visited.incrementAndGet();
+                    final boolean descend = visitor.visit((FileableCmisObject) child, frame.depth);
+                    if (!descend || !(child instanceof Folder)
+                            || (maxDepth != UNLIMITED_DEPTH && frame.depth >= maxDepth)) {
+                        continue;
+                    }
+
+                    if (pending.get() < maxQueued) {
+                        pending.incrementAndGet();
+                        new FolderTask((Folder) child, frame.depth).fork();
+                    } else {
+                        stack.push(new Frame(children((Folder) child), frame.depth + 1));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Frame {
+        private final Iterator<CmisObject> children;
+        private final int depth;
+
+        private Frame(final Iterator<CmisObject> children, final int depth) {
+            this.children = children;
+            this.depth = depth;
+        }
+    }
+}
@@ -3,11 +3,25 @@
  */
 package de.hofuniversity.iisys.cmis;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.chemistry.opencmis.client.api.CmisObject;
 import org.apache.chemistry.opencmis.client.api.Document;
@@ -17,15 +31,14 @@ import org.apache.chemistry.opencmis.client.api.ItemIterable;
 import org.apache.chemistry.opencmis.client.api.ObjectFactory;
 import org.apache.chemistry.opencmis.client.api.ObjectId;
 import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
 import org.apache.chemistry.opencmis.client.api.Policy;
 import org.apache.chemistry.opencmis.client.api.Property;
 import org.apache.chemistry.opencmis.client.api.QueryResult;
 import org.apache.chemistry.opencmis.client.api.QueryStatement;
 import org.apache.chemistry.opencmis.client.api.Session;
-import org.apache.chemistry.opencmis.client.api.Tree;
 import org.apache.chemistry.opencmis.client.runtime.ObjectIdImpl;
-import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
-import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
 import org.apache.chemistry.opencmis.commons.data.Ace;
 import org.apache.chemistry.opencmis.commons.data.Acl;
 import org.apache.chemistry.opencmis.commons.data.AllowableActions;
@@ -36,6 +49,9 @@ import org.apache.chemistry.opencmis.commons.definitions.TypeDefinition;
 import org.apache.chemistry.opencmis.commons.enums.AclPropagation;
 import org.apache.chemistry.opencmis.commons.enums.Action;
 import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityContentStreamUpdates;
+import org.apache.chemistry.opencmis.commons.enums.CmisVersion;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
 import org.apache.chemistry.opencmis.commons.enums.VersioningState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,21 +62,23 @@ import org.slf4j.LoggerFactory;
  */
 public class OpenCMISClient {
     private static final transient Logger LOG = LoggerFactory.getLogger(OpenCMISClient.class);
+    private static final String RENDITIONS_NONE = "cmis:none";
+    private static final int TREE_PAGE_SIZE = 100;
+    private static final int TREE_PARALLELISM = 4;
+    private static final int STREAM_BUFFER = 64 * 1024;
     public static final String ALL_COLLECTION_QUERY = "SELECT * FROM cmis:document WHERE cmis:objectTypeId = 'Collection'";
     private final Session session;
+    private final ExecutorService executor;
+    private volatile long uploadChunkSize = CmisSessionPool.DEFAULT_UPLOAD_CHUNK_SIZE;
+    /**
+     * Uses the pooled session of {@link CmisSessionPool#getInstance()}, so clients for the same connection share
+     * its caches. The browser binding (JSON) is the fastest to parse, e.g. http://host:8080/nuxeo/json/cmis, AtomPub
+     * is supported for older repositories and the local binding takes the class name of a service factory as URL.
+     * @throws IllegalArgumentException for the web services and custom bindings
+     */
     public OpenCMISClient(final String url, final String user, final String password, final String repositoryId, final String bindingType) {
-        Map<String, String> parameters = new HashMap<String, String>();
-        parameters.put(SessionParameter.BINDING_TYPE, bindingType);
-        // TODO implement SOAP, WSDL, etc.
-        if (BindingType.ATOMPUB.value().equals(bindingType)) {
-            parameters.put(SessionParameter.ATOMPUB_URL, url);
-        }
-        parameters.put(SessionParameter.REPOSITORY_ID, repositoryId);
-        parameters.put(SessionParameter.USER, user);
-        parameters.put(SessionParameter.PASSWORD, password);
-
-        // start session
-        session = SessionFactoryImpl.newInstance().createSession(parameters);
+        this(CmisSessionPool.getInstance().getSession(url, user, password, repositoryId, bindingType));
+        uploadChunkSize = CmisSessionPool.getInstance().getUploadChunkSize();
     }
     /**
      * 
@@ -68,8 +86,31 @@ public class OpenCMISClient {
     public OpenCMISClient(final String url, final String user, final String password, final String repositoryId, final BindingType bindingType) {
         this(url, user, password, repositoryId, bindingType.value());
     }
+    /**
+     * Does not initialize the {@link CmisSessionPool}, unless paged queries are used.
+     * @param session existing session to use
+     */
+    public OpenCMISClient(final Session session) {
+        this(session, null);
+    }
+    /**
+     * @param session existing session to use
+     * @param executor executor prefetching query result pages, null for the one of
+     *            {@link CmisSessionPool#getInstance()}, which is only looked up by paged queries
+     */
+    public OpenCMISClient(final Session session, final ExecutorService executor) {
+        this.session = session;
+        this.executor = executor;
+    }
+    private ExecutorService getExecutor() {
+        return executor != null ? executor : CmisSessionPool.getInstance().getExecutor();
+    }
+    /**
+     * Keeps the session, which is shared with other clients, open and its caches warm. Use
+     * {@link CmisSessionPool#invalidate(String, String, String, String, String)} to discard it.
+     */
     public void shutdown() {
-        session.clear();
+        // nothing to release
     }
     public enum CMISDocumentTypes {
         DOC("cmis:document"), COL("Collection"), FOL("cmis:folder");
@@ -134,6 +175,43 @@ public class OpenCMISClient {
         return contentStream;
     }
 
+    /**
+     * Creates a content stream reading a file when it is sent, instead of holding it in memory.
+     * @param file file to upload
+     * @param mimeType MIME type of the content
+     * @return content stream, which has to be sent or closed
+     * @throws IOException if the file could not be opened
+     */
+    public ContentStream createContentStream(final Path file, final String mimeType) throws IOException {
+        return createContentStream(new BufferedInputStream(Files.newInputStream(file), STREAM_BUFFER),
+                file.getFileName().toString(), mimeType, Files.size(file));
+    }
+
+    /**
+     * @param stream content, read when it is sent
+     * @param fileName file name of the content
+     * @param mimeType MIME type of the content
+     * @param length number of bytes, -1 if unknown, which is sent with chunked transfer encoding
+     * @return content stream, which has to be sent or closed
+     */
+    public ContentStream createContentStream(final InputStream stream, final String fileName, final String mimeType,
+            final long length) {
+        return session.getObjectFactory().createContentStream(fileName, length, mimeType, stream);
+    }
+
+    /**
+     * @param channel content, read when it is sent
+     * @param fileName file name of the content
+     * @param mimeType MIME type of the content
+     * @param length number of bytes, -1 if unknown
+     * @return content stream, which has to be sent or closed
+     */
+    public ContentStream createContentStream(final ReadableByteChannel channel, final String fileName, final String mimeType,
+            final long length) {
+        return createContentStream(new BufferedInputStream(Channels.newInputStream(channel), STREAM_BUFFER), fileName,
+                mimeType, length);
+    }
+
     private void getRepositoryCapabilities(RepositoryInfo repInfo) {
         RepositoryCapabilities cap = repInfo.getCapabilities();
         System.out.println("\nNavigation Capabilities");
@@ -182,16 +260,20 @@ public class OpenCMISClient {
             AllowableActions actions = object.getAllowableActions();
             System.out.println("    canGetProperties: " + actions.getAllowableActions().contains(Action.CAN_GET_PROPERTIES));
             System.out.println("    canDeleteObject:  " + actions.getAllowableActions().contains(Action.CAN_DELETE_OBJECT));
+        }
 
-            if (!session.getRepositoryInfo().getCapabilities().isGetDescendantsSupported()) {
-                System.out.println("getDescendants not supported in this repository");
-            } else {
-                System.out.println("Descendants of " + rootFolder.getName() + ":-");
-                for (Tree<FileableCmisObject> t : rootFolder.getDescendants(-1)) {
-                    printTree(t);
+        // once for the whole tree, not per child
+        System.out.println("Descendants of " + rootFolder.getName() + ":-");
+        try {
+            walkTree(rootFolder, CmisTreeWalker.UNLIMITED_DEPTH, TREE_PARALLELISM, new CmisTreeWalker.Visitor() {
+                @Override
+                public boolean visit(FileableCmisObject object, int depth) {
+                    System.out.println("Descendant " + object.getName());
+                    return true;
                 }
-            }
-
+            });
+        } catch (Exception e) {
+            LOG.error("could not list descendants of " + rootFolder.getName(), e);
         }
     }
     private void printPropertiesOfADocument(final FileableCmisObject document) {
@@ -214,11 +296,21 @@ public class OpenCMISClient {
         }
     }
 
-    private static void printTree(Tree<FileableCmisObject> tree) {
-        System.out.println("Descendant " + tree.getItem().getName());
-        for (Tree<FileableCmisObject> t : tree.getChildren()) {
-            printTree(t);
-        }
+    /**
+     * Visits all objects below a folder in parallel, reading one page of children per request. Only the basic
+     * properties of the objects are read.
+     * @param root folder to start at
+     * @param maxDepth depth to descend to, {@link CmisTreeWalker#UNLIMITED_DEPTH} for the whole tree
+     * @param parallelism number of folders read at once
+     * @param visitor thread-safe visitor of the objects
+     * @return number of visited objects
+     * @throws Exception the first exception of the visitor or the repository
+     */
+    public long walkTree(final Folder root, final int maxDepth, final int parallelism, final CmisTreeWalker.Visitor visitor)
+            throws Exception {
+        final OperationContext context = createQueryContext(TREE_PAGE_SIZE, PropertyIds.OBJECT_ID, PropertyIds.NAME,
+                PropertyIds.BASE_TYPE_ID, PropertyIds.OBJECT_TYPE_ID, PropertyIds.LAST_MODIFICATION_DATE);
+        return new CmisTreeWalker(parallelism).walk(root, maxDepth, context, visitor);
     }
 
     /**
@@ -302,6 +394,25 @@ public class OpenCMISClient {
         return session.getObject(objectId);
     }
 
+    /**
+     * @param objectId
+     * @param context
+     * @return
+     * @see org.apache.chemistry.opencmis.client.api.Session#getObject(java.lang.String,
+     *      org.apache.chemistry.opencmis.client.api.OperationContext)
+     */
+    public CmisObject getObject(String objectId, OperationContext context) {
+        return session.getObject(objectId, context);
+    }
+
+    /**
+     * @return
+     * @see org.apache.chemistry.opencmis.client.api.Session#getRepositoryInfo()
+     */
+    public RepositoryInfo getRepositoryInfo() {
+        return session.getRepositoryInfo();
+    }
+
     /**
      * @param path
      * @return
@@ -350,6 +461,84 @@ public class OpenCMISClient {
         return session.query(statement, searchAllVersions);
     }
 
+    /**
+     * @param statement
+     * @param searchAllVersions
+     * @param context
+     * @return
+     * @see org.apache.chemistry.opencmis.client.api.Session#query(java.lang.String, boolean,
+     *      org.apache.chemistry.opencmis.client.api.OperationContext)
+     */
+    public ItemIterable<QueryResult> query(String statement, boolean searchAllVersions, OperationContext context) {
+        return session.query(statement, searchAllVersions, context);
+    }
+
+    /**
+     * @param typeId
+     * @param where
+     * @param searchAllVersions
+     * @param context
+     * @return
+     * @see org.apache.chemistry.opencmis.client.api.Session#queryObjects(java.lang.String, java.lang.String, boolean,
+     *      org.apache.chemistry.opencmis.client.api.OperationContext)
+     */
+    public ItemIterable<CmisObject> queryObjects(String typeId, String where, boolean searchAllVersions, OperationContext context) {
+        return session.queryObjects(typeId, where, searchAllVersions, context);
+    }
+
+    /**
+     * Creates a lean context for large queries: only the given properties, no allowable actions, ACLs, policies,
+     * relationships, renditions or path segments, and results are not cached. For {@link #query(String, boolean)}
+     * the SELECT clause should name the same properties, the filter applies to objects like those of
+     * {@link #queryObjects(String, String, boolean, OperationContext)}.
+     * @param pageSize number of results per request
+     * @param properties query names of the properties to read, none for all
+     * @return the new operation context
+     */
+    public OperationContext createQueryContext(final int pageSize, final String... properties) {
+        Set<String> filter = null;
+        if (properties.length > 0) {
+            filter = new HashSet<String>(Arrays.asList(properties));
+        }
+        return session.createOperationContext(filter, false, false, false, IncludeRelationships.NONE,
+                Collections.singleton(RENDITIONS_NONE), false, null, false, pageSize);
+    }
+
+    /**
+     * Iterates over the results of a query one page at a time, the next page is prefetched in the background.
+     * @param statement CMIS query, should be ordered for stable paging
+     * @param searchAllVersions
+     * @param context context defining the page size and what to read, see {@link #createQueryContext(int, String...)}
+     * @return iterator over all results
+     */
+    public CmisPager<QueryResult> queryPaged(final String statement, final boolean searchAllVersions, final OperationContext context) {
+        return new CmisPager<QueryResult>(new CmisPager.PageLoader<QueryResult>() {
+            @Override
+            public ItemIterable<QueryResult> load(long skipCount) {
+                return session.query(statement, searchAllVersions, context).skipTo(skipCount);
+            }
+        }, context.getMaxItemsPerPage(), getExecutor());
+    }
+
+    /**
+     * Iterates over the objects found by a query like {@link #queryPaged(String, boolean, OperationContext)}, reading
+     * only the properties of the context's filter.
+     * @param typeId
+     * @param where
+     * @param searchAllVersions
+     * @param context context defining the page size and what to read, see {@link #createQueryContext(int, String...)}
+     * @return iterator over all resulting objects
+     */
+    public CmisPager<CmisObject> queryObjectsPaged(final String typeId, final String where, final boolean searchAllVersions,
+            final OperationContext context) {
+        return new CmisPager<CmisObject>(new CmisPager.PageLoader<CmisObject>() {
+            @Override
+            public ItemIterable<CmisObject> load(long skipCount) {
+                return session.queryObjects(typeId, where, searchAllVersions, context).skipTo(skipCount);
+            }
+        }, context.getMaxItemsPerPage(), getExecutor());
+    }
+
     /**
      * @param statement
      * @return
@@ -393,6 +582,198 @@ public class OpenCMISClient {
         return session.createDocument(properties, folderId, contentStream, versioningState);
     }
 
+    /**
+     * Creates a document with the content of a file, see
+     * {@link #createDocument(Map, ObjectId, InputStream, String, String, long, VersioningState)}.
+     * @param properties
+     * @param folderId
+     * @param file file to upload
+     * @param mimeType MIME type of the content
+     * @param versioningState
+     * @return ID of the new document
+     * @throws IOException if the file could not be read
+     */
+    public ObjectId createDocument(Map<String, ?> properties, ObjectId folderId, Path file, String mimeType,
+            VersioningState versioningState) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), STREAM_BUFFER)) {
+            return createDocument(properties, folderId, in, file.getFileName().toString(), mimeType, Files.size(file),
+                    versioningState);
+        }
+    }
+
+    /**
+     * Creates a document streaming its content, which never has to fit into memory. Content larger than the upload
+     * chunk size is sent in chunks with appendContentStream, if the repository supports CMIS 1.1 and content updates
+     * at any time, otherwise it is sent in a single request. Since a checked-in version can not be appended to, a
+     * document to be created as major or minor version is created checked out and checked in after its last chunk.
+     * A document whose content could not be sent completely is deleted again.
+     * @param properties
+     * @param folderId
+     * @param content content, may be closed once it was sent
+     * @param fileName file name of the content
+     * @param mimeType MIME type of the content
+     * @param length number of bytes, -1 if unknown
+     * @param versioningState
+     * @return ID of the new document
+     * @throws IOException if the content could not be read
+     */
+    public ObjectId createDocument(Map<String, ?> properties, ObjectId folderId, InputStream content, String fileName,
+            String mimeType, long length, VersioningState versioningState) throws IOException {
+        final long chunkSize = uploadChunkSize;
+        if ((length >= 0 && length <= chunkSize) || !isAppendSupported()) {
+            return session.createDocument(properties, folderId, createContentStream(content, fileName, mimeType, length),
+                    versioningState);
+        }
+
+        final boolean checkIn = versioningState == VersioningState.MAJOR || versioningState == VersioningState.MINOR;
+        final PushbackInputStream in = new PushbackInputStream(content, 1);
+        final ChunkInputStream first = new ChunkInputStream(in, chunkSize);
+        final ObjectId id = session.createDocument(properties, folderId,
+                createContentStream(first, fileName, mimeType, length >= 0 ? chunkSize : -1),
+                checkIn ? VersioningState.CHECKEDOUT : versioningState);
+
+        try {
+            first.checkComplete(length >= 0);
+            if (length < 0 && !hasMore(in)) {
+                return checkIn ? checkIn((Document) session.getObject(id), versioningState) : id;
+            }
+
+            Document document = (Document) session.getObject(id);
+            if (length >= 0) {
+                long remaining = length - chunkSize;
+                while (remaining > 0) {
+                    final long size = Math.min(chunkSize, remaining);
+                    remaining -= size;
+                    document = appendChunk(document, new ChunkInputStream(in, size), fileName, mimeType, size, remaining == 0);
+                }
+            } else {
+                while (hasMore(in)) {
+                    document = appendChunk(document, new ChunkInputStream(in, chunkSize), fileName, mimeType, -1, false);
+                }
+                // the end of the stream is only known after its last chunk
+                document = appendChunk(document, new ChunkInputStream(in, 0), fileName, mimeType, 0, true);
+            }
+            return checkIn ? checkIn(document, versioningState) : document;
+        } catch (IOException | RuntimeException e) {
+            try {
+                session.delete(id);
+            } catch (RuntimeException deleteError) {
+                LOG.warn("could not delete incomplete document " + id.getId(), deleteError);
+            }
+            throw e;
+        }
+    }
+
+    // if checking in fails, deleting the working copy of a document created checked out deletes the document
+    private ObjectId checkIn(final Document document, final VersioningState versioningState) {
+        return document.checkIn(versioningState == VersioningState.MAJOR, null, null, null);
+    }
+
+    /**
+     * @return whether large content can be appended in chunks
+     */
+    public boolean isAppendSupported() {
+        final RepositoryInfo info = session.getRepositoryInfo();
+        return info.getCmisVersion() == CmisVersion.CMIS_1_1 && info.getCapabilities() != null
+                && info.getCapabilities().getContentStreamUpdatesCapability() == CapabilityContentStreamUpdates.ANYTIME;
+    }
+
+    /**
+     * @param bytes number of bytes per appended chunk of large uploads
+     */
+    public void setUploadChunkSize(final long bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("invalid upload chunk size: " + bytes);
+        }
+        uploadChunkSize = bytes;
+    }
+
+    private Document appendChunk(final Document document, final ChunkInputStream chunk, final String fileName,
+            final String mimeType, final long size, final boolean last) throws IOException {
+        final ObjectId id = document.appendContentStream(createContentStream(chunk, fileName, mimeType, size), last, false);
+        chunk.checkComplete(size >= 0);
+
+        // repositories may create a new version
+        if (id != null && !id.getId().equals(document.getId())) {
+            return (Document) session.getObject(id);
+        }
+        return document;
+    }
+
+    private static boolean hasMore(final PushbackInputStream in) throws IOException {
+        final int next = in.read();
+        if (next == -1) {
+            return false;
+        }
+        in.unread(next);
+        return true;
+    }
+
+    /**
+     * Reads up to a number of bytes of a stream, without closing it.
+     */
+    private static class ChunkInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private ChunkInputStream(final InputStream in, final long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (count >= limit) {
+                return -1;
+            }
+            final int b = in.read();
+            if (b != -1) {
+                ++count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (count >= limit) {
+                return -1;
+            }
+            final int read = in.read(b, off, (int) Math.min(len, limit - count));
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, limit - count));
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), limit - count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the stream continues with the next chunk
+        }
+
+        private void checkComplete(final boolean known) throws IOException {
+            if (known && count < limit) {
+                throw new EOFException("content ended after " + count + " of " + limit + " bytes of a chunk");
+            }
+        }
+    }
+
     /**
      * @param source
      * @param properties
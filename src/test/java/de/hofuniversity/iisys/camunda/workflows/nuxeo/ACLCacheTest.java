@@ -0,0 +1,111 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Document;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests that ACLs read while permissions change are not cached, against a
+ * local HTTP server holding back the ACL response.
+ */
+public class ACLCacheTest {
+    private static final String ACLS = "{\"entity-type\":\"acls\",\"acl\":[{\"name\":\"local\",\"ace\":["
+            + "{\"username\":\"jdoe\",\"permission\":\"Read\",\"granted\":true}]}]}";
+
+    @Test
+    public void testPermissionChangedDuringRead() throws Exception {
+        final ACLServer server = new ACLServer();
+        final NuxeoUtility nuxeo = new NuxeoUtility(server.getUrl(), "user", "password",
+                new HashMap<String, String>(), new FakeSessionPool());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<NuxeoACL>> read = executor.submit(new Callable<List<NuxeoACL>>() {
+                @Override
+                public List<NuxeoACL> call() throws Exception {
+                    return nuxeo.getParsedACLs("doc");
+                }
+            });
+
+            // the permission changes while the old ACLs are on their way
+            server.requested.await(10, TimeUnit.SECONDS);
+            nuxeo.addPermission(new Document("doc", "File"), Collections.<String, Object> singletonMap(
+                    "permission", "Write"));
+            server.release.countDown();
+
+            assertEquals("", 1, read.get(10, TimeUnit.SECONDS).size());
+            assertNull(nuxeo.getACLCache().get("doc"));
+
+            // read again afterwards, cached as usual
+            nuxeo.getParsedACLs("doc");
+            assertNotNull(nuxeo.getACLCache().get("doc"));
+        } finally {
+            executor.shutdown();
+            nuxeo.shutdown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Answers ACL requests once released.
+     */
+    private static class ACLServer implements HttpHandler {
+        private final HttpServer server;
+        private final CountDownLatch requested = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        public ACLServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/nuxeo/api/v1/id/", this);
+            server.start();
+        }
+
+        public String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/nuxeo/";
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requested.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] body = ACLS.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+
+        public void stop() {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Blob;
+import org.nuxeo.ecm.automation.client.model.FileBlob;
+
+/**
+ * Tests the on-disk blob cache without a Nuxeo instance.
+ */
+public class BlobCacheTest {
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        BlobCache cache = new BlobCache(Files.createTempDirectory("blobcache"), 1000);
+        try {
+            CountingLoader loader = new CountingLoader("content");
+
+            assertEquals("", "content", read(cache.get("a", "a.txt", "text/plain", loader)));
+            Blob blob = cache.get("a", "b.txt", null, loader);
+            assertEquals("", "content", read(blob));
+            assertEquals("", "content", read(blob));
+
+            assertEquals("", 1, loader.fCalls.get());
+            assertEquals("", "b.txt", blob.getFileName());
+            assertEquals("", 7, blob.getLength());
+            assertEquals("", 1, cache.getHits());
+            assertEquals("", 1, cache.getMisses());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testLoaderMetadata() throws Exception {
+        BlobCache cache = new BlobCache(Files.createTempDirectory("blobcache"), 1000);
+        try {
+            CountingLoader loader = new CountingLoader("<xml/>");
+            cache.get("a", null, null, loader);
+
+            Blob blob = cache.get("a", null, null, loader);
+            assertEquals("", "output.ftl", blob.getFileName());
+            assertEquals("", "text/xml", blob.getMimeType());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        BlobCache cache = new BlobCache(Files.createTempDirectory("blobcache"), 10);
+        try {
+            cache.get("a", null, null, new CountingLoader("1234"));
+            Blob b = cache.get("b", null, null, new CountingLoader("5678"));
+
+            // touch a, so b is the eldest entry
+            cache.get("a", null, null, new CountingLoader("1234"));
+            cache.get("c", null, null, new CountingLoader("9012"));
+
+            assertEquals("", 2, cache.size());
+            assertEquals("", 8, cache.getSize());
+            assertEquals("", 1, cache.getEvictions());
+
+            // evicted, but still readable
+            assertEquals("", "5678", read(b));
+
+            CountingLoader loader = new CountingLoader("5678");
+            cache.get("b", null, null, loader);
+            assertEquals("", 1, loader.fCalls.get());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        final BlobCache cache = new BlobCache(Files.createTempDirectory("blobcache"), 1000);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountingLoader loader = new CountingLoader("content");
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 16; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return read(cache.get("a", null, null, loader));
+                    }
+                }));
+            }
+
+            for (Future<String> result : results) {
+                assertEquals("", "content", result.get());
+            }
+            assertEquals("", 1, loader.fCalls.get());
+        } finally {
+            executor.shutdown();
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        BlobCache cache = new BlobCache(Files.createTempDirectory("blobcache"), 1000);
+        cache.get("a", null, null, new CountingLoader("content"));
+        assertTrue(Files.isDirectory(cache.getDirectory()));
+
+        cache.clear();
+        assertEquals("", 0, cache.size());
+        assertFalse(Files.exists(cache.getDirectory()));
+    }
+
+    private static String read(Blob blob) throws Exception {
+        try (InputStream in = blob.getStream()) {
+            return new String(HttpUtil.readBytes(in, -1), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class CountingLoader implements BlobCache.Loader {
+        private final String fContent;
+        private final AtomicInteger fCalls = new AtomicInteger();
+
+        public CountingLoader(String content) {
+            fContent = content;
+        }
+
+        @Override
+        public Blob load(Path target) throws Exception {
+            fCalls.incrementAndGet();
+            // slow enough for concurrent requests to wait for the first one
+            Thread.sleep(20);
+            Files.write(target, fContent.getBytes(StandardCharsets.UTF_8));
+            return new FileBlob(target.toFile(), "output.ftl", "text/xml");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests resuming file downloads against a local HTTP server supporting
+ * range requests and If-Range.
+ */
+public class BlobDownloaderTest {
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @Test
+    public void testResume() throws Exception {
+        BlobServer server = new BlobServer(CONTENT, "\"v1\"");
+        Path dir = Files.createTempDirectory("download");
+        try {
+            Path target = dir.resolve("blob.txt");
+            Files.write(dir.resolve("blob.txt.part"), "0123456789".getBytes(StandardCharsets.UTF_8));
+            Files.write(dir.resolve("blob.txt.part.validator"), "\"v1\"".getBytes(StandardCharsets.UTF_8));
+
+            long size = new BlobDownloader(new HttpUtil("user", "password"), 0).download(server.getUrl(), target,
+                    null);
+
+            assertEquals("", CONTENT.length(), size);
+            assertEquals("", CONTENT, new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+            assertEquals("", "[bytes=10- if \"v1\"]", server.requests.toString());
+            assertFalse(Files.exists(dir.resolve("blob.txt.part.validator")));
+        } finally {
+            server.stop();
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testChangedBlob() throws Exception {
+        // the partial file belongs to an older version
+        BlobServer server = new BlobServer(CONTENT, "\"v2\"");
+        Path dir = Files.createTempDirectory("download");
+        try {
+            Path target = dir.resolve("blob.txt");
+            Files.write(dir.resolve("blob.txt.part"), "XXXXXXXXXXXXXXX".getBytes(StandardCharsets.UTF_8));
+            Files.write(dir.resolve("blob.txt.part.validator"), "\"v1\"".getBytes(StandardCharsets.UTF_8));
+
+            new BlobDownloader(new HttpUtil("user", "password"), 0).download(server.getUrl(), target, null);
+
+            assertEquals("", CONTENT, new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+            assertEquals("", "[bytes=15- if \"v1\"]", server.requests.toString());
+        } finally {
+            server.stop();
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testWithoutValidator() throws Exception {
+        // partial file of unknown origin
+        BlobServer server = new BlobServer(CONTENT, "\"v1\"");
+        Path dir = Files.createTempDirectory("download");
+        try {
+            Path target = dir.resolve("blob.txt");
+            Files.write(dir.resolve("blob.txt.part"), "XXXXX".getBytes(StandardCharsets.UTF_8));
+
+            new BlobDownloader(new HttpUtil("user", "password"), 0).download(server.getUrl(), target, null);
+
+            assertEquals("", CONTENT, new String(Files.readAllBytes(target), StandardCharsets.UTF_8));
+            assertEquals("", "[all]", server.requests.toString());
+        } finally {
+            server.stop();
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Serves a single blob, answering range requests only if If-Range
+     * matches its ETag.
+     */
+    private static class BlobServer implements HttpHandler {
+        private final byte[] content;
+        private final String etag;
+        private final HttpServer server;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        public BlobServer(String content, String etag) throws IOException {
+            this.content = content.getBytes(StandardCharsets.UTF_8);
+            this.etag = etag;
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/blob", this);
+            server.start();
+        }
+
+        public URL getUrl() throws IOException {
+            return new URL("http", "127.0.0.1", server.getAddress().getPort(), "/blob");
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            requests.add(range != null ? range + " if " + ifRange : "all");
+
+            int start = 0;
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            }
+
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (start > 0) {
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+            }
+            exchange.sendResponseHeaders(start > 0 ? 206 : 200, content.length - start);
+
+            OutputStream out = exchange.getResponseBody();
+            out.write(content, start, content.length - start);
+            out.close();
+        }
+
+        public void stop() {
+            server.stop(0);
+        }
+    }
+}
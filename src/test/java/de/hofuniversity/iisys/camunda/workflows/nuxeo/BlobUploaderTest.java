@@ -0,0 +1,237 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests chunked and resumed uploads against a local HTTP server
+ * implementing the chunk requests of the batch upload API.
+ */
+public class BlobUploaderTest {
+    private static final String CONTENT = "0123456789abcdefghijABCDE";
+
+    @Test
+    public void testUpload() throws Exception {
+        UploadServer server = new UploadServer();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Path file = Files.createTempFile("upload", ".txt");
+        try {
+            Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+
+            newUploader(server, executor, 0).upload("batch", 0, file, "text/plain", null);
+
+            // nothing uploaded yet, so all three chunks are sent
+            assertEquals("", Arrays.asList(0, 1, 2), server.getSentChunks());
+            assertEquals("", CONTENT, server.getContent());
+            assertEquals("", "3", server.chunkCount);
+            assertEquals("", "25", server.fileSize);
+        } finally {
+            executor.shutdown();
+            server.stop();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        UploadServer server = new UploadServer();
+        server.setUploaded(25, 3, 0, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            newUploader(server, executor, 0).upload("batch", 0, newStream(), 25, "blob.txt", null, null);
+
+            // only the missing chunk, read from the right offset
+            assertEquals("", Arrays.asList(1), server.getSentChunks());
+            assertEquals("", CONTENT, server.getContent());
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testResumeSizeMismatch() throws Exception {
+        // chunks of an earlier upload of a different file
+        UploadServer server = new UploadServer();
+        server.setUploaded(30, 3, 0, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            newUploader(server, executor, 0).upload("batch", 0, newStream(), 25, "blob.txt", null, null);
+
+            assertEquals("", Arrays.asList(0, 1, 2), server.getSentChunks());
+            assertEquals("", CONTENT, server.getContent());
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRetriedChunk() throws Exception {
+        UploadServer server = new UploadServer();
+        server.failures.put(1, 503);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            newUploader(server, executor, 1).upload("batch", 0, newStream(), 25, "blob.txt", null, null);
+
+            // the failed chunk is sent again
+            assertEquals("", Arrays.asList(0, 1, 1, 2), server.getSentChunks());
+            assertEquals("", CONTENT, server.getContent());
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testFailedChunk() throws Exception {
+        // not retried, client errors do not go away
+        UploadServer server = new UploadServer();
+        server.failures.put(0, 400);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            newUploader(server, executor, 1).upload("batch", 0, newStream(), 25, "blob.txt", null, null);
+            fail("upload should have failed");
+        } catch (HttpStatusException e) {
+            assertEquals("", 400, e.getStatus());
+            assertEquals("", 1, Collections.frequency(server.getSentChunks(), 0));
+        } finally {
+            executor.shutdown();
+            server.stop();
+        }
+    }
+
+    private static BlobUploader newUploader(UploadServer server, ExecutorService executor, int retries) {
+        return new BlobUploader(new HttpUtil("user", "password"), server.getUrl(), executor, 10, 2, retries);
+    }
+
+    private static InputStream newStream() {
+        return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Answers status requests with the chunks present and stores sent
+     * chunks, failing the first attempt of configured chunks.
+     */
+    private static class UploadServer implements HttpHandler {
+        private final HttpServer server;
+        private final Map<Integer, byte[]> chunks = Collections.synchronizedMap(new TreeMap<Integer, byte[]>());
+        private final List<Integer> sent = Collections.synchronizedList(new ArrayList<Integer>());
+        private final Map<Integer, Integer> failures = Collections.synchronizedMap(new TreeMap<Integer, Integer>());
+        private volatile String status;
+        private volatile String chunkCount;
+        private volatile String fileSize;
+
+        public UploadServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/nuxeo/api/v1/upload/", this);
+            server.start();
+        }
+
+        public String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/nuxeo/api/v1/upload/";
+        }
+
+        /**
+         * Stores the given chunks of the content as uploaded before, for
+         * an upload of the given size.
+         */
+        public void setUploaded(long size, int count, Integer... indexes) {
+            StringBuilder ids = new StringBuilder();
+            byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+            for (int index : indexes) {
+                int start = index * 10;
+                chunks.put(index, Arrays.copyOfRange(content, start, Math.min(start + 10, content.length)));
+                ids.append(ids.length() > 0 ? "," : "").append('"').append(index).append('"');
+            }
+            status = "{\"name\":\"blob.txt\",\"size\":" + size + ",\"uploadType\":\"chunked\","
+                    + "\"uploadedChunkIds\":[" + ids + "],\"chunkCount\":" + count + "}";
+        }
+
+        public List<Integer> getSentChunks() {
+            List<Integer> indexes = new ArrayList<Integer>(sent);
+            Collections.sort(indexes);
+            return indexes;
+        }
+
+        public String getContent() {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            synchronized (chunks) {
+                for (byte[] chunk : chunks.values()) {
+                    content.write(chunk, 0, chunk.length);
+                }
+            }
+            return new String(content.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                if (status == null) {
+                    respond(exchange, 404, "{}");
+                } else {
+                    respond(exchange, 200, status);
+                }
+                return;
+            }
+
+            int index = Integer.parseInt(exchange.getRequestHeaders().getFirst("X-Upload-Chunk-Index"));
+            chunkCount = exchange.getRequestHeaders().getFirst("X-Upload-Chunk-Count");
+            fileSize = exchange.getRequestHeaders().getFirst("X-File-Size");
+            sent.add(index);
+
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            InputStream in = exchange.getRequestBody();
+            byte[] buffer = new byte[64];
+            for (int read; (read = in.read(buffer)) > 0;) {
+                chunk.write(buffer, 0, read);
+            }
+
+            Integer failure = failures.remove(index);
+            if (failure != null) {
+                respond(exchange, failure, "{}");
+            } else {
+                chunks.put(index, chunk.toByteArray());
+                respond(exchange, 201, "{\"uploaded\":\"true\"}");
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+
+        public void stop() {
+            server.stop(0);
+        }
+    }
+}
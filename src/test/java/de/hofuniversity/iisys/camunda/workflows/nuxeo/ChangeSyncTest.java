@@ -0,0 +1,169 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeRequest;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests the keyset paging, overlap handling and classification of
+ * incremental change polls against a fake session.
+ */
+public class ChangeSyncTest {
+
+    @Test
+    public void testPoll() throws Exception {
+        ChangesPool pool = new ChangesPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            ChangeSync sync = new ChangeSync(nuxeo, null);
+            ChangeRecorder changes = new ChangeRecorder();
+
+            // initial poll, everything is new, paged by the last document of each page
+            pool.addPage(newDocument("a", 1000, 10000, null), newDocument("b", 1000, 20000, null));
+            pool.addPage(newDocument("c", 1000, 30000, null));
+
+            assertEquals("", 3, sync.poll(changes));
+            assertEquals("", "[ADDED a, ADDED b, ADDED c]", changes.toString());
+            assertEquals("", Arrays.asList(cursor("00:00:00.000", ""), cursor("00:00:20.000", "b")),
+                    getCursors(pool));
+            assertEquals("", new SyncCheckpoint(30000, "c"), sync.getCheckpoint());
+
+            // re-reads the overlap window before the checkpoint, skipping c reported before
+            pool.fRequests.clear();
+            changes.changes.clear();
+            pool.addPage(newDocument("c", 1000, 30000, null), newDocument("d", 31000, 32000, null));
+            pool.addPage(newDocument("b", 1000, 33000, null));
+
+            assertEquals("", 2, sync.poll(changes));
+            assertEquals("", "[ADDED d, UPDATED b]", changes.toString());
+            assertEquals("", Arrays.asList(cursor("00:00:25.000", ""), cursor("00:00:32.000", "d")),
+                    getCursors(pool));
+            assertEquals("", new SyncCheckpoint(33000, "b"), sync.getCheckpoint());
+
+            // e committed late within the overlap window, reported despite its older time
+            pool.fRequests.clear();
+            changes.changes.clear();
+            pool.addPage(newDocument("e", 1000, 29000, "deleted"), newDocument("c", 1000, 30000, null));
+            pool.addPage(newDocument("d", 31000, 32000, null), newDocument("b", 1000, 33000, null));
+
+            assertEquals("", 1, sync.poll(changes));
+            assertEquals("", "[DELETED e]", changes.toString());
+            assertEquals("", Arrays.asList(cursor("00:00:28.000", ""), cursor("00:00:30.000", "c"),
+                    cursor("00:00:33.000", "b")), getCursors(pool));
+            assertEquals("", new SyncCheckpoint(33000, "b"), sync.getCheckpoint());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testRepeatedChange() throws Exception {
+        ChangesPool pool = new ChangesPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            ChangeSync sync = new ChangeSync(nuxeo, null);
+            ChangeRecorder changes = new ChangeRecorder();
+
+            pool.addPage(newDocument("a", 1000, 10000, null));
+            sync.poll(changes);
+
+            // modified again within the overlap window, so not skipped
+            pool.addPage(newDocument("a", 1000, 12000, null));
+            assertEquals("", 1, sync.poll(changes));
+            assertEquals("", "[ADDED a, UPDATED a]", changes.toString());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static NuxeoUtility newUtility(FakeSessionPool pool) {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.QUERY_PAGE_SIZE, "2");
+        return new NuxeoUtility("http://localhost/nuxeo/", "user", "password", config, pool);
+    }
+
+    private static String cursor(String time, String id) {
+        return "(dc:modified > TIMESTAMP '1970-01-01T" + time + "Z' OR (dc:modified = TIMESTAMP '1970-01-01T"
+                + time + "Z' AND ecm:uuid > '" + id + "'))";
+    }
+
+    /**
+     * @return the keyset conditions of all queries
+     */
+    private static List<String> getCursors(FakeSessionPool pool) {
+        List<String> cursors = new ArrayList<String>();
+        for (FakeRequest request : new ArrayList<FakeRequest>(pool.fRequests)) {
+            String query = (String) request.parameters.get("query");
+            assertEquals("", "Document.Query", request.operationId);
+            assertEquals("", 2, request.parameters.get("pageSize"));
+            assertTrue(query, query.endsWith(" ORDER BY dc:modified, ecm:uuid"));
+            cursors.add(query.substring(query.indexOf("(dc:modified"), query.indexOf(" ORDER BY")));
+        }
+        return cursors;
+    }
+
+    private static Document newDocument(String id, long created, long modified, String state) {
+        PropertyMap properties = new PropertyMap();
+        properties.set("dc:created", new Date(created));
+        properties.set("dc:modified", new Date(modified));
+        return new Document(id, "File", null, null, "/" + id, state, null, null, null, null, null, properties,
+                null);
+    }
+
+    /**
+     * Records the type and ID of reported changes.
+     */
+    private static class ChangeRecorder implements ChangeSync.Listener {
+        private final List<String> changes = new ArrayList<String>();
+
+        @Override
+        public void onChange(DocumentChange change) {
+            changes.add(change.getType() + " " + change.getId());
+        }
+
+        @Override
+        public String toString() {
+            return changes.toString();
+        }
+    }
+
+    /**
+     * Answers queries with the added pages in order, then with empty pages.
+     */
+    private static class ChangesPool extends FakeSessionPool {
+        private final Deque<Documents> pages = new ArrayDeque<Documents>();
+
+        void addPage(Document... docs) {
+            Documents page = new Documents();
+            for (Document doc : docs) {
+                page.add(doc);
+            }
+            pages.add(page);
+        }
+
+        @Override
+        Object execute(FakeRequest request) throws IOException {
+            if ("Document.Query".equals(request.operationId)) {
+                return pages.isEmpty() ? new Documents() : pages.poll();
+            }
+            return super.execute(request);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeRequest;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests the chunked bulk operations on collections and folders against a
+ * fake session.
+ */
+public class CollectionBatchTest {
+
+    @Test
+    public void testAddToCollection() throws Exception {
+        BulkPool pool = new BulkPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Document collection = new Document("collection", "Collection");
+
+            BatchResult<Documents> result = nuxeo.addDocumentsToCollectionWithResult(collection,
+                    newDocuments("a", "b", "e"));
+
+            // one request per chunk of two, in order since each one modifies the collection
+            assertEquals("", Arrays.asList("Collection.AddToCollection [a, b] collection=collection",
+                    "Collection.AddToCollection [e] collection=collection"), describeRequests(pool));
+            assertEquals("", 2, result.size());
+            assertEquals("", "[a, b]", getIds(result.getResult(0)).toString());
+            assertEquals("", "[e]", getIds(result.getResult(1)).toString());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testRemoveFromCollection() throws Exception {
+        BulkPool pool = new BulkPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Document collection = nuxeo.getDocument("collection");
+            Document a = nuxeo.getDocument("a");
+            Document c = nuxeo.getDocument("c");
+            assertSame(c, nuxeo.getDocumentCache().get("c"));
+            pool.fRequests.clear();
+
+            BatchResult<Documents> result = nuxeo.removeDocumentsFromCollection(collection,
+                    Arrays.asList(a, new Document("b", "File"), c));
+
+            assertEquals("", Arrays.asList("Collection.RemoveFromCollection [a, b] collection=collection",
+                    "Collection.RemoveFromCollection [c] collection=collection"), describeRequests(pool));
+            // only the failed chunk fails, the others are still sent
+            assertEquals("", Collections.singleton(1), result.getFailures().keySet());
+            assertEquals("", "[a, b]", getIds(result.getResult(0)).toString());
+
+            // the membership changed in all of them, even after a failure
+            assertNull(nuxeo.getDocumentCache().get("collection"));
+            assertNull(nuxeo.getDocumentCache().get("a"));
+            assertNull(nuxeo.getDocumentCache().get("c"));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testAddToCollectionFailure() throws Exception {
+        BulkPool pool = new BulkPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            nuxeo.addDocumentsToCollection(new Document("collection", "Collection"),
+                    newDocuments("a", "b", "c", "d"));
+            fail("adding should have failed");
+        } catch (IOException e) {
+            assertEquals("", "chunk failed", e.getMessage());
+            assertEquals("", 2, pool.fRequests.size());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testMoveDocuments() throws Exception {
+        BulkPool pool = new BulkPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Document a = nuxeo.getDocument("a");
+            Document e = nuxeo.getDocument("e");
+            assertSame(a, nuxeo.getDocumentCache().get("a"));
+            pool.fRequests.clear();
+
+            List<Document> documents = new ArrayList<Document>(newDocuments("b", "c", "d"));
+            documents.add(0, a);
+            documents.add(e);
+            BatchResult<Documents> result = nuxeo.moveDocuments(documents, new Document("target", "Folder"));
+
+            // one request per chunk of two, sent concurrently
+            List<String> requests = describeRequests(pool);
+            Collections.sort(requests);
+            assertEquals("", Arrays.asList("Document.Move [a, b] target=target",
+                    "Document.Move [c, d] target=target", "Document.Move [e] target=target"), requests);
+            assertEquals("", Collections.singleton(1), result.getFailures().keySet());
+            assertEquals("", "chunk failed", result.getFailure(1).getMessage());
+            assertEquals("", "[e]", getIds(result.getResult(2)).toString());
+
+            // the paths changed
+            assertNull(nuxeo.getDocumentCache().get("a"));
+            assertNull(nuxeo.getDocumentCache().get("e"));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testMoveNothing() throws Exception {
+        BulkPool pool = new BulkPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            BatchResult<Documents> result = nuxeo.moveDocuments(Collections.<Document> emptyList(),
+                    new Document("target", "Folder"));
+
+            assertEquals("", 0, result.size());
+            assertEquals("", 0, pool.fRequests.size());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static NuxeoUtility newUtility(FakeSessionPool pool) {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.BATCH_SIZE, "2");
+        return new NuxeoUtility("http://localhost/nuxeo/", "user", "password", config, pool);
+    }
+
+    private static List<Document> newDocuments(String... ids) {
+        List<Document> documents = new ArrayList<Document>();
+        for (String id : ids) {
+            documents.add(new Document(id, "File"));
+        }
+        return documents;
+    }
+
+    private static List<String> getIds(Documents documents) {
+        List<String> ids = new ArrayList<String>();
+        for (Document doc : documents) {
+            ids.add(doc.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * @return operation, input documents and parameters of all requests in
+     *  the order they were sent
+     */
+    private static List<String> describeRequests(FakeSessionPool pool) {
+        List<String> requests = new ArrayList<String>();
+        for (FakeRequest request : new ArrayList<FakeRequest>(pool.fRequests)) {
+            StringBuilder description = new StringBuilder(request.operationId);
+            description.append(' ').append(getIds((Documents) request.input));
+            for (Map.Entry<String, Object> parameter : request.parameters.entrySet()) {
+                description.append(' ').append(parameter.getKey()).append('=').append(parameter.getValue());
+            }
+            requests.add(description.toString());
+        }
+        return requests;
+    }
+
+    /**
+     * Fetches documents by ID and answers bulk operations with their
+     * input documents, failing chunks starting with c.
+     */
+    private static class BulkPool extends FakeSessionPool {
+        @Override
+        Object execute(FakeRequest request) throws IOException {
+            if ("Document.Fetch".equals(request.operationId)) {
+                return new Document((String) request.parameters.get("value"), "File");
+            } else if (request.input instanceof Documents) {
+                Documents input = (Documents) request.input;
+                if ("c".equals(input.iterator().next().getId())) {
+                    throw new IOException("chunk failed");
+                }
+                return input;
+            }
+            return super.execute(request);
+        }
+    }
+}
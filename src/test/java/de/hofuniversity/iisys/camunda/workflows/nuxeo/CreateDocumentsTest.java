@@ -0,0 +1,114 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Document;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeRequest;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests creating several documents in one call against a fake session.
+ */
+public class CreateDocumentsTest {
+
+    @Test
+    public void testCreateDocuments() throws Exception {
+        CreatePool pool = new CreatePool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            List<DocumentSpec> specs = Arrays.asList(new DocumentSpec("File", newProperties("one")),
+                    new DocumentSpec("broken", "Folder", newProperties("Broken")),
+                    new DocumentSpec("Folder", newProperties("two")));
+
+            BatchResult<Document> result = nuxeo.createDocuments("parent", specs);
+
+            // one request per document, the failed one does not affect the others
+            assertEquals("", 3, result.size());
+            assertEquals("", "one", result.getResult(0).getId());
+            assertEquals("", "two", result.getResult(2).getId());
+            assertEquals("", Collections.singleton(1), result.getFailures().keySet());
+            assertEquals("", "create failed", result.getFailure(1).getMessage());
+
+            assertEquals("", "[parent: File one dc:title=one, parent: Folder broken dc:title=Broken, "
+                    + "parent: Folder two dc:title=two]", describeCreates(pool).toString());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testCreateInDocument() throws Exception {
+        CreatePool pool = new CreatePool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Document parent = new Document("parent", "Folder");
+
+            BatchResult<Document> result = nuxeo.createDocuments(parent,
+                    Collections.singletonList(new DocumentSpec("File", newProperties("one"))));
+
+            assertEquals("", 1, result.size());
+            assertEquals("", "one", result.getResult(0).getId());
+            // the parent is passed as it is, without reading it again
+            assertEquals("", 1, pool.fRequests.size());
+            assertSame(parent, pool.fRequests.get(0).input);
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static NuxeoUtility newUtility(FakeSessionPool pool) {
+        return new NuxeoUtility("http://localhost/nuxeo/", "user", "password", new HashMap<String, String>(),
+                pool);
+    }
+
+    private static Properties newProperties(String title) {
+        Properties properties = new Properties();
+        properties.setProperty("dc:title", title);
+        return properties;
+    }
+
+    /**
+     * @return parent, type, name and properties of all create requests,
+     *  sorted since documents are created concurrently
+     */
+    private static List<String> describeCreates(FakeSessionPool pool) {
+        List<String> creates = new ArrayList<String>();
+        for (FakeRequest request : new ArrayList<FakeRequest>(pool.fRequests)) {
+            assertEquals("", "Document.Create", request.operationId);
+            Properties properties = (Properties) request.parameters.get("properties");
+            creates.add(request.input + ": " + request.parameters.get("type") + " "
+                    + request.parameters.get("name") + " dc:title=" + properties.getProperty("dc:title"));
+        }
+        Collections.sort(creates);
+        return creates;
+    }
+
+    /**
+     * Creates documents with their name as ID, failing for the name
+     * "broken".
+     */
+    private static class CreatePool extends FakeSessionPool {
+        @Override
+        Object execute(FakeRequest request) throws IOException {
+            if ("Document.Create".equals(request.operationId)) {
+                String name = (String) request.parameters.get("name");
+                if ("broken".equals(name)) {
+                    throw new IOException("create failed");
+                }
+                return new Document(name, (String) request.parameters.get("type"));
+            }
+            return super.execute(request);
+        }
+    }
+}
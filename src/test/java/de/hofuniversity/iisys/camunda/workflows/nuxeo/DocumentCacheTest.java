@@ -0,0 +1,61 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the document cache without a Nuxeo instance.
+ */
+public class DocumentCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        DocumentCache<String> cache = new DocumentCache<String>(10, 0);
+        assertNull(cache.get("a"));
+
+        cache.put("a", "value", "v1");
+        assertEquals("", "value", cache.get("a"));
+        assertEquals("", 1, cache.getHits());
+        assertEquals("", 1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        DocumentCache<String> cache = new DocumentCache<String>(2, 0);
+        cache.put("a", "1", null);
+        cache.put("b", "2", null);
+
+        // touch a, so b is the eldest entry
+        cache.get("a");
+        cache.put("c", "3", null);
+
+        assertEquals("", 2, cache.size());
+        assertEquals("", 1, cache.getEvictions());
+        assertNull(cache.get("b"));
+        assertEquals("", "1", cache.get("a"));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        DocumentCache<String> cache = new DocumentCache<String>(10, 20);
+        cache.put("a", "1", null);
+        Thread.sleep(50);
+
+        assertNull(cache.get("a"));
+        assertEquals("", 0, cache.size());
+    }
+
+    @Test
+    public void testInvalidateIfModified() {
+        DocumentCache<String> cache = new DocumentCache<String>(10, 0);
+        cache.put("a", "1", "2016-01-01T00:00:00.00Z");
+
+        assertFalse(cache.invalidateIfModified("a", "2016-01-01T00:00:00.00Z"));
+        assertTrue(cache.invalidateIfModified("a", "2016-01-02T00:00:00.00Z"));
+        assertNull(cache.get("a"));
+    }
+}
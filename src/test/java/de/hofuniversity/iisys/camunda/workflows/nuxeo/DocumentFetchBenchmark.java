@@ -0,0 +1,82 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Latency benchmark for reading single documents, run manually via main()
+ * against a local Nuxeo instance. Compares the direct Document.Fetch
+ * lookup of {@link NuxeoUtility#getDocument(String, String)} with the
+ * former NXQL query by ecm:uuid, both bypassing the cache.
+ * Arguments: [URL [user password [documents]]]
+ */
+public class DocumentFetchBenchmark {
+    private static final String URL = "http://127.0.0.1:8080/nuxeo/";
+
+    private static final int DOCUMENTS = 200;
+    private static final int WARMUP_RUNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : URL;
+        String user = args.length > 2 ? args[1] : "demo";
+        String password = args.length > 2 ? args[2] : "secret";
+        int count = args.length > 3 ? Integer.parseInt(args[3]) : DOCUMENTS;
+
+        NuxeoUtility nuxeo = new NuxeoUtility(url, user, password);
+        try {
+            List<String> ids = nuxeo.getAllDocumentIds();
+            ids = ids.subList(0, Math.min(count, ids.size()));
+            System.out.println(ids.size() + " documents");
+
+            for (String schemas : new String[] { NuxeoUtility.SCHEMAS_ALL, NuxeoUtility.SCHEMAS_DUBLINCORE }) {
+                for (int i = 0; i < WARMUP_RUNS; ++i) {
+                    measure(nuxeo, ids, schemas, true);
+                    measure(nuxeo, ids, schemas, false);
+                }
+
+                print("fetch, " + schemas, measure(nuxeo, ids, schemas, true));
+                print("query, " + schemas, measure(nuxeo, ids, schemas, false));
+            }
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static long[] measure(NuxeoUtility nuxeo, List<String> ids, String schemas, boolean fetch)
+        throws Exception {
+        List<Long> times = new ArrayList<Long>(ids.size());
+
+        for (String id : ids) {
+            long start = System.nanoTime();
+            if (fetch) {
+                nuxeo.fetchDocument(id, schemas);
+            } else {
+                nuxeo.queryDocument(id, schemas);
+            }
+            times.add(System.nanoTime() - start);
+        }
+
+        long[] sorted = new long[times.size()];
+        for (int i = 0; i < sorted.length; ++i) {
+            sorted[i] = times.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void print(String label, long[] times) {
+        if (times.length == 0) {
+            return;
+        }
+
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+
+        System.out.printf("%-20s mean %8.3f ms, median %8.3f ms, p95 %8.3f ms%n", label,
+            total / 1e6 / times.length, times[times.length / 2] / 1e6,
+            times[(int) (times.length * 0.95)] / 1e6);
+    }
+}
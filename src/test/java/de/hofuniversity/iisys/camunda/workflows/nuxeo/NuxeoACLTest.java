@@ -0,0 +1,72 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing ACLs as returned by Nuxeo's "@acl" REST adapter.
+ */
+public class NuxeoACLTest {
+
+    private static final String ACLS = "{\"entity-type\":\"acls\",\"acl\":["
+        + "{\"name\":\"local\",\"ace\":["
+        + "{\"username\":\"jdoe\",\"permission\":\"ReadWrite\",\"granted\":true,"
+        + "\"creator\":\"Administrator\",\"begin\":\"2016-01-01T00:00:00.000Z\","
+        + "\"end\":null,\"status\":\"effective\"},"
+        + "{\"username\":\"guests\",\"permission\":\"Read\",\"granted\":false,"
+        + "\"status\":\"pending\"}]},"
+        + "{\"name\":\"inherited\",\"ace\":["
+        + "{\"username\":\"Administrator\",\"permission\":\"Everything\",\"granted\":true}]}]}";
+
+    @Test
+    public void testParse() throws Exception {
+        List<NuxeoACL> acls = NuxeoACL.parse(new StringReader(ACLS));
+        assertEquals("", 2, acls.size());
+
+        NuxeoACL local = acls.get(0);
+        assertEquals("", "local", local.getName());
+        assertEquals("", 2, local.getEntries().size());
+
+        NuxeoACE ace = local.getEntries().get(0);
+        assertEquals("", "jdoe", ace.getUsername());
+        assertEquals("", "ReadWrite", ace.getPermission());
+        assertTrue(ace.isGranted());
+        assertEquals("", "Administrator", ace.getCreator());
+        assertEquals("", "2016-01-01T00:00:00.000Z", ace.getBegin());
+        assertNull(ace.getEnd());
+        assertTrue(ace.isEffective());
+
+        ace = local.getEntries().get(1);
+        assertFalse(ace.isGranted());
+        assertFalse(ace.isEffective());
+
+        // servers without ACE status support
+        ace = acls.get(1).getEntries().get(0);
+        assertEquals("", "inherited", acls.get(1).getName());
+        assertNull(ace.getStatus());
+        assertTrue(ace.isEffective());
+    }
+
+    @Test
+    public void testParseEmpty() throws Exception {
+        assertTrue(NuxeoACL.parse(new StringReader("{\"entity-type\":\"acls\",\"acl\":[]}")).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseInvalid() throws Exception {
+        NuxeoACL.parse(new StringReader("[\"acl\"]"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() throws Exception {
+        NuxeoACL.parse(new StringReader(ACLS)).get(0).getEntries().clear();
+    }
+}
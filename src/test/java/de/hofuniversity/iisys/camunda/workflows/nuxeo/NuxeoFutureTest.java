@@ -0,0 +1,110 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests callback notification of futures without a Nuxeo instance.
+ */
+public class NuxeoFutureTest {
+
+    private static class Recorder implements NuxeoCallback<String> {
+        private final AtomicReference<String> result = new AtomicReference<String>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        @Override
+        public void onSuccess(String value) {
+            result.set(value);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            failure.set(t);
+        }
+    }
+
+    private static NuxeoFuture<String> future(final String value) {
+        return new NuxeoFuture<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (value == null) {
+                    throw new IOException("failed");
+                }
+                return value;
+            }
+        });
+    }
+
+    @Test
+    public void testCallbackBeforeCompletion() {
+        NuxeoFuture<String> future = future("doc");
+        Recorder recorder = new Recorder();
+
+        future.addCallback(recorder);
+        assertNull(recorder.result.get());
+
+        future.run();
+        assertEquals("", "doc", recorder.result.get());
+        assertNull(recorder.failure.get());
+    }
+
+    @Test
+    public void testCallbackAfterCompletion() {
+        NuxeoFuture<String> future = future("doc");
+        future.run();
+
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder);
+        assertEquals("", "doc", recorder.result.get());
+    }
+
+    @Test
+    public void testFailure() {
+        NuxeoFuture<String> future = future(null);
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder);
+
+        future.run();
+        assertNull(recorder.result.get());
+        assertTrue(recorder.failure.get() instanceof IOException);
+    }
+
+    @Test
+    public void testCancellation() {
+        NuxeoFuture<String> future = future("doc");
+        Recorder recorder = new Recorder();
+        future.addCallback(recorder);
+
+        future.cancel(false);
+        assertTrue(recorder.failure.get() instanceof CancellationException);
+    }
+
+    @Test
+    public void testFailingCallback() {
+        NuxeoFuture<String> future = future("doc");
+        Recorder recorder = new Recorder();
+
+        future.addCallback(new NuxeoCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                throw new IllegalStateException("callback failed");
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+            }
+        });
+        future.addCallback(recorder);
+
+        future.run();
+        assertEquals("", "doc", recorder.result.get());
+    }
+}
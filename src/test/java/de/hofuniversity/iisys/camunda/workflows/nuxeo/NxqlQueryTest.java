@@ -0,0 +1,75 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests building NXQL from templates without a Nuxeo instance.
+ */
+public class NxqlQueryTest {
+
+    @Test
+    public void testBind() {
+        NxqlQuery query = NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid = ? AND ecm:isVersion = ?");
+        assertEquals("", 2, query.getParameterCount());
+        assertEquals("", "SELECT * FROM Document WHERE ecm:uuid = 'abc' AND ecm:isVersion = 0",
+            query.bind("abc", false));
+    }
+
+    @Test
+    public void testEscape() {
+        NxqlQuery query = NxqlQuery.of("SELECT * FROM Document WHERE dc:title = ?");
+        assertEquals("", "SELECT * FROM Document WHERE dc:title = 'x\\' OR \\'1\\' = \\'1\\\\'",
+            query.bind("x' OR '1' = '1\\"));
+    }
+
+    @Test
+    public void testPlaceholderInLiteral() {
+        NxqlQuery query = NxqlQuery.of("SELECT * FROM Document WHERE dc:title = 'why?' "
+            + "AND dc:description = \"it\\\"s?\" AND ecm:uuid = ?");
+        assertEquals("", 1, query.getParameterCount());
+        assertEquals("", "SELECT * FROM Document WHERE dc:title = 'why?' "
+            + "AND dc:description = \"it\\\"s?\" AND ecm:uuid = 'abc'", query.bind("abc"));
+    }
+
+    @Test
+    public void testList() {
+        NxqlQuery query = NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid IN ?");
+        assertEquals("", "SELECT * FROM Document WHERE ecm:uuid IN ('a', 'b', 'c')",
+            query.bind(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testDate() {
+        NxqlQuery query = NxqlQuery.of("SELECT * FROM Document WHERE dc:modified >= ?");
+        assertEquals("", "SELECT * FROM Document WHERE dc:modified >= TIMESTAMP '1970-01-01T00:00:01.500Z'",
+            query.bind(new Date(1500)));
+    }
+
+    @Test
+    public void testCached() {
+        assertSame(NxqlQuery.of("SELECT * FROM Note WHERE ecm:uuid = ?"),
+            NxqlQuery.of("SELECT * FROM Note WHERE ecm:uuid = ?"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongParameterCount() {
+        NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid = ?").bind("a", "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyList() {
+        NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid IN ?").bind(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNull() {
+        NxqlQuery.of("SELECT * FROM Document WHERE ecm:uuid = ?").bind((Object) null);
+    }
+}
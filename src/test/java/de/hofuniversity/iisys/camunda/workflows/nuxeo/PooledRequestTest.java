@@ -0,0 +1,280 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.OperationRequest;
+import org.nuxeo.ecm.automation.client.Session;
+import org.nuxeo.ecm.automation.client.model.Blob;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.FileBlob;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+/**
+ * Tests that requests give their pooled session back, using a pool of a
+ * single fake session. A leaked session makes the next request time out.
+ */
+public class PooledRequestTest {
+
+    @Test
+    public void testRejectedParameter() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password",
+                new HashMap<String, String>(), pool);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                try {
+                    nuxeo.startWorkflow(new Document("doc", "File"),
+                            Collections.<String, Object> singletonMap(FakeSessionPool.INVALID, "value"));
+                    fail("no exception");
+                } catch (IllegalArgumentException e) {
+                    // rejected by the operation
+                }
+            }
+
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+            assertEquals("", 1, pool.fOpened.get());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingParameters() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password",
+                new HashMap<String, String>(), pool);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                try {
+                    nuxeo.completeTask(new Document("task", "TaskDoc"), null);
+                    fail("no exception");
+                } catch (NullPointerException e) {
+                    // no parameters
+                }
+            }
+
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password",
+                new HashMap<String, String>(), pool);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                try {
+                    nuxeo.unlockDocument(new Document("doc", "File"));
+                    fail("no exception");
+                } catch (IOException e) {
+                    assertEquals("", "Document.Unlock failed", e.getMessage());
+                }
+            }
+
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+            assertEquals("", 1, pool.fExecuted.get("Document.Lock").get());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testBorrowedSession() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password",
+                new HashMap<String, String>(), pool);
+        try {
+            Session session = nuxeo.borrowSession();
+            try {
+                nuxeo.lockDocument(new Document("doc", "File"));
+                fail("no exception");
+            } catch (IOException e) {
+                // the only session is reserved
+            } finally {
+                nuxeo.releaseSession(session);
+            }
+
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedSession() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password",
+                new HashMap<String, String>(), pool);
+        try {
+            // never given back, as by callers written against the unpooled session
+            Session session = nuxeo.getSession();
+            for (int i = 0; i < 10; ++i) {
+                assertSame(session, nuxeo.getSession());
+            }
+
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+            assertEquals("", 2, pool.fOpened.get());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testCachedRender() throws Exception {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.BLOB_CACHE_SIZE, "100000");
+        config.put(NuxeoConfig.BLOB_CACHE_DIR, Files.createTempDirectory("render").toString());
+
+        FakeSessionPool pool = new FakeSessionPool();
+        NuxeoUtility nuxeo = new NuxeoUtility("http://localhost/nuxeo/", "user", "password", config, pool);
+        try {
+            PropertyMap properties = new PropertyMap();
+            properties.set("dc:modified", new Date(1000000));
+            Document doc = new Document("doc", "File", null, null, "/doc", null, null, null, null, null, null,
+                    properties, null);
+
+            for (int i = 0; i < 5; ++i) {
+                Blob blob = nuxeo.renderDocument(doc, "template", "output.txt", "text/plain", "ftl");
+                try (InputStream in = blob.getStream()) {
+                    assertEquals("", 'r', in.read());
+                }
+            }
+
+            // rendered once, the cache hits do not borrow a session
+            assertEquals("", 1, pool.fExecuted.get("Render.Document").get());
+            assertNotNull(nuxeo.lockDocument(new Document("doc", "File")));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    /**
+     * Request executed on a fake session.
+     */
+    static class FakeRequest {
+        final String operationId;
+        final Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        Object input;
+
+        FakeRequest(String operationId) {
+            this.operationId = operationId;
+        }
+
+        @Override
+        public String toString() {
+            return operationId + " " + input + " " + parameters;
+        }
+    }
+
+    /**
+     * Pool of at most one fake session, answering every operation with a
+     * document, except for rendering, which returns a file, and unlocking,
+     * which fails. Executed requests are recorded in order.
+     */
+    static class FakeSessionPool extends SessionPool {
+        static final String INVALID = "invalid";
+
+        final AtomicInteger fOpened = new AtomicInteger();
+        final ConcurrentMap<String, AtomicInteger> fExecuted = new ConcurrentHashMap<String, AtomicInteger>();
+        final List<FakeRequest> fRequests = Collections.synchronizedList(new ArrayList<FakeRequest>());
+
+        FakeSessionPool() {
+            this(0);
+        }
+
+        FakeSessionPool(int minSize) {
+            super("http://localhost/nuxeo/site/automation", "user", "password", minSize, 1, 60000, 100);
+        }
+
+        @Override
+        Session openSession() {
+            fOpened.incrementAndGet();
+            return proxy(Session.class, null);
+        }
+
+        /**
+         * @param request executed request
+         * @return the result of the operation
+         * @throws IOException if the operation fails
+         */
+        Object execute(FakeRequest request) throws IOException {
+            String operationId = request.operationId;
+            if ("Document.Unlock".equals(operationId)) {
+                throw new IOException(operationId + " failed");
+            } else if ("Render.Document".equals(operationId)) {
+                Path file = Files.createTempFile("rendered", ".txt");
+                file.toFile().deleteOnExit();
+                Files.write(file, "rendered".getBytes(StandardCharsets.UTF_8));
+                return new FileBlob(file.toFile());
+            }
+            return new Document("doc", "File");
+        }
+
+        private <T> T proxy(Class<T> type, final FakeRequest request) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            return handle(proxy, method, args, request);
+                        }
+                    }));
+        }
+
+        private Object handle(Object proxy, Method method, Object[] args, FakeRequest request) throws Throwable {
+            String name = method.getName();
+            if ("newRequest".equals(name)) {
+                return proxy(OperationRequest.class, new FakeRequest((String) args[0]));
+            } else if ("set".equals(name) && INVALID.equals(args[0])) {
+                throw new IllegalArgumentException("no parameter " + args[0] + " for " + request.operationId);
+            } else if ("set".equals(name)) {
+                request.parameters.put((String) args[0], args[1]);
+                return proxy;
+            } else if ("setInput".equals(name)) {
+                request.input = args[0];
+                return proxy;
+            } else if ("setHeader".equals(name)) {
+                return proxy;
+            } else if ("execute".equals(name)) {
+                fExecuted.putIfAbsent(request.operationId, new AtomicInteger());
+                fExecuted.get(request.operationId).incrementAndGet();
+                fRequests.add(request);
+                return execute(request);
+            } else if ("close".equals(name) || "getClient".equals(name)) {
+                return null;
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("toString".equals(name)) {
+                return "fake session";
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+/**
+ * Tests converting and diffing property changes for bulk updates.
+ */
+public class PropertyUpdatesTest {
+
+    @Test
+    public void testToStrings() {
+        Map<String, Object> delta = new HashMap<String, Object>();
+        delta.put("taskId", "0da81b8a");
+        delta.put("dc:expired", new Date(0));
+        delta.put("dc:subjects", Arrays.asList("art", "science"));
+        delta.put("dc:description", null);
+
+        Map<String, String> strings = PropertyUpdates.toStrings(delta);
+        assertEquals("", "0da81b8a", strings.get("taskId"));
+        assertEquals("", "1970-01-01T00:00:00.000Z", strings.get("dc:expired"));
+        assertEquals("", "art,science", strings.get("dc:subjects"));
+        assertEquals("", "", strings.get("dc:description"));
+    }
+
+    @Test
+    public void testDiff() {
+        PropertyMap current = new PropertyMap();
+        current.set("workflowId", "df7542fa");
+        current.set("taskId", "0da81b8a");
+
+        Map<String, Object> delta = new HashMap<String, Object>();
+        delta.put("workflowId", "df7542fa");
+        delta.put("taskId", "1eb92c9b");
+        delta.put("dc:description", "");
+
+        Map<String, String> changed = PropertyUpdates.diff(PropertyUpdates.toStrings(delta),
+                PropertyUpdates.snapshot(current));
+        assertEquals("", 1, changed.size());
+        assertEquals("", "1eb92c9b", changed.get("taskId"));
+    }
+
+    @Test
+    public void testDiffUnknown() {
+        Map<String, String> delta = PropertyUpdates.toStrings(new HashMap<String, Object>());
+        assertSame(delta, PropertyUpdates.diff(delta, null));
+        assertTrue(PropertyUpdates.diff(delta, PropertyUpdates.snapshot(new PropertyMap())).isEmpty());
+    }
+
+    @Test
+    public void testSnapshot() {
+        PropertyMap current = new PropertyMap();
+        current.set("workflowId", "df7542fa");
+        Map<String, String> snapshot = PropertyUpdates.snapshot(current);
+
+        // changed locally without being updated
+        current.set("workflowId", "1eb92c9b");
+
+        Map<String, Object> delta = new HashMap<String, Object>();
+        delta.put("workflowId", "1eb92c9b");
+        assertEquals("", 1, PropertyUpdates.diff(PropertyUpdates.toStrings(delta), snapshot).size());
+    }
+}
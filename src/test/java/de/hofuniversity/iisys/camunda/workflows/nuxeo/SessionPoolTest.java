@@ -0,0 +1,69 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.Session;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests the session pool with fake sessions.
+ */
+public class SessionPoolTest {
+
+    @Test
+    public void testFailedWarmUp() throws Exception {
+        // the first session can not be opened
+        FakeSessionPool pool = new FakeSessionPool(1) {
+            @Override
+            Session openSession() {
+                if (fOpened.get() == 0) {
+                    fOpened.incrementAndGet();
+                    throw new IllegalStateException("connection refused");
+                }
+                return super.openSession();
+            }
+        };
+        try {
+            try {
+                pool.warmUp();
+                fail("no exception");
+            } catch (IllegalStateException e) {
+                // not opened
+            }
+
+            // the only slot of the pool is free again
+            Session session = pool.borrow();
+            assertNotNull(session);
+            assertEquals("", 2, pool.fOpened.get());
+            pool.release(session);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testExhausted() throws Exception {
+        FakeSessionPool pool = new FakeSessionPool();
+        try {
+            Session session = pool.borrow();
+            try {
+                pool.borrow();
+                fail("no exception");
+            } catch (IOException e) {
+                // timed out
+            }
+
+            pool.release(session);
+            pool.release(pool.borrow());
+            assertEquals("", 1, pool.fOpened.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
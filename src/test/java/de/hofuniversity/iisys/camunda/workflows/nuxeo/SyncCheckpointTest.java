@@ -0,0 +1,49 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ * Tests persisting and comparing change sync checkpoints.
+ */
+public class SyncCheckpointTest {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Path file = Files.createTempDirectory("sync").resolve("checkpoint.properties");
+        assertSame(SyncCheckpoint.START, SyncCheckpoint.load(file));
+
+        new SyncCheckpoint(1500, "0da81b8a").save(file);
+        assertEquals("", new SyncCheckpoint(1500, "0da81b8a"), SyncCheckpoint.load(file));
+
+        new SyncCheckpoint(2500, "df7542fa").save(file);
+        assertEquals("", new SyncCheckpoint(2500, "df7542fa"), SyncCheckpoint.load(file));
+        assertFalse(Files.exists(file.resolveSibling("checkpoint.properties.tmp")));
+    }
+
+    @Test
+    public void testIsBefore() {
+        SyncCheckpoint checkpoint = new SyncCheckpoint(1500, "b");
+        assertTrue(checkpoint.isBefore(1501, "a"));
+        assertTrue(checkpoint.isBefore(1500, "c"));
+        assertFalse(checkpoint.isBefore(1500, "b"));
+        assertFalse(checkpoint.isBefore(1500, "a"));
+        assertFalse(checkpoint.isBefore(1499, "c"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalid() throws Exception {
+        Path file = Files.createTempFile("checkpoint", ".properties");
+        Files.write(file, "timestamp=yesterday".getBytes(StandardCharsets.ISO_8859_1));
+        SyncCheckpoint.load(file);
+    }
+}
@@ -0,0 +1,172 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.DocRef;
+import org.nuxeo.ecm.automation.client.model.DocRefs;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeRequest;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests diffing, grouping and chunking of bulk property updates against a
+ * fake session.
+ */
+public class UpdateDocumentsTest {
+
+    @Test
+    public void testUpdateDocuments() throws Exception {
+        DocumentPool pool = new DocumentPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Document a = nuxeo.getDocument("a");
+            Document b = nuxeo.getDocument("b");
+
+            // changed locally, as by callers before updating
+            a.set("workflowId", "w2");
+
+            Map<String, Map<String, Object>> changes = new LinkedHashMap<String, Map<String, Object>>();
+            changes.put("a", Collections.<String, Object> singletonMap("workflowId", "w2"));
+            changes.put("b", Collections.<String, Object> singletonMap("workflowId", "w1"));
+            changes.put("c", Collections.<String, Object> singletonMap("workflowId", "w2"));
+            changes.put("d", Collections.<String, Object> singletonMap("workflowId", "w2"));
+            changes.put("e", Collections.<String, Object> singletonMap("taskId", "t1"));
+
+            BatchResult<Document> result = nuxeo.updateDocuments(changes);
+
+            assertTrue(result.isSuccess());
+            assertEquals("", 5, result.size());
+            // unchanged, not requested again
+            assertSame(b, result.getResult(1));
+            // one request per chunk of two documents with the same changes
+            assertEquals("", "[[a, c] workflowId=w2, [d] workflowId=w2, [e] taskId=t1]",
+                    describeUpdates(pool, 2).toString());
+            assertEquals("", "a", result.getResult(0).getId());
+            assertEquals("", "e", result.getResult(4).getId());
+
+            assertNull(nuxeo.getDocumentCache().get("a"));
+            assertSame(b, nuxeo.getDocumentCache().get("b"));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testUncachedDocuments() throws Exception {
+        DocumentPool pool = new DocumentPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            Map<String, Map<String, Object>> changes = new LinkedHashMap<String, Map<String, Object>>();
+            changes.put("a", Collections.<String, Object> singletonMap("workflowId", "w1"));
+
+            // the current value is unknown, so it is sent
+            assertTrue(nuxeo.updateDocuments(changes).isSuccess());
+            assertEquals("", "[[a] workflowId=w1]", describeUpdates(pool, 0).toString());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedChunk() throws Exception {
+        NuxeoUtility nuxeo = newUtility(new DocumentPool() {
+            @Override
+            Object execute(FakeRequest request) throws IOException {
+                if ("Document.Update".equals(request.operationId) && ((DocRefs) request.input).size() == 1) {
+                    throw new IOException("update failed");
+                }
+                return super.execute(request);
+            }
+        });
+        try {
+            Map<String, Map<String, Object>> changes = new LinkedHashMap<String, Map<String, Object>>();
+            changes.put("a", Collections.<String, Object> singletonMap("workflowId", "w1"));
+            changes.put("b", Collections.<String, Object> singletonMap("workflowId", "w1"));
+            changes.put("c", Collections.<String, Object> singletonMap("workflowId", "w1"));
+
+            BatchResult<Document> result = nuxeo.updateDocuments(changes);
+
+            // only the documents of the failed chunk fail
+            assertEquals("", Collections.singleton(2), result.getFailures().keySet());
+            assertEquals("", "update failed", result.getFailure(2).getMessage());
+            assertEquals("", "b", result.getResult(1).getId());
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static NuxeoUtility newUtility(FakeSessionPool pool) {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.BATCH_SIZE, "2");
+        return new NuxeoUtility("http://localhost/nuxeo/", "user", "password", config, pool);
+    }
+
+    /**
+     * @return the documents and properties of all update requests, sorted
+     *  since chunks are sent concurrently
+     */
+    private static List<String> describeUpdates(FakeSessionPool pool, int fetched) {
+        List<FakeRequest> requests = new ArrayList<FakeRequest>(pool.fRequests);
+        List<String> updates = new ArrayList<String>();
+        for (FakeRequest request : requests) {
+            if (!"Document.Update".equals(request.operationId)) {
+                continue;
+            }
+            PropertyMap properties = (PropertyMap) request.parameters.get("properties");
+            StringBuilder update = new StringBuilder(request.input.toString());
+            for (String key : properties.getKeys()) {
+                update.append(' ').append(key).append('=').append(properties.getString(key));
+            }
+            updates.add(update.toString());
+        }
+        assertEquals("", fetched + updates.size(), requests.size());
+        Collections.sort(updates);
+        return updates;
+    }
+
+    /**
+     * Fetches documents with a workflow ID and answers updates with the
+     * updated documents.
+     */
+    private static class DocumentPool extends FakeSessionPool {
+        @Override
+        Object execute(FakeRequest request) throws IOException {
+            if ("Document.Fetch".equals(request.operationId)) {
+                return newDocument((String) request.parameters.get("value"), "w1");
+            } else if ("Document.Update".equals(request.operationId)) {
+                Documents docs = new Documents();
+                for (DocRef ref : (DocRefs) request.input) {
+                    docs.add(newDocument(ref.toString(), null));
+                }
+                return docs;
+            }
+            return super.execute(request);
+        }
+
+        private static Document newDocument(String id, String workflowId) {
+            PropertyMap properties = new PropertyMap();
+            properties.set("dc:modified", new Date(1000000));
+            if (workflowId != null) {
+                properties.set("workflowId", workflowId);
+            }
+            return new Document(id, "File", null, null, "/" + id, null, null, null, null, null, null, properties,
+                    null);
+        }
+    }
+}
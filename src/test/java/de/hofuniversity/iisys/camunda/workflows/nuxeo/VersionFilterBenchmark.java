@@ -0,0 +1,80 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Microbenchmark for filtering version IDs out of a document ID list, run
+ * manually via main(). Compares {@link NuxeoUtility#filterVersionIds(List, java.util.Collection)}
+ * with the former LinkedList.remove approach, which is skipped for 1M IDs
+ * because of its quadratic run time.
+ */
+public class VersionFilterBenchmark {
+    private static final int[] SIZES = { 10000, 100000, 1000000 };
+    private static final int LEGACY_LIMIT = 100000;
+
+    // every fourth document is a version of its predecessor
+    private static final int VERSION_RATIO = 4;
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            List<String> ids = new ArrayList<String>(size);
+            List<List<String>> versions = new ArrayList<List<String>>();
+            for (int i = 0; i < size; ++i) {
+                String id = UUID.randomUUID().toString();
+                ids.add(id);
+                if (i % VERSION_RATIO == 0) {
+                    List<String> idList = new ArrayList<String>();
+                    idList.add(id);
+                    versions.add(idList);
+                }
+            }
+
+            long hashed = measure(ids, versions, false);
+            System.out.printf("%8d IDs, hash set:    %10.3f ms%n", size, hashed / 1e6);
+
+            if (size <= LEGACY_LIMIT) {
+                long legacy = measure(ids, versions, true);
+                System.out.printf("%8d IDs, linked list: %10.3f ms%n", size, legacy / 1e6);
+            }
+        }
+    }
+
+    private static long measure(List<String> ids, List<List<String>> versions, boolean legacy) {
+        int checksum = 0;
+        for (int i = 0; i < WARMUP_RUNS; ++i) {
+            checksum += run(ids, versions, legacy);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) {
+            checksum += run(ids, versions, legacy);
+        }
+        long time = (System.nanoTime() - start) / RUNS;
+
+        // keep the JIT from removing the work
+        if (checksum == 42) {
+            System.out.println();
+        }
+        return time;
+    }
+
+    private static int run(List<String> ids, List<List<String>> versions, boolean legacy) {
+        if (!legacy) {
+            return NuxeoUtility.filterVersionIds(ids, versions).size();
+        }
+
+        List<String> filtered = new LinkedList<String>(ids);
+        for (List<String> idList : versions) {
+            for (String subId : idList) {
+                filtered.remove(subId);
+            }
+        }
+        return filtered.size();
+    }
+}
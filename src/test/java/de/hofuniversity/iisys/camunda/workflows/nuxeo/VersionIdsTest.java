@@ -0,0 +1,109 @@
+package de.hofuniversity.iisys.camunda.workflows.nuxeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.nuxeo.ecm.automation.client.model.Document;
+import org.nuxeo.ecm.automation.client.model.Documents;
+import org.nuxeo.ecm.automation.client.model.PropertyMap;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeRequest;
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.PooledRequestTest.FakeSessionPool;
+
+/**
+ * Tests the version queries of getAllDocumentIds against a fake session.
+ */
+public class VersionIdsTest {
+
+    @Test
+    public void testAllDocumentIds() throws Exception {
+        RepositoryPool pool = new RepositoryPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            assertEquals("", Arrays.asList("a", "b", "c"), nuxeo.getAllDocumentIds());
+
+            // the versions of all files with one query, independent of the number of documents
+            List<String> queries = getVersionQueries(pool);
+            assertEquals("", 1, queries.size());
+            assertFalse(queries.get(0).contains(" IN "));
+            assertEquals("", Arrays.asList("v1"), nuxeo.getVersionCache().get("a"));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    @Test
+    public void testDocumentIdsInWindow() throws Exception {
+        RepositoryPool pool = new RepositoryPool();
+        NuxeoUtility nuxeo = newUtility(pool);
+        try {
+            assertEquals("", Arrays.asList("a", "b", "c"), nuxeo.getAllDocumentIds(0, Long.MAX_VALUE));
+
+            // only the versions of the found documents, one query per chunk of two
+            List<String> queries = getVersionQueries(pool);
+            assertEquals("", 2, queries.size());
+            assertTrue(queries.get(0).contains("ecm:versionVersionableId IN ('a', 'v1')"));
+            assertTrue(queries.get(1).contains("ecm:versionVersionableId IN ('b', 'c')"));
+        } finally {
+            nuxeo.shutdown();
+        }
+    }
+
+    private static NuxeoUtility newUtility(FakeSessionPool pool) {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.BATCH_SIZE, "2");
+        config.put(NuxeoConfig.QUERY_PAGE_SIZE, "2");
+        return new NuxeoUtility("http://localhost/nuxeo/", "user", "password", config, pool);
+    }
+
+    private static List<String> getVersionQueries(FakeSessionPool pool) {
+        List<String> queries = new ArrayList<String>();
+        for (FakeRequest request : new ArrayList<FakeRequest>(pool.fRequests)) {
+            if ("Resultset.PageProvider".equals(request.operationId)) {
+                queries.add((String) request.parameters.get("query"));
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Repository of the files a, b and c, where v1 is a version of a.
+     */
+    private static class RepositoryPool extends FakeSessionPool {
+        private static final List<String> FILES = Arrays.asList("a", "v1", "b", "c");
+
+        @Override
+        Object execute(FakeRequest request) throws IOException {
+            if ("Document.Query".equals(request.operationId)) {
+                int pageSize = (Integer) request.parameters.get("pageSize");
+                int start = Math.min(FILES.size(), (Integer) request.parameters.get("currentPageIndex") * pageSize);
+                Documents docs = new Documents();
+                for (String id : FILES.subList(start, Math.min(start + pageSize, FILES.size()))) {
+                    docs.add(new Document(id, "File", null, null, "/" + id, null, null, null, null, null, null,
+                            new PropertyMap(), null));
+                }
+                return docs;
+            } else if ("Resultset.PageProvider".equals(request.operationId)) {
+                String query = (String) request.parameters.get("query");
+                if (!query.contains(" IN ") || query.contains("'a'")) {
+                    Map<String, Object> row = new HashMap<String, Object>();
+                    row.put("ecm:uuid", "v1");
+                    row.put("ecm:versionVersionableId", "a");
+                    return Collections.singletonList(row);
+                }
+                return Collections.emptyList();
+            }
+            return super.execute(request);
+        }
+    }
+}
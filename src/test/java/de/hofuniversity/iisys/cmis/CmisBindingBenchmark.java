@@ -0,0 +1,257 @@
+package de.hofuniversity.iisys.cmis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.NuxeoConfig;
+
+/**
+ * Compares the CMIS bindings, run manually via main() against a local repository, e.g. Nuxeo or the OpenCMIS
+ * InMemory server (http://127.0.0.1:8080/inmemory/atom11 and .../browser, repository A1). Each binding is
+ * connected through a local relay counting the bytes on the wire, uncompressed and with caching disabled. Reports
+ * round-trip latency, bytes per request and the client's CPU time, mostly spent parsing the responses.
+ * Arguments: [AtomPub URL browser URL [user password [repository [documents]]]]
+ */
+public class CmisBindingBenchmark {
+    private static final String ATOMPUB_URL = "http://127.0.0.1:8080/nuxeo/atom/cmis";
+    private static final String BROWSER_URL = "http://127.0.0.1:8080/nuxeo/json/cmis";
+
+    private static final String QUERY = "SELECT cmis:objectId, cmis:name FROM cmis:document";
+
+    private static final int DOCUMENTS = 200;
+    private static final int PAGE_SIZE = 100;
+    private static final int WARMUP_RUNS = 2;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String atompubUrl = args.length > 1 ? args[0] : ATOMPUB_URL;
+        String browserUrl = args.length > 1 ? args[1] : BROWSER_URL;
+        String user = args.length > 3 ? args[2] : "demo";
+        String password = args.length > 3 ? args[3] : "secret";
+        String repository = args.length > 4 ? args[4] : "default";
+        int count = args.length > 5 ? Integer.parseInt(args[5]) : DOCUMENTS;
+
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.CMIS_HTTP_COMPRESSION, "false");
+        CmisSessionPool pool = new CmisSessionPool(SessionFactoryImpl.newInstance(), config);
+
+        Map<BindingType, String> urls = new HashMap<BindingType, String>();
+        urls.put(BindingType.ATOMPUB, atompubUrl);
+        urls.put(BindingType.BROWSER, browserUrl);
+
+        for (BindingType binding : new BindingType[] { BindingType.ATOMPUB, BindingType.BROWSER }) {
+            Relay relay = new Relay(new URL(urls.get(binding)));
+            try {
+                OpenCMISClient client = new OpenCMISClient(pool.getSession(relay.getUrl(), user, password, repository,
+                        binding.value()), pool.getExecutor());
+                System.out.println(binding.value() + ", " + client.getRepositoryInfo().getProductName());
+
+                OperationContext context = client.createQueryContext(PAGE_SIZE, PropertyIds.OBJECT_ID, PropertyIds.NAME,
+                        PropertyIds.LAST_MODIFICATION_DATE);
+                List<String> ids = queryIds(client, context, count);
+
+                for (int i = 0; i < WARMUP_RUNS; ++i) {
+                    measureQuery(client, context, relay);
+                    measureGetObject(client, context, ids, relay);
+                }
+
+                print(binding.value() + " query", measureQuery(client, context, relay));
+                print(binding.value() + " getObject", measureGetObject(client, context, ids, relay));
+            } finally {
+                relay.close();
+            }
+        }
+    }
+
+    private static List<String> queryIds(OpenCMISClient client, OperationContext context, int count) {
+        List<String> ids = new ArrayList<String>();
+        CmisPager<QueryResult> results = client.queryPaged(QUERY, false, context);
+        try {
+            while (results.hasNext() && ids.size() < count) {
+                ids.add(results.next().<String> getPropertyValueById(PropertyIds.OBJECT_ID));
+            }
+        } finally {
+            results.close();
+        }
+        System.out.println(ids.size() + " documents");
+        return ids;
+    }
+
+    private static Measurement measureQuery(OpenCMISClient client, OperationContext context, Relay relay) {
+        Measurement measurement = new Measurement(relay);
+        for (int i = 0; i < 10; ++i) {
+            measurement.start();
+            for (QueryResult result : client.query(QUERY, false, context).getPage()) {
+                result.getPropertyValueById(PropertyIds.NAME);
+            }
+            measurement.stop();
+        }
+        return measurement;
+    }
+
+    private static Measurement measureGetObject(OpenCMISClient client, OperationContext context, List<String> ids,
+            Relay relay) {
+        Measurement measurement = new Measurement(relay);
+        for (String id : ids) {
+            measurement.start();
+            CmisObject object = client.getObject(id, context);
+            object.getName();
+            measurement.stop();
+        }
+        return measurement;
+    }
+
+    private static void print(String label, Measurement measurement) {
+        long[] times = measurement.getTimes();
+        if (times.length == 0) {
+            return;
+        }
+
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+
+        System.out.printf("%-20s mean %8.3f ms, median %8.3f ms, p95 %8.3f ms, sent %8d B, received %9d B, cpu %7.3f ms%n",
+                label, total / 1e6 / times.length, times[times.length / 2] / 1e6,
+                times[(int) (times.length * 0.95)] / 1e6, measurement.sent / times.length,
+                measurement.received / times.length, measurement.cpu / 1e6 / times.length);
+    }
+
+    /**
+     * Latency, bytes and CPU time of a series of requests.
+     */
+    private static class Measurement {
+        private final Relay relay;
+        private final List<Long> times = new ArrayList<Long>();
+        private long sent, received, cpu;
+
+        private long startTime, startSent, startReceived, startCpu;
+
+        public Measurement(Relay relay) {
+            this.relay = relay;
+        }
+
+        public void start() {
+            startSent = relay.sent.get();
+            startReceived = relay.received.get();
+            startCpu = THREADS.getCurrentThreadCpuTime();
+            startTime = System.nanoTime();
+        }
+
+        public void stop() {
+            times.add(System.nanoTime() - startTime);
+            cpu += THREADS.getCurrentThreadCpuTime() - startCpu;
+            sent += relay.sent.get() - startSent;
+            received += relay.received.get() - startReceived;
+        }
+
+        public long[] getTimes() {
+            long[] sorted = new long[times.size()];
+            for (int i = 0; i < sorted.length; ++i) {
+                sorted[i] = times.get(i);
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /**
+     * Forwards local connections to the repository and counts the bytes in both directions.
+     */
+    private static class Relay implements Runnable {
+        private final URL target;
+        private final ServerSocket server;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+
+        public Relay(URL target) throws IOException {
+            this.target = target;
+            this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+            Thread thread = new Thread(this, "relay-" + server.getLocalPort());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * @return the target URL with the relay as host
+         */
+        public String getUrl() throws IOException {
+            return new URL(target.getProtocol(), "127.0.0.1", server.getLocalPort(), target.getFile()).toString();
+        }
+
+        @Override
+        public void run() {
+            int port = target.getPort() != -1 ? target.getPort() : target.getDefaultPort();
+            while (!server.isClosed()) {
+                try {
+                    Socket client = server.accept();
+                    Socket upstream = new Socket();
+                    upstream.connect(new InetSocketAddress(target.getHost(), port));
+
+                    pump(client, upstream, sent);
+                    pump(upstream, client, received);
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }
+
+        private static void pump(final Socket from, final Socket to, final AtomicLong counter) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    try {
+                        InputStream in = from.getInputStream();
+                        OutputStream out = to.getOutputStream();
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                            out.flush();
+                            counter.addAndGet(read);
+                        }
+                    } catch (IOException e) {
+                        // connection closed by either side
+                    } finally {
+                        try {
+                            from.close();
+                            to.close();
+                        } catch (IOException e) {
+                            // ignored
+                        }
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
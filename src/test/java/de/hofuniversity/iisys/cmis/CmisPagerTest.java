@@ -0,0 +1,195 @@
+package de.hofuniversity.iisys.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.CmisIterator;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.junit.Test;
+
+/**
+ * Tests paging and prefetching of query results without a CMIS repository.
+ */
+public class CmisPagerTest {
+
+    @Test
+    public void testAllPages() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FakeLoader loader = new FakeLoader(25, 10, true);
+            CmisPager<Integer> pager = new CmisPager<Integer>(loader, 10, executor);
+
+            List<Integer> results = new ArrayList<Integer>();
+            while (pager.hasNext()) {
+                results.add(pager.next());
+            }
+
+            assertEquals("", 25, results.size());
+            for (int i = 0; i < results.size(); ++i) {
+                assertEquals("", Integer.valueOf(i), results.get(i));
+            }
+            assertEquals("", 3, loader.loads.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullLastPage() {
+        // the repository reports no more items, so no empty page is requested
+        FakeLoader loader = new FakeLoader(20, 10, true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CmisPager<Integer> pager = new CmisPager<Integer>(loader, 10, executor);
+
+            int count = 0;
+            while (pager.hasNext()) {
+                pager.next();
+                ++count;
+            }
+
+            assertEquals("", 20, count);
+            assertEquals("", 2, loader.loads.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWithoutMoreItemsFlag() {
+        // repositories which always report more items stop at a short page,
+        // a rejected prefetch is loaded synchronously
+        FakeLoader loader = new FakeLoader(15, 10, false);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        CmisPager<Integer> pager = new CmisPager<Integer>(loader, 10, executor);
+
+        int count = 0;
+        while (pager.hasNext()) {
+            pager.next();
+            ++count;
+        }
+
+        assertEquals("", 15, count);
+        assertEquals("", 2, loader.loads.get());
+    }
+
+    @Test
+    public void testClose() {
+        FakeLoader loader = new FakeLoader(100, 10, true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CmisPager<Integer> pager = new CmisPager<Integer>(loader, 10, executor);
+
+            for (int i = 0; i < 10; ++i) {
+                pager.next();
+            }
+            pager.close();
+
+            assertFalse(pager.hasNext());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class FakeLoader implements CmisPager.PageLoader<Integer> {
+        private final int total, maxItems;
+        private final boolean reportsMore;
+        private final AtomicInteger loads = new AtomicInteger();
+
+        public FakeLoader(int total, int maxItems, boolean reportsMore) {
+            this.total = total;
+            this.maxItems = maxItems;
+            this.reportsMore = reportsMore;
+        }
+
+        @Override
+        public ItemIterable<Integer> load(final long skipCount) {
+            return new FakeIterable(skipCount);
+        }
+
+        private class FakeIterable implements ItemIterable<Integer> {
+            private final long skipCount;
+
+            private FakeIterable(long skipCount) {
+                this.skipCount = skipCount;
+            }
+
+            @Override
+            public ItemIterable<Integer> skipTo(long position) {
+                return new FakeIterable(position);
+            }
+
+            @Override
+            public ItemIterable<Integer> getPage() {
+                return this;
+            }
+
+            @Override
+            public ItemIterable<Integer> getPage(int maxNumItems) {
+                return this;
+            }
+
+            @Override
+            public CmisIterator<Integer> iterator() {
+                loads.incrementAndGet();
+
+                final List<Integer> items = new ArrayList<Integer>();
+                for (long i = skipCount; i < Math.min(total, skipCount + maxItems); ++i) {
+                    items.add((int) i);
+                }
+                final Iterator<Integer> it = Collections.unmodifiableList(items).iterator();
+
+                return new CmisIterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Integer next() {
+                        return it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public long getPosition() {
+                        return skipCount;
+                    }
+
+                    @Override
+                    public long getTotalNumItems() {
+                        return total;
+                    }
+                };
+            }
+
+            @Override
+            public long getPageNumItems() {
+                return Math.max(0, Math.min(maxItems, total - skipCount));
+            }
+
+            @Override
+            public boolean getHasMoreItems() {
+                return !reportsMore || skipCount + maxItems < total;
+            }
+
+            @Override
+            public long getTotalNumItems() {
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package de.hofuniversity.iisys.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.SessionFactory;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.camunda.workflows.nuxeo.NuxeoConfig;
+
+/**
+ * Tests the session pool without a CMIS repository.
+ */
+public class CmisSessionPoolTest {
+    private static final String URL = "http://localhost:8080/nuxeo/atom/cmis";
+
+    @Test
+    public void testSharedSessions() {
+        CountingFactory factory = new CountingFactory();
+        CmisSessionPool pool = new CmisSessionPool(factory, new HashMap<String, String>());
+
+        Session session = pool.getSession(URL, "user", "secret", "default", "atompub");
+        assertSame(session, pool.getSession(URL, "user", "secret", "default", "atompub"));
+        assertNotSame(session, pool.getSession(URL, "user", "other", "default", "atompub"));
+        assertNotSame(session, pool.getSession(URL, "admin", "secret", "default", "atompub"));
+        assertEquals("", 3, factory.calls.get());
+        assertEquals("", 3, pool.size());
+
+        pool.invalidate(URL, "user", "secret", "default", "atompub");
+        assertNotSame(session, pool.getSession(URL, "user", "secret", "default", "atompub"));
+        assertEquals("", 4, factory.calls.get());
+    }
+
+    @Test
+    public void testParameters() {
+        Map<String, String> config = new HashMap<String, String>();
+        config.put(NuxeoConfig.CMIS_CACHE_OBJECTS, "5000");
+        config.put(NuxeoConfig.CMIS_HTTP_COMPRESSION, "true");
+
+        CountingFactory factory = new CountingFactory();
+        new CmisSessionPool(factory, config).getSession(URL, "user", "secret", "default", "atompub");
+
+        Map<String, String> parameters = factory.parameters;
+        assertEquals("", URL, parameters.get(SessionParameter.ATOMPUB_URL));
+        assertEquals("", "user", parameters.get(SessionParameter.USER));
+        assertEquals("", "default", parameters.get(SessionParameter.REPOSITORY_ID));
+        assertEquals("", "5000", parameters.get(SessionParameter.CACHE_SIZE_OBJECTS));
+        assertEquals("", "1000", parameters.get(SessionParameter.CACHE_SIZE_PATHTOID));
+        assertEquals("", "true", parameters.get(SessionParameter.COMPRESSION));
+    }
+
+    @Test
+    public void testBindings() {
+        CountingFactory factory = new CountingFactory();
+        CmisSessionPool pool = new CmisSessionPool(factory, new HashMap<String, String>());
+
+        String browserUrl = "http://localhost:8080/nuxeo/json/cmis";
+        pool.getSession(browserUrl, "user", "secret", "default", "browser");
+        assertEquals("", browserUrl, factory.parameters.get(SessionParameter.BROWSER_URL));
+        assertEquals("", "true", factory.parameters.get(SessionParameter.BROWSER_SUCCINCT));
+        assertEquals("", null, factory.parameters.get(SessionParameter.ATOMPUB_URL));
+
+        String serviceFactory = "org.example.LocalServiceFactory";
+        pool.getSession(serviceFactory, "user", "secret", "default", "local");
+        assertEquals("", serviceFactory, factory.parameters.get(SessionParameter.LOCAL_FACTORY));
+
+        for (String binding : new String[] { "webservices", "custom", "soap", null }) {
+            try {
+                pool.getSession(URL, "user", "secret", "default", binding);
+                fail("accepted " + binding);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals("", 2, factory.calls.get());
+    }
+
+    @Test
+    public void testConcurrentCreation() throws Exception {
+        final CountingFactory factory = new CountingFactory();
+        final CmisSessionPool pool = new CmisSessionPool(factory, new HashMap<String, String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Session>> results = new ArrayList<Future<Session>>();
+            for (int i = 0; i < 16; ++i) {
+                results.add(executor.submit(new Callable<Session>() {
+                    @Override
+                    public Session call() {
+                        return pool.getSession(URL, "user", "secret", "default", "atompub");
+                    }
+                }));
+            }
+
+            Session session = results.get(0).get();
+            for (Future<Session> result : results) {
+                assertSame(session, result.get());
+            }
+            assertEquals("", 1, factory.calls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedCreationIsRetried() {
+        CountingFactory factory = new CountingFactory();
+        factory.fail = true;
+        CmisSessionPool pool = new CmisSessionPool(factory, new HashMap<String, String>());
+
+        try {
+            pool.getSession(URL, "user", "secret", "default", "atompub");
+            fail("no exception");
+        } catch (CmisConnectionException e) {
+            assertEquals("", 0, pool.size());
+        }
+
+        factory.fail = false;
+        pool.getSession(URL, "user", "secret", "default", "atompub");
+        assertEquals("", 2, factory.calls.get());
+    }
+
+    private static class CountingFactory implements SessionFactory {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean fail;
+        private volatile Map<String, String> parameters;
+
+        @Override
+        public Session createSession(Map<String, String> parameters) {
+            calls.incrementAndGet();
+            this.parameters = parameters;
+            if (fail) {
+                throw new CmisConnectionException("unreachable");
+            }
+
+            try {
+                // slow enough for concurrent requests to wait for the first one
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[] { Session.class },
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("equals".equals(method.getName())) {
+                                return proxy == args[0];
+                            }
+                            if ("hashCode".equals(method.getName())) {
+                                return System.identityHashCode(proxy);
+                            }
+                            return null;
+                        }
+                    });
+        }
+
+        @Override
+        public List<Repository> getRepositories(Map<String, String> parameters) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
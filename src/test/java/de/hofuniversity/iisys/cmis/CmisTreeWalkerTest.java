@@ -0,0 +1,222 @@
+package de.hofuniversity.iisys.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.CmisIterator;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.FileableCmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.junit.Test;
+
+/**
+ * Tests the parallel tree walk on an in-memory folder hierarchy.
+ */
+public class CmisTreeWalkerTest {
+
+    @Test
+    public void testWholeTree() throws Exception {
+        // 4 levels of 3 folders and 2 documents each
+        Folder root = createTree("root", 4, 3, 2);
+        final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        long visited = new CmisTreeWalker(4).walk(root, CmisTreeWalker.UNLIMITED_DEPTH, null,
+                new CmisTreeWalker.Visitor() {
+                    @Override
+                    public boolean visit(FileableCmisObject object, int depth) {
+                        assertTrue(names.add(object.getName()));
+                        assertEquals("", depth, object.getName().split("/").length - 1);
+                        return true;
+                    }
+                });
+
+        // 5 children per folder, 1 + 3 + 9 + 27 folders
+        assertEquals("", 200, visited);
+        assertEquals("", 200, names.size());
+    }
+
+    @Test
+    public void testBoundedQueue() throws Exception {
+        // a single queued folder, the rest is walked inline
+        Folder root = createTree("root", 4, 3, 2);
+        final AtomicInteger count = new AtomicInteger();
+
+        long visited = new CmisTreeWalker(2, 1).walk(root, CmisTreeWalker.UNLIMITED_DEPTH, null,
+                new CmisTreeWalker.Visitor() {
+                    @Override
+                    public boolean visit(FileableCmisObject object, int depth) {
+                        count.incrementAndGet();
+                        return true;
+                    }
+                });
+
+        assertEquals("", 200, visited);
+        assertEquals("", 200, count.get());
+    }
+
+    @Test
+    public void testMaxDepthAndPruning() throws Exception {
+        Folder root = createTree("root", 4, 3, 2);
+        CmisTreeWalker walker = new CmisTreeWalker(4);
+
+        CmisTreeWalker.Visitor all = new CmisTreeWalker.Visitor() {
+            @Override
+            public boolean visit(FileableCmisObject object, int depth) {
+                return true;
+            }
+        };
+        assertEquals("", 5, walker.walk(root, 1, null, all));
+        assertEquals("", 20, walker.walk(root, 2, null, all));
+        assertEquals("", 0, walker.walk(root, 0, null, all));
+
+        // skips the subtrees of all folders but the first one
+        long visited = walker.walk(root, CmisTreeWalker.UNLIMITED_DEPTH, null, new CmisTreeWalker.Visitor() {
+            @Override
+            public boolean visit(FileableCmisObject object, int depth) {
+                return depth > 1 || object.getName().endsWith("/f0");
+            }
+        });
+        assertEquals("", 5 + 5 + 15 + 45, visited);
+    }
+
+    @Test
+    public void testVisitorFailure() throws Exception {
+        Folder root = createTree("root", 4, 3, 2);
+
+        try {
+            new CmisTreeWalker(4).walk(root, CmisTreeWalker.UNLIMITED_DEPTH, null, new CmisTreeWalker.Visitor() {
+                @Override
+                public boolean visit(FileableCmisObject object, int depth) throws Exception {
+                    if (depth == 3) {
+                        throw new IllegalStateException("failed at " + object.getName());
+                    }
+                    return true;
+                }
+            });
+            fail("no exception");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("failed at"));
+        }
+    }
+
+    private static Folder createTree(String name, int levels, int folders, int documents) {
+        List<CmisObject> children = new ArrayList<CmisObject>();
+        if (levels > 0) {
+            for (int i = 0; i < folders; ++i) {
+                children.add(createTree(name + "/f" + i, levels - 1, folders, documents));
+            }
+            for (int i = 0; i < documents; ++i) {
+                children.add(createObject(Document.class, name + "/d" + i, null));
+            }
+        }
+        return createObject(Folder.class, name, children);
+    }
+
+    private static <T> T createObject(Class<T> type, final String name, final List<CmisObject> children) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("getName".equals(method.getName()) || "getId".equals(method.getName())) {
+                            return name;
+                        }
+                        if ("getChildren".equals(method.getName())) {
+                            return new ListIterable(children);
+                        }
+                        if ("equals".equals(method.getName())) {
+                            return proxy == args[0];
+                        }
+                        if ("hashCode".equals(method.getName())) {
+                            return System.identityHashCode(proxy);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }));
+    }
+
+    private static class ListIterable implements ItemIterable<CmisObject> {
+        private final List<CmisObject> items;
+
+        public ListIterable(List<CmisObject> items) {
+            this.items = items;
+        }
+
+        @Override
+        public ItemIterable<CmisObject> skipTo(long position) {
+            return new ListIterable(items.subList((int) position, items.size()));
+        }
+
+        @Override
+        public ItemIterable<CmisObject> getPage() {
+            return this;
+        }
+
+        @Override
+        public ItemIterable<CmisObject> getPage(int maxNumItems) {
+            return new ListIterable(items.subList(0, Math.min(maxNumItems, items.size())));
+        }
+
+        @Override
+        public CmisIterator<CmisObject> iterator() {
+            final Iterator<CmisObject> it = items.iterator();
+            return new CmisIterator<CmisObject>() {
+                private long position;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public CmisObject next() {
+                    ++position;
+                    return it.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public long getPosition() {
+                    return position;
+                }
+
+                @Override
+                public long getTotalNumItems() {
+                    return items.size();
+                }
+            };
+        }
+
+        @Override
+        public long getPageNumItems() {
+            return items.size();
+        }
+
+        @Override
+        public boolean getHasMoreItems() {
+            return false;
+        }
+
+        @Override
+        public long getTotalNumItems() {
+            return items.size();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package de.hofuniversity.iisys.cmis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.ObjectFactory;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.ObjectIdImpl;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.data.RepositoryCapabilities;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityContentStreamUpdates;
+import org.apache.chemistry.opencmis.commons.enums.CmisVersion;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+import org.junit.Test;
+
+/**
+ * Tests streaming and chunked document uploads against a fake repository.
+ */
+public class ContentUploadTest {
+    private static final String CONTENT = "0123456789abcdefghijklmno";
+
+    @Test
+    public void testSmallContent() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        upload(repository, CONTENT, CONTENT.length(), 100);
+
+        assertEquals("", "[" + CONTENT + "]", repository.requests.toString());
+        assertEquals("", CONTENT, repository.content.toString("UTF-8"));
+    }
+
+    @Test
+    public void testKnownLengthChunks() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        ObjectId id = upload(repository, CONTENT, CONTENT.length(), 10);
+
+        assertEquals("", "[0123456789, abcdefghij, klmno (last)]", repository.requests.toString());
+        assertEquals("", CONTENT, repository.content.toString("UTF-8"));
+        assertEquals("", "doc", id.getId());
+    }
+
+    @Test
+    public void testUnknownLengthChunks() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        upload(repository, CONTENT, -1, 10);
+
+        assertEquals("", "[0123456789, abcdefghij, klmno, (last)]", repository.requests.toString());
+        assertEquals("", CONTENT, repository.content.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUnknownLengthSingleChunk() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        upload(repository, "0123456789", -1, 10);
+
+        assertEquals("", "[0123456789]", repository.requests.toString());
+    }
+
+    @Test
+    public void testMajorVersion() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        ObjectId id = upload(repository, CONTENT, CONTENT.length(), 10, VersioningState.MAJOR);
+
+        // appended to the working copy, checked in after the last chunk
+        assertEquals("", VersioningState.CHECKEDOUT, repository.versioningState);
+        assertEquals("", "[0123456789, abcdefghij, klmno (last), check in major]", repository.requests.toString());
+        assertEquals("", CONTENT, repository.content.toString("UTF-8"));
+        assertEquals("", "version", id.getId());
+    }
+
+    @Test
+    public void testMinorVersionSingleChunk() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        ObjectId id = upload(repository, "0123456789", -1, 10, VersioningState.MINOR);
+
+        assertEquals("", VersioningState.CHECKEDOUT, repository.versioningState);
+        assertEquals("", "[0123456789, check in minor]", repository.requests.toString());
+        assertEquals("", "version", id.getId());
+    }
+
+    @Test
+    public void testSmallMajorVersion() throws Exception {
+        // sent in a single request, nothing to append
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        upload(repository, CONTENT, CONTENT.length(), 100, VersioningState.MAJOR);
+
+        assertEquals("", VersioningState.MAJOR, repository.versioningState);
+        assertEquals("", "[" + CONTENT + "]", repository.requests.toString());
+    }
+
+    @Test
+    public void testWithoutAppend() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_0);
+        upload(repository, CONTENT, -1, 10);
+
+        assertEquals("", "[" + CONTENT + "]", repository.requests.toString());
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        Path file = Files.createTempFile("upload", ".txt");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+            FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+            OpenCMISClient client = new OpenCMISClient(repository.session, executor);
+            client.setUploadChunkSize(20);
+
+            client.createDocument(new HashMap<String, Object>(), new ObjectIdImpl("folder"), file, "text/plain",
+                    VersioningState.NONE);
+            assertEquals("", "[0123456789abcdefghij, klmno (last)]", repository.requests.toString());
+            assertEquals("", file.getFileName().toString(), repository.fileName);
+        } finally {
+            executor.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testIncompleteContent() throws Exception {
+        FakeRepository repository = new FakeRepository(CmisVersion.CMIS_1_1);
+        try {
+            upload(repository, CONTENT, 40, 10);
+            fail("no exception");
+        } catch (EOFException e) {
+            assertTrue(repository.deleted);
+        }
+    }
+
+    private static ObjectId upload(FakeRepository repository, String content, long length, long chunkSize)
+            throws IOException {
+        return upload(repository, content, length, chunkSize, VersioningState.NONE);
+    }
+
+    private static ObjectId upload(FakeRepository repository, String content, long length, long chunkSize,
+            VersioningState versioningState) throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            OpenCMISClient client = new OpenCMISClient(repository.session, executor);
+            client.setUploadChunkSize(chunkSize);
+
+            InputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+            return client.createDocument(new HashMap<String, Object>(), new ObjectIdImpl("folder"), in, "test.txt",
+                    "text/plain", length, versioningState);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Records the requests of an upload, appending to a single document.
+     */
+    private static class FakeRepository implements InvocationHandler {
+        private final CmisVersion version;
+        private final Session session;
+        private final List<String> requests = new ArrayList<String>();
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        private String fileName;
+        private VersioningState versioningState;
+        private boolean deleted;
+
+        public FakeRepository(CmisVersion version) {
+            this.version = version;
+            this.session = proxy(Session.class);
+        }
+
+        private <T> T proxy(Class<T> type) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getRepositoryInfo".equals(name)) {
+                return proxy(RepositoryInfo.class);
+            } else if ("getCmisVersion".equals(name)) {
+                return version;
+            } else if ("getCapabilities".equals(name)) {
+                return proxy(RepositoryCapabilities.class);
+            } else if ("getContentStreamUpdatesCapability".equals(name)) {
+                return CapabilityContentStreamUpdates.ANYTIME;
+            } else if ("getObjectFactory".equals(name)) {
+                return proxy(ObjectFactory.class);
+            } else if ("createContentStream".equals(name)) {
+                long length = (Long) args[1];
+                return new ContentStreamImpl((String) args[0], length >= 0 ? BigInteger.valueOf(length) : null,
+                        (String) args[2], (InputStream) args[3]);
+            } else if ("createDocument".equals(name)) {
+                read((ContentStream) args[2], false);
+                versioningState = (VersioningState) args[3];
+                return new ObjectIdImpl("doc");
+            } else if ("getObject".equals(name)) {
+                return proxy(Document.class);
+            } else if ("appendContentStream".equals(name)) {
+                read((ContentStream) args[0], (Boolean) args[1]);
+                return new ObjectIdImpl("doc");
+            } else if ("checkIn".equals(name)) {
+                requests.add((Boolean) args[0] ? "check in major" : "check in minor");
+                return new ObjectIdImpl("version");
+            } else if ("getId".equals(name)) {
+                return "doc";
+            } else if ("delete".equals(name)) {
+                deleted = true;
+                return null;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+
+        private void read(ContentStream stream, boolean last) throws IOException {
+            fileName = stream.getFileName();
+
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4];
+            InputStream in = stream.getStream();
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                chunk.write(buffer, 0, read);
+            }
+            in.close();
+
+            String text = chunk.toString("UTF-8");
+            if (stream.getBigLength() != null && stream.getBigLength().longValue() != chunk.size()) {
+                // as a repository would, with the length of the request
+                text += " (short)";
+            }
+            requests.add(last ? (text.isEmpty() ? "(last)" : text + " (last)") : text);
+            content.write(chunk.toByteArray());
+        }
+    }
+}